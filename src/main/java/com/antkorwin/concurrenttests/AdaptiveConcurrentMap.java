@@ -0,0 +1,445 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Concurrent map which changes its layout by contention:
+ * <ol>
+ * <li>SYNCHRONIZED - a single HashMap under a single lock, the cheapest one
+ * for a cold map, like the Collections.synchronizedMap;</li>
+ * <li>STRIPED - HashMaps of stripes, each under its own lock;</li>
+ * <li>CONCURRENT - the ConcurrentHashMap.</li>
+ * </ol>
+ * Each operation tries the lock of its stripe first, a failed try is
+ * counted as contention. When the number of failed tries within
+ * the window of time crosses the threshold, the thread which noticed it
+ * takes all locks of the current layout, copies entries to the next layout
+ * and publishes it. Operations which wait for the locks of the old layout
+ * at this time retry on the new one.
+ *
+ * The layout never goes back, a map which was hot once stays concurrent.
+ *
+ * @author Korovin Anatoliy
+ */
+public class AdaptiveConcurrentMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    public static final int DEFAULT_CONTENTION_THRESHOLD = 256;
+    public static final long DEFAULT_WINDOW_NANOS = 100_000_000;
+
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+
+    private final int contentionThreshold;
+    private final long windowNanos;
+
+    // either a StripedTable or a ConcurrentHashMap
+    private volatile Object table;
+
+    private Set<Entry<K, V>> entrySet;
+
+    public AdaptiveConcurrentMap() {
+        this(DEFAULT_CONTENTION_THRESHOLD, DEFAULT_WINDOW_NANOS);
+    }
+
+    /**
+     * @param contentionThreshold number of failed lock tries within the window
+     *                            which moves the map to the next layout
+     */
+    public AdaptiveConcurrentMap(int contentionThreshold, long windowNanos) {
+        if (contentionThreshold <= 0 || windowNanos <= 0) {
+            throw new IllegalArgumentException("contentionThreshold and windowNanos must be > 0");
+        }
+        this.contentionThreshold = contentionThreshold;
+        this.windowNanos = windowNanos;
+        this.table = new StripedTable<K, V>(1, Layout.SYNCHRONIZED);
+    }
+
+    /**
+     * Without a lambda, reads are the most frequent operation.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        while (true) {
+            Object current = table;
+            if (current instanceof ConcurrentHashMap) {
+                return ((ConcurrentHashMap<K, V>) current).get(key);
+            }
+            StripedTable<K, V> striped = (StripedTable<K, V>) current;
+            int stripe = striped.stripeOf(key);
+            lock(striped, stripe);
+            try {
+                if (!striped.migrated) {
+                    return striped.maps[stripe].get(key);
+                }
+            } finally {
+                striped.locks[stripe].unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return apply(key, map -> map.containsKey(key));
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkValue(value);
+        return apply(key, map -> map.put(key, value));
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        checkValue(value);
+        return apply(key, map -> map.putIfAbsent(key, value));
+    }
+
+    @Override
+    public V remove(Object key) {
+        return apply(key, map -> map.remove(key));
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return value != null && apply(key, map -> map.remove(key, value));
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        checkValue(oldValue);
+        checkValue(newValue);
+        return apply(key, map -> map.replace(key, oldValue, newValue));
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        checkValue(value);
+        return apply(key, map -> map.replace(key, value));
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        return apply(key, map -> map.computeIfAbsent(key, mappingFunction));
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return apply(key, map -> map.computeIfPresent(key, remappingFunction));
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return apply(key, map -> map.compute(key, remappingFunction));
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        checkValue(value);
+        return apply(key, map -> map.merge(key, value, remappingFunction));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int size() {
+        while (true) {
+            Object current = table;
+            if (current instanceof ConcurrentHashMap) {
+                return ((ConcurrentHashMap<K, V>) current).size();
+            }
+            StripedTable<K, V> striped = (StripedTable<K, V>) current;
+            int size = 0;
+            for (int stripe = 0; stripe < striped.maps.length && !striped.migrated; stripe++) {
+                lock(striped, stripe);
+                try {
+                    size += striped.maps[stripe].size();
+                } finally {
+                    striped.locks[stripe].unlock();
+                }
+            }
+            if (!striped.migrated) {
+                return size;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        while (true) {
+            Object current = table;
+            if (current instanceof ConcurrentHashMap) {
+                ((ConcurrentHashMap<K, V>) current).clear();
+                return;
+            }
+            StripedTable<K, V> striped = (StripedTable<K, V>) current;
+            striped.lockAll();
+            try {
+                if (!striped.migrated) {
+                    for (Map<K, V> map : striped.maps) {
+                        map.clear();
+                    }
+                    return;
+                }
+            } finally {
+                striped.unlockAll();
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> result = entrySet;
+        if (result == null) {
+            result = new EntrySet();
+            entrySet = result;
+        }
+        return result;
+    }
+
+    public Layout getLayout() {
+        Object current = table;
+        return (current instanceof ConcurrentHashMap) ? Layout.CONCURRENT : ((StripedTable<?, ?>) current).layout;
+    }
+
+    /**
+     * Runs the operation on the ConcurrentHashMap as is, or on the HashMap
+     * of the stripe of the key under the lock of this stripe.
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R apply(Object key, Function<Map<K, V>, R> operation) {
+        while (true) {
+            Object current = table;
+            if (current instanceof ConcurrentHashMap) {
+                return operation.apply((ConcurrentHashMap<K, V>) current);
+            }
+            StripedTable<K, V> striped = (StripedTable<K, V>) current;
+            int stripe = striped.stripeOf(key);
+            lock(striped, stripe);
+            try {
+                if (!striped.migrated) {
+                    return operation.apply(striped.maps[stripe]);
+                }
+            } finally {
+                striped.locks[stripe].unlock();
+            }
+        }
+    }
+
+    private void lock(StripedTable<K, V> striped, int stripe) {
+        ReentrantLock lock = striped.locks[stripe];
+        if (lock.tryLock()) {
+            return;
+        }
+        if (striped.contended(contentionThreshold, windowNanos)) {
+            migrate(striped);
+        }
+        lock.lock();
+    }
+
+    private void migrate(StripedTable<K, V> striped) {
+        if (!striped.migrating.compareAndSet(false, true)) {
+            return;
+        }
+        striped.lockAll();
+        try {
+            if (striped.layout == Layout.SYNCHRONIZED) {
+                StripedTable<K, V> next = new StripedTable<>(STRIPES, Layout.STRIPED);
+                striped.copyTo(next::put);
+                table = next;
+            } else {
+                ConcurrentHashMap<K, V> next = new ConcurrentHashMap<>();
+                striped.copyTo(next::put);
+                table = next;
+            }
+            // waiters see the new table after they see this flag
+            striped.migrated = true;
+        } finally {
+            striped.unlockAll();
+        }
+    }
+
+    private void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException("null values are not supported");
+        }
+    }
+
+
+    public enum Layout {
+        SYNCHRONIZED, STRIPED, CONCURRENT
+    }
+
+    private static final class StripedTable<K, V> {
+
+        private final Layout layout;
+        private final HashMap<K, V>[] maps;
+        private final ReentrantLock[] locks;
+        private final int mask;
+        private final AtomicInteger contention = new AtomicInteger();
+        private final AtomicBoolean migrating = new AtomicBoolean();
+        private volatile long windowStart = System.nanoTime();
+        // written under all locks
+        private volatile boolean migrated;
+
+        @SuppressWarnings("unchecked")
+        StripedTable(int stripes, Layout layout) {
+            this.layout = layout;
+            this.maps = new HashMap[stripes];
+            this.locks = new ReentrantLock[stripes];
+            for (int i = 0; i < stripes; i++) {
+                maps[i] = new HashMap<>();
+                locks[i] = new ReentrantLock();
+            }
+            this.mask = stripes - 1;
+        }
+
+        int stripeOf(Object key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /**
+         * @return true if the failed try crosses the threshold of the current window
+         */
+        boolean contended(int threshold, long windowNanos) {
+            long now = System.nanoTime();
+            if (now - windowStart > windowNanos) {
+                windowStart = now;
+                contention.set(0);
+            }
+            return contention.incrementAndGet() >= threshold;
+        }
+
+        void put(K key, V value) {
+            maps[stripeOf(key)].put(key, value);
+        }
+
+        void copyTo(BiConsumer<K, V> target) {
+            for (HashMap<K, V> map : maps) {
+                map.forEach(target);
+            }
+        }
+
+        List<Entry<K, V>> copyOf(int stripe) {
+            locks[stripe].lock();
+            try {
+                List<Entry<K, V>> entries = new ArrayList<>(maps[stripe].size());
+                for (Entry<K, V> entry : maps[stripe].entrySet()) {
+                    entries.add(new SimpleImmutableEntry<>(entry));
+                }
+                return entries;
+            } finally {
+                locks[stripe].unlock();
+            }
+        }
+
+        void lockAll() {
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+            }
+        }
+
+        void unlockAll() {
+            for (ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        /**
+         * Splits by bins of the ConcurrentHashMap or by ranges of stripes.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public Spliterator<Entry<K, V>> spliterator() {
+            Object current = table;
+            if (current instanceof ConcurrentHashMap) {
+                return ((ConcurrentHashMap<K, V>) current).entrySet().spliterator();
+            }
+            StripedTable<K, V> striped = (StripedTable<K, V>) current;
+            return new PartitionSpliterator<>(0, striped.maps.length, size(), striped::copyOf);
+        }
+
+        @Override
+        public int size() {
+            return AdaptiveConcurrentMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            AdaptiveConcurrentMap.this.clear();
+        }
+    }
+
+    /**
+     * Iterates over the ConcurrentHashMap or over a copy of each stripe,
+     * made under the lock of the stripe.
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final Iterator<Entry<K, V>> iterator;
+        private Entry<K, V> last;
+
+        @SuppressWarnings("unchecked")
+        EntryIterator() {
+            Object current = table;
+            if (current instanceof ConcurrentHashMap) {
+                iterator = ((ConcurrentHashMap<K, V>) current).entrySet().iterator();
+                return;
+            }
+            StripedTable<K, V> striped = (StripedTable<K, V>) current;
+            List<Entry<K, V>> entries = new ArrayList<>();
+            for (int stripe = 0; stripe < striped.maps.length; stripe++) {
+                entries.addAll(striped.copyOf(stripe));
+            }
+            iterator = entries.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = iterator.next();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            AdaptiveConcurrentMap.this.remove(last.getKey(), last.getValue());
+            last = null;
+        }
+    }
+}
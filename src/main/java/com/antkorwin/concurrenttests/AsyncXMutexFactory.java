@@ -0,0 +1,173 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Non-blocking alternative of the XMutexFactory: lock(key) doesn't wait
+ * for the lock, it returns a stage which completes with a permit when
+ * the lock of this key is acquired. The permit is released explicitly,
+ * so a critical section can be asynchronous and doesn't occupy a thread
+ * while it waits for something.
+ *
+ * Waiters of a key form a CLH-like queue: a new waiter swaps itself
+ * into the tail and gets the permit when its predecessor releases,
+ * so they are served in the FIFO order without locks. When the last
+ * waiter releases, the lock of the key is retired and removed from
+ * the map, an idle key doesn't keep anything.
+ *
+ * Waiters which were queued get their permits on the executor,
+ * otherwise a chain of releases runs recursively in the thread of the first one.
+ * A permit which can't be handed over (the stage of the waiter is cancelled
+ * or the executor rejects the task) is released when its turn comes, so the lock goes
+ * to the next waiter. A stage which is abandoned without a cancel
+ * keeps its permit, it must be released by the caller.
+ *
+ * @author Korovin Anatoliy
+ */
+public class AsyncXMutexFactory<KeyT> {
+
+    // tail of a lock which is removed from the map
+    private static final Waiter RETIRED = new Waiter();
+
+    private final ConcurrentHashMap<KeyT, KeyLock> locks = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    public AsyncXMutexFactory() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor completes stages of waiters which were queued
+     */
+    public AsyncXMutexFactory(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return a stage which completes with the permit of this key,
+     * it is completed already if nobody holds the lock
+     */
+    public CompletionStage<Permit> lock(KeyT key) {
+        Waiter waiter = new Waiter();
+        while (true) {
+            KeyLock keyLock = locks.computeIfAbsent(key, KeyLock::new);
+            Waiter tail = keyLock.tail.get();
+            if (tail == RETIRED) {
+                // the last holder removes it, help to remove and take a new one
+                locks.remove(key, keyLock);
+                continue;
+            }
+            if (!keyLock.tail.compareAndSet(tail, waiter)) {
+                continue;
+            }
+            Permit permit = new Permit(keyLock, waiter);
+            if (tail == null) {
+                return CompletableFuture.completedFuture(permit);
+            }
+            CompletableFuture<Permit> granted = new CompletableFuture<>();
+            tail.released.thenRun(() -> handOver(permit, granted));
+            return granted;
+        }
+    }
+
+    private void handOver(Permit permit, CompletableFuture<Permit> granted) {
+        try {
+            executor.execute(() -> {
+                if (!granted.complete(permit)) {
+                    // cancelled while it was in the queue
+                    permit.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            granted.completeExceptionally(e);
+            permit.release();
+        }
+    }
+
+    /**
+     * Runs the action under the lock of the key and releases
+     * the lock when the stage returned by the action completes.
+     */
+    public <T> CompletionStage<T> withLock(KeyT key, Function<KeyT, ? extends CompletionStage<T>> action) {
+        return lock(key).thenCompose(permit -> {
+            CompletionStage<T> result;
+            try {
+                result = action.apply(key);
+            } catch (RuntimeException | Error e) {
+                permit.release();
+                throw e;
+            }
+            return result.whenComplete((value, error) -> permit.release());
+        });
+    }
+
+    /**
+     * @return count of keys which are locked or have waiters.
+     */
+    public long size() {
+        return locks.size();
+    }
+
+
+    private static final class Waiter {
+        private final CompletableFuture<Void> released = new CompletableFuture<>();
+    }
+
+    private final class KeyLock {
+
+        private final KeyT key;
+        private final AtomicReference<Waiter> tail = new AtomicReference<>();
+
+        KeyLock(KeyT key) {
+            this.key = key;
+        }
+
+        void release(Waiter waiter) {
+            // nobody is behind: retire the lock, new waiters take a fresh one
+            if (tail.compareAndSet(waiter, RETIRED)) {
+                locks.remove(key, this);
+                return;
+            }
+            waiter.released.complete(null);
+        }
+    }
+
+    /**
+     * Ownership of the lock of a key, it must be released once.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final KeyLock keyLock;
+        private final Waiter waiter;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(KeyLock keyLock, Waiter waiter) {
+            this.keyLock = keyLock;
+            this.waiter = waiter;
+        }
+
+        public KeyT getKey() {
+            return keyLock.key;
+        }
+
+        public void release() {
+            if (!released.compareAndSet(false, true)) {
+                throw new IllegalStateException("the permit is released already");
+            }
+            keyLock.release(waiter);
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * ConcurrentReferenceHashMap with bulk operations which take
+ * the lock of each segment once per batch.
+ *
+ * Keys of a batch are sorted by segments, then all keys of a segment
+ * are processed while the lock of this segment is held. A segment
+ * is a ReentrantLock, so the single-key operations inside of the batch
+ * acquire it again without contention.
+ *
+ * @author Korovin Anatoliy
+ */
+public class BatchingConcurrentReferenceHashMap<K, V> extends ConcurrentReferenceHashMap<K, V>
+        implements BulkConcurrentMap<K, V> {
+
+    public BatchingConcurrentReferenceHashMap() {
+        super();
+    }
+
+    public BatchingConcurrentReferenceHashMap(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    public BatchingConcurrentReferenceHashMap(int initialCapacity, ReferenceType referenceType) {
+        super(initialCapacity, referenceType);
+    }
+
+    public BatchingConcurrentReferenceHashMap(int initialCapacity,
+                                              float loadFactor,
+                                              int concurrencyLevel,
+                                              ReferenceType referenceType) {
+        super(initialCapacity, loadFactor, concurrencyLevel, referenceType);
+    }
+
+    @Override
+    public void computeAll(K[] keys, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        int[] segmentOf = new int[keys.length];
+        int[] order = sortBySegments(segmentOf, i -> keys[i]);
+        forEachSegment(order, segmentOf, index -> compute(keys[index], remappingFunction));
+    }
+
+    @Override
+    public void putAllIfAbsent(Map<? extends K, ? extends V> entries) {
+        List<Map.Entry<? extends K, ? extends V>> list = new ArrayList<>(entries.entrySet());
+        int[] segmentOf = new int[list.size()];
+        int[] order = sortBySegments(segmentOf, i -> list.get(i).getKey());
+        forEachSegment(order, segmentOf, index -> {
+            Map.Entry<? extends K, ? extends V> entry = list.get(index);
+            putIfAbsent(entry.getKey(), entry.getValue());
+        });
+    }
+
+    /**
+     * Counting sort of indexes of keys by the segment of a key.
+     *
+     * @param segmentOf filled by the segment of each key
+     */
+    private int[] sortBySegments(int[] segmentOf, KeyByIndex<K> keys) {
+        int size = segmentOf.length;
+        int segments = getSegmentsSize();
+        int[] starts = new int[segments + 1];
+        for (int i = 0; i < size; i++) {
+            segmentOf[i] = segmentIndex(keys.get(i));
+            starts[segmentOf[i] + 1]++;
+        }
+        for (int s = 0; s < segments; s++) {
+            starts[s + 1] += starts[s];
+        }
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[starts[segmentOf[i]]++] = i;
+        }
+        return order;
+    }
+
+    private void forEachSegment(int[] order, int[] segmentOf, IndexConsumer action) {
+        int i = 0;
+        while (i < order.length) {
+            int segmentIndex = segmentOf[order[i]];
+            Segment segment = getSegment(segmentIndex);
+            segment.lock();
+            try {
+                do {
+                    action.accept(order[i]);
+                    i++;
+                } while (i < order.length && segmentOf[order[i]] == segmentIndex);
+            } finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    /**
+     * The same choice of a segment as in the ConcurrentReferenceHashMap.
+     */
+    private int segmentIndex(Object key) {
+        int segments = getSegmentsSize();
+        int shift = Integer.numberOfTrailingZeros(segments);
+        return (getHash(key) >>> (32 - shift)) & (segments - 1);
+    }
+
+
+    @FunctionalInterface
+    private interface KeyByIndex<K> {
+        K get(int index);
+    }
+
+    @FunctionalInterface
+    private interface IndexConsumer {
+        void accept(int index);
+    }
+}
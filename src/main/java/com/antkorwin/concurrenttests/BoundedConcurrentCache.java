@@ -0,0 +1,587 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Concurrent cache bounded by the number of entries, with the CLOCK
+ * (second chance) eviction and an optional expiration after write.
+ * Unlike the weak maps, the size of the cache doesn't depend on the GC.
+ *
+ * Entries are stored in a ConcurrentHashMap. A read doesn't write to shared
+ * state of the policy: it offers the entry to a small lossy ring buffer
+ * of its stripe, reads which don't fit into a full buffer are dropped.
+ * Buffers are drained by one thread at a time under the eviction lock,
+ * which sets the reference bits, appends new entries to the clock
+ * and evicts entries until the size is back under the maximum.
+ *
+ * Each write creates a new node, a replaced node stays in the clock as
+ * retired and is dropped when the clock hand reaches it.
+ *
+ * @author Korovin Anatoliy
+ */
+public class BoundedConcurrentCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final int NUMBER_OF_READ_BUFFERS =
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+    private final int maximumSize;
+    private final long expireAfterWriteNanos;
+
+    private final ReadBuffer[] readBuffers = new ReadBuffer[NUMBER_OF_READ_BUFFERS];
+    private final ConcurrentLinkedQueue<Node<K, V>> writeBuffer = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // guarded by the evictionLock
+    private final ArrayDeque<Node<K, V>> clock = new ArrayDeque<>();
+
+    private final ShardedCounter hits = new ShardedCounter();
+    private final ShardedCounter misses = new ShardedCounter();
+    private final ShardedCounter evictions = new ShardedCounter();
+    private final ShardedCounter expirations = new ShardedCounter();
+
+    private Set<Entry<K, V>> entrySet;
+
+    public BoundedConcurrentCache(int maximumSize) {
+        this(maximumSize, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param expireAfterWrite time to live of an entry after its last write, 0 - no expiration
+     */
+    public BoundedConcurrentCache(int maximumSize, long expireAfterWrite, TimeUnit unit) {
+        if (maximumSize <= 0 || expireAfterWrite < 0) {
+            throw new IllegalArgumentException("maximumSize must be > 0 and expireAfterWrite must be >= 0");
+        }
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.data = new ConcurrentHashMap<>(maximumSize);
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (isExpired(node, now())) {
+            misses.increment();
+            expire(node);
+            return null;
+        }
+        hits.increment();
+        recordRead(node);
+        return node.value;
+    }
+
+    /**
+     * Doesn't change statistics and the reference bit.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        Node<K, V> node = data.get(key);
+        return node != null && !isExpired(node, now());
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkValue(value);
+        long now = now();
+        Node<K, V> created = new Node<>(key, value, now);
+        Node<K, V> previous = data.put(key, created);
+        afterWrite(created);
+        if (previous == null) {
+            return null;
+        }
+        previous.retired = true;
+        return isExpired(previous, now) ? null : previous.value;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        checkValue(value);
+        Node<K, V> created = null;
+        while (true) {
+            long now = now();
+            Node<K, V> current = data.get(key);
+            if (current != null && !isExpired(current, now)) {
+                return current.value;
+            }
+            if (created == null) {
+                created = new Node<>(key, value, now);
+            }
+            boolean installed = (current == null)
+                                ? data.putIfAbsent(key, created) == null
+                                : data.replace(key, current, created);
+            if (installed) {
+                if (current != null) {
+                    current.retired = true;
+                    expirations.increment();
+                }
+                afterWrite(created);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * A hit doesn't lock anything, only a miss goes through the bin lock.
+     */
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        Object[] created = new Object[1];
+        Node<K, V> node = data.compute(key, (k, current) -> {
+            long now = now();
+            if (current != null && !isExpired(current, now)) {
+                return current;
+            }
+            if (current != null) {
+                current.retired = true;
+                expirations.increment();
+            }
+            V newValue = mappingFunction.apply(k);
+            if (newValue == null) {
+                return null;
+            }
+            Node<K, V> newNode = new Node<>(k, newValue, now);
+            created[0] = newNode;
+            return newNode;
+        });
+        if (created[0] != null) {
+            @SuppressWarnings("unchecked")
+            Node<K, V> newNode = (Node<K, V>) created[0];
+            afterWrite(newNode);
+        }
+        return (node == null) ? null : node.value;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        node.retired = true;
+        return isExpired(node, now()) ? null : node.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (value == null) {
+            return false;
+        }
+        Node<K, V> current = data.get(key);
+        if (current != null
+            && !isExpired(current, now())
+            && value.equals(current.value)
+            && data.remove(key, current)) {
+            current.retired = true;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        checkValue(oldValue);
+        checkValue(newValue);
+        long now = now();
+        Node<K, V> current = data.get(key);
+        if (current == null || isExpired(current, now) || !oldValue.equals(current.value)) {
+            return false;
+        }
+        Node<K, V> created = new Node<>(key, newValue, now);
+        if (!data.replace(key, current, created)) {
+            return false;
+        }
+        current.retired = true;
+        afterWrite(created);
+        return true;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        checkValue(value);
+        while (true) {
+            long now = now();
+            Node<K, V> current = data.get(key);
+            if (current == null || isExpired(current, now)) {
+                return null;
+            }
+            Node<K, V> created = new Node<>(key, value, now);
+            if (data.replace(key, current, created)) {
+                current.retired = true;
+                afterWrite(created);
+                return current.value;
+            }
+        }
+    }
+
+    /**
+     * @return number of entries including the expired ones which are not removed yet
+     */
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public void clear() {
+        evictionLock.lock();
+        try {
+            for (Node<K, V> node : data.values()) {
+                node.retired = true;
+            }
+            data.clear();
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> result = entrySet;
+        if (result == null) {
+            result = new EntrySet();
+            entrySet = result;
+        }
+        return result;
+    }
+
+    /**
+     * Drains buffers, evicts entries over the maximum size
+     * and removes all expired entries.
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+            if (expireAfterWriteNanos > 0) {
+                long now = now();
+                clock.removeIf(node -> {
+                    if (node.retired) {
+                        return true;
+                    }
+                    if (isExpired(node, now) && data.remove(node.key, node)) {
+                        node.retired = true;
+                        expirations.increment();
+                        return true;
+                    }
+                    return false;
+                });
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Statistics statistics() {
+        return new Statistics(hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+    }
+
+    private void recordRead(Node<K, V> node) {
+        ReadBuffer buffer = readBuffers[stripeOf(Thread.currentThread())];
+        if (buffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A writer waits for the eviction only when the cache is over
+     * the maximum size, otherwise it leaves the work to the thread
+     * which holds the lock.
+     */
+    private void afterWrite(Node<K, V> node) {
+        writeBuffer.add(node);
+        if (data.size() > maximumSize) {
+            evictionLock.lock();
+        } else if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // guarded by the evictionLock
+    private void maintenance() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drain();
+        }
+        Node<K, V> node;
+        while ((node = writeBuffer.poll()) != null) {
+            if (!node.retired) {
+                clock.addLast(node);
+            }
+        }
+        evict();
+        // retired nodes are dropped by the clock hand only under the pressure,
+        // without it they are dropped here
+        if (clock.size() > 2 * Math.max(data.size(), maximumSize)) {
+            clock.removeIf(n -> n.retired);
+        }
+    }
+
+    // guarded by the evictionLock
+    private void evict() {
+        long now = now();
+        while (data.size() > maximumSize) {
+            Node<K, V> node = clock.pollFirst();
+            if (node == null) {
+                return;
+            }
+            if (node.retired) {
+                continue;
+            }
+            boolean expired = isExpired(node, now);
+            if (node.referenced && !expired) {
+                // second chance
+                node.referenced = false;
+                clock.addLast(node);
+                continue;
+            }
+            if (data.remove(node.key, node)) {
+                node.retired = true;
+                (expired ? expirations : evictions).increment();
+            }
+        }
+    }
+
+    private void expire(Node<K, V> node) {
+        if (data.remove(node.key, node)) {
+            node.retired = true;
+            expirations.increment();
+        }
+    }
+
+    private long now() {
+        return (expireAfterWriteNanos == 0) ? 0 : System.nanoTime();
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return expireAfterWriteNanos != 0 && now - node.writeTime >= expireAfterWriteNanos;
+    }
+
+    private int stripeOf(Thread thread) {
+        int h = (int) thread.threadId() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (NUMBER_OF_READ_BUFFERS - 1);
+    }
+
+    private void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException("null values are not supported");
+        }
+    }
+
+
+    /**
+     * Counters since the creation of the cache.
+     */
+    public static final class Statistics {
+
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long expirationCount;
+
+        Statistics(long hitCount, long missCount, long evictionCount, long expirationCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getExpirationCount() {
+            return expirationCount;
+        }
+
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return (requests == 0) ? 1.0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, hitRate=%.4f, evictions=%d, expirations=%d",
+                                 hitCount, missCount, getHitRate(), evictionCount, expirationCount);
+        }
+    }
+
+    private static final class Node<K, V> {
+
+        private final K key;
+        private final V value;
+        private final long writeTime;
+        // guarded by the evictionLock
+        private boolean referenced;
+        private volatile boolean retired;
+
+        Node(K key, V value, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * Lossy ring buffer of reads, written by many threads
+     * and drained under the eviction lock.
+     */
+    private static final class ReadBuffer {
+
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Node<?, ?>> slots = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        /**
+         * @return true if the buffer is full and should be drained
+         */
+        boolean offer(Node<?, ?> node) {
+            long tail = writeCounter.get();
+            long size = tail - readCounter;
+            if (size >= SIZE) {
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) (tail & MASK), node);
+                return size + 1 == SIZE;
+            }
+            // lost a race with another reader, the read is dropped
+            return false;
+        }
+
+        // guarded by the evictionLock
+        void drain() {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & MASK);
+                Node<?, ?> node = slots.get(index);
+                if (node == null) {
+                    // the slot is taken, but the node isn't published yet
+                    break;
+                }
+                slots.lazySet(index, null);
+                node.referenced = true;
+            }
+            readCounter = head;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        /**
+         * Splits by bins of the data, as the ConcurrentHashMap does.
+         */
+        @Override
+        public Spliterator<Entry<K, V>> spliterator() {
+            return new MappingSpliterator<>(data.values().spliterator(),
+                                            node -> isExpired(node, now())
+                                                    ? null
+                                                    : new SimpleImmutableEntry<>(node.key, node.value));
+        }
+
+        @Override
+        public int size() {
+            return BoundedConcurrentCache.this.size();
+        }
+
+        @Override
+        public void clear() {
+            BoundedConcurrentCache.this.clear();
+        }
+    }
+
+    /**
+     * Skips expired entries, doesn't record reads.
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final Iterator<Node<K, V>> iterator = data.values().iterator();
+        private Entry<K, V> next;
+        private Entry<K, V> last;
+
+        @Override
+        public boolean hasNext() {
+            long now = now();
+            while (next == null && iterator.hasNext()) {
+                Node<K, V> node = iterator.next();
+                if (!isExpired(node, now)) {
+                    next = new SimpleImmutableEntry<>(node.key, node.value);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = null;
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            BoundedConcurrentCache.this.remove(last.getKey(), last.getValue());
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+
+/**
+ * ConcurrentMap with bulk operations. The default implementations
+ * just call the single-key operation for each key, maps with segment
+ * locks override them to take each lock once per batch.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface BulkConcurrentMap<K, V> extends ConcurrentMap<K, V> {
+
+    /**
+     * Applies {@link #compute} to each key of the batch,
+     * each single compute is atomic, but the whole batch is not.
+     */
+    default void computeAll(K[] keys, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        for (K key : keys) {
+            compute(key, remappingFunction);
+        }
+    }
+
+    /**
+     * Applies {@link #putIfAbsent} to each entry of the batch.
+     */
+    default void putAllIfAbsent(Map<? extends K, ? extends V> entries) {
+        entries.forEach(this::putIfAbsent);
+    }
+
+    /**
+     * Runs bulk operations on any ConcurrentMap, a map which is not
+     * a BulkConcurrentMap (like the ConcurrentHashMap) is processed key by key.
+     */
+    static <K, V> void computeAll(ConcurrentMap<K, V> map,
+                                  K[] keys,
+                                  BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (map instanceof BulkConcurrentMap) {
+            ((BulkConcurrentMap<K, V>) map).computeAll(keys, remappingFunction);
+        } else {
+            for (K key : keys) {
+                map.compute(key, remappingFunction);
+            }
+        }
+    }
+
+    static <K, V> void putAllIfAbsent(ConcurrentMap<K, V> map, Map<? extends K, ? extends V> entries) {
+        if (map instanceof BulkConcurrentMap) {
+            ((BulkConcurrentMap<K, V>) map).putAllIfAbsent(entries);
+        } else {
+            entries.forEach(map::putIfAbsent);
+        }
+    }
+}
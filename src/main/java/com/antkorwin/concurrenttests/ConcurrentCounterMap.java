@@ -0,0 +1,138 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Concurrent map of long counters, an alternative to
+ * {@code map.compute(key, (k, v) -> v == null ? 1 : v + 1)}
+ * which allocates a new boxed value on each update.
+ *
+ * Each key has a mutable cell padded on both sides, a cell is created
+ * once at the first update of the key. After that an increment is a lookup
+ * and an atomic add on the cell: no locks and no allocation.
+ *
+ * An increment which races with remove of the same key can be applied
+ * to the removed cell and lost.
+ *
+ * @author Korovin Anatoliy
+ */
+public class ConcurrentCounterMap<K> {
+
+    private static final Function<Object, Cell> CELL_FACTORY = k -> new Cell();
+
+    private final ConcurrentHashMap<K, Cell> cells;
+
+    public ConcurrentCounterMap() {
+        this.cells = new ConcurrentHashMap<>();
+    }
+
+    public ConcurrentCounterMap(int initialCapacity) {
+        this.cells = new ConcurrentHashMap<>(initialCapacity);
+    }
+
+    public long incrementAndGet(K key) {
+        return addAndGet(key, 1);
+    }
+
+    public long decrementAndGet(K key) {
+        return addAndGet(key, -1);
+    }
+
+    public long addAndGet(K key, long delta) {
+        return cellOf(key).addAndGet(delta);
+    }
+
+    public long getAndAdd(K key, long delta) {
+        return cellOf(key).getAndAdd(delta);
+    }
+
+    /**
+     * @return the value of the counter, 0 if there is no counter for the key
+     */
+    public long get(Object key) {
+        Cell cell = cells.get(key);
+        return (cell == null) ? 0 : cell.get();
+    }
+
+    /**
+     * @return the last value of the removed counter, 0 if there was no counter
+     */
+    public long remove(Object key) {
+        Cell cell = cells.remove(key);
+        return (cell == null) ? 0 : cell.get();
+    }
+
+    public boolean containsKey(Object key) {
+        return cells.containsKey(key);
+    }
+
+    public int size() {
+        return cells.size();
+    }
+
+    /**
+     * @return the sum of all counters, it is exact only if there are
+     * no concurrent updates
+     */
+    public long sum() {
+        long sum = 0;
+        for (Cell cell : cells.values()) {
+            sum += cell.get();
+        }
+        return sum;
+    }
+
+    public void clear() {
+        cells.clear();
+    }
+
+    @Override
+    public String toString() {
+        return cells.toString();
+    }
+
+    /**
+     * Lookup without the lock of computeIfAbsent for an existing counter.
+     */
+    private Cell cellOf(K key) {
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            cell = cells.computeIfAbsent(key, CELL_FACTORY);
+        }
+        return cell;
+    }
+
+
+    /**
+     * The value in the middle of an array: fields of a subclass would pad it
+     * only after the value, the array keeps 128 bytes (a pair of cache lines)
+     * on both sides from neighbours in the heap.
+     */
+    private static final class Cell extends AtomicLongArray {
+
+        private static final int PADDING = 16;
+
+        Cell() {
+            super(2 * PADDING + 1);
+        }
+
+        long get() {
+            return get(PADDING);
+        }
+
+        long addAndGet(long delta) {
+            return addAndGet(PADDING, delta);
+        }
+
+        long getAndAdd(long delta) {
+            return getAndAdd(PADDING, delta);
+        }
+
+        @Override
+        public String toString() {
+            return Long.toString(get());
+        }
+    }
+}
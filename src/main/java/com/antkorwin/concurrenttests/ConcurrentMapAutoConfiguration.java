@@ -0,0 +1,85 @@
+package com.antkorwin.concurrenttests;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.util.ClassUtils;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registers a bean for each map and mutex factory of the ConcurrentMapProperties,
+ * and a ConcurrentMapMetrics (a Micrometer MeterBinder) named [bean]Metrics
+ * for each of them when the Micrometer is on the classpath.
+ *
+ * Beans are the maps and factories themselves, not proxies,
+ * so the wiring doesn't add anything to their operations.
+ *
+ * @author Korovin Anatoliy
+ */
+@AutoConfiguration
+public class ConcurrentMapAutoConfiguration {
+
+    private static final String METER_BINDER_CLASS = "io.micrometer.core.instrument.binder.MeterBinder";
+
+    /**
+     * Static, it is a post-processor of the bean factory.
+     */
+    @Bean
+    public static BeanDefinitionRegistryPostProcessor concurrentMapBeanRegistrar(Environment environment) {
+        return new Registrar(environment);
+    }
+
+
+    static final class Registrar implements BeanDefinitionRegistryPostProcessor {
+
+        private final Environment environment;
+
+        Registrar(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+            ConcurrentMapProperties properties = Binder.get(environment)
+                                                       .bind(ConcurrentMapProperties.PREFIX, ConcurrentMapProperties.class)
+                                                       .orElseGet(ConcurrentMapProperties::new);
+            boolean metrics = ClassUtils.isPresent(METER_BINDER_CLASS, getClass().getClassLoader());
+
+            properties.getMaps().forEach((name, map) -> {
+                registry.registerBeanDefinition(name, BeanDefinitionBuilder.genericBeanDefinition(ConcurrentMap.class, map::create)
+                                                                           .getBeanDefinition());
+                if (metrics) {
+                    registerMetrics(registry, name);
+                }
+            });
+            properties.getMutexFactories().forEach((name, factory) -> {
+                @SuppressWarnings("unchecked")
+                Class<Object> beanClass = (Class<Object>) factory.getImplementation().getBeanClass();
+                registry.registerBeanDefinition(name, BeanDefinitionBuilder.genericBeanDefinition(beanClass, factory::create)
+                                                                           .getBeanDefinition());
+                if (metrics) {
+                    registerMetrics(registry, name);
+                }
+            });
+        }
+
+        @Override
+        public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        }
+
+        private void registerMetrics(BeanDefinitionRegistry registry, String name) {
+            registry.registerBeanDefinition(name + "Metrics",
+                                            BeanDefinitionBuilder.genericBeanDefinition(ConcurrentMapMetrics.class)
+                                                                 .addConstructorArgValue(name)
+                                                                 .addConstructorArgReference(name)
+                                                                 .getBeanDefinition());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutexFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of a map or a mutex factory bean, tagged by the name of the bean.
+ * They only read the state which the bean keeps anyway:
+ * <ul>
+ * <li>concurrent.map.size, concurrent.mutex.factory.size;</li>
+ * <li>concurrent.map.purged of the LockFreeReferenceHashMap (and of the LockFreeXMutexFactory);</li>
+ * <li>concurrent.map.evictions, expirations, hits and misses of the BoundedConcurrentCache;</li>
+ * <li>concurrent.map.layout of the AdaptiveConcurrentMap (0 - synchronized, 1 - striped, 2 - concurrent);</li>
+ * <li>concurrent.map.contended, concurrent.map.retries and concurrent.map.latency
+ * (by operation and quantile) of an instrumented map. These are gauges of the current
+ * interval of the MapStatisticsReporter, which resets statistics after each report.</li>
+ * </ul>
+ *
+ * @author Korovin Anatoliy
+ */
+public class ConcurrentMapMetrics implements MeterBinder {
+
+    private static final long SNAPSHOT_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final String name;
+    private final Object bean;
+
+    public ConcurrentMapMetrics(String name, Object bean) {
+        this.name = name;
+        this.bean = bean;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("name", name);
+        Object target = bean;
+
+        if (bean instanceof Map) {
+            Gauge.builder("concurrent.map.size", (Map<?, ?>) bean, Map::size)
+                 .tags(tags)
+                 .register(registry);
+        }
+        if (bean instanceof InstrumentedConcurrentMap) {
+            InstrumentedConcurrentMap<?, ?> instrumented = (InstrumentedConcurrentMap<?, ?>) bean;
+            bindStatistics(registry, tags, new CachedStatistics(instrumented));
+            target = instrumented.getDelegate();
+        }
+
+        if (target instanceof LockFreeReferenceHashMap) {
+            FunctionCounter.builder("concurrent.map.purged",
+                                    (LockFreeReferenceHashMap<?, ?>) target,
+                                    LockFreeReferenceHashMap::getPurgedCount)
+                           .tags(tags)
+                           .register(registry);
+        }
+        if (target instanceof BoundedConcurrentCache) {
+            bindCache(registry, tags, (BoundedConcurrentCache<?, ?>) target);
+        }
+        if (target instanceof AdaptiveConcurrentMap) {
+            Gauge.builder("concurrent.map.layout",
+                          (AdaptiveConcurrentMap<?, ?>) target,
+                          map -> map.getLayout().ordinal())
+                 .tags(tags)
+                 .register(registry);
+        }
+
+        if (target instanceof XMutexFactory) {
+            Gauge.builder("concurrent.mutex.factory.size", (XMutexFactory<?>) target, XMutexFactory::size)
+                 .tags(tags)
+                 .register(registry);
+        }
+        if (target instanceof LockFreeXMutexFactory) {
+            LockFreeXMutexFactory<?> factory = (LockFreeXMutexFactory<?>) target;
+            Gauge.builder("concurrent.mutex.factory.size", factory, LockFreeXMutexFactory::size)
+                 .tags(tags)
+                 .register(registry);
+            FunctionCounter.builder("concurrent.map.purged", factory, f -> f.map.getPurgedCount())
+                           .tags(tags)
+                           .register(registry);
+        }
+        if (target instanceof AsyncXMutexFactory) {
+            Gauge.builder("concurrent.mutex.factory.size", (AsyncXMutexFactory<?>) target, AsyncXMutexFactory::size)
+                 .tags(tags)
+                 .register(registry);
+        }
+    }
+
+    private void bindCache(MeterRegistry registry, Tags tags, BoundedConcurrentCache<?, ?> cache) {
+        FunctionCounter.builder("concurrent.map.evictions", cache, c -> c.statistics().getEvictionCount())
+                       .tags(tags)
+                       .register(registry);
+        FunctionCounter.builder("concurrent.map.expirations", cache, c -> c.statistics().getExpirationCount())
+                       .tags(tags)
+                       .register(registry);
+        FunctionCounter.builder("concurrent.map.hits", cache, c -> c.statistics().getHitCount())
+                       .tags(tags)
+                       .register(registry);
+        FunctionCounter.builder("concurrent.map.misses", cache, c -> c.statistics().getMissCount())
+                       .tags(tags)
+                       .register(registry);
+    }
+
+    private void bindStatistics(MeterRegistry registry, Tags tags, CachedStatistics statistics) {
+        Gauge.builder("concurrent.map.contended", statistics, s -> s.get().getContended())
+             .tags(tags)
+             .register(registry);
+        Gauge.builder("concurrent.map.retries", statistics, s -> s.get().getRetries())
+             .tags(tags)
+             .register(registry);
+
+        for (InstrumentedConcurrentMap.Operation operation : InstrumentedConcurrentMap.Operation.values()) {
+            Tags operationTags = tags.and("operation", operation.name().toLowerCase(Locale.ROOT));
+            for (double quantile : QUANTILES) {
+                TimeGauge.builder("concurrent.map.latency",
+                                  statistics,
+                                  TimeUnit.NANOSECONDS,
+                                  s -> s.get().getLatencies().get(operation).getValueAtPercentile(quantile * 100))
+                         .tags(operationTags.and("quantile", String.valueOf(quantile)))
+                         .register(registry);
+            }
+            TimeGauge.builder("concurrent.map.latency.max",
+                              statistics,
+                              TimeUnit.NANOSECONDS,
+                              s -> s.get().getLatencies().get(operation).getMax())
+                     .tags(operationTags)
+                     .register(registry);
+        }
+    }
+
+
+    /**
+     * A snapshot of all histograms is taken once for all gauges of a scrape.
+     */
+    private static final class CachedStatistics {
+
+        private final InstrumentedConcurrentMap<?, ?> map;
+        private volatile MapStatistics statistics;
+        private volatile long takenAt;
+
+        CachedStatistics(InstrumentedConcurrentMap<?, ?> map) {
+            this.map = map;
+        }
+
+        MapStatistics get() {
+            long now = System.nanoTime();
+            MapStatistics current = statistics;
+            if (current == null || now - takenAt > SNAPSHOT_TTL_NANOS) {
+                current = map.snapshot();
+                statistics = current;
+                takenAt = now;
+            }
+            return current;
+        }
+    }
+}
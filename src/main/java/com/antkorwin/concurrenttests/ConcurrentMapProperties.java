@@ -0,0 +1,296 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutexFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named maps and mutex factories, each one becomes a bean with the same name:
+ * <pre>
+ * concurrent-map.maps.sessions.implementation=LOCK_FREE_REFERENCE_HASH_MAP
+ * concurrent-map.maps.sessions.initial-capacity=1024
+ * concurrent-map.maps.sessions.reference-type=SOFT
+ * concurrent-map.maps.sessions.purge-policy=BACKGROUND
+ * concurrent-map.maps.sessions.instrumented=true
+ * concurrent-map.mutex-factories.orderLocks.implementation=XMUTEX_FACTORY
+ * concurrent-map.mutex-factories.orderLocks.concurrency-level=32
+ * </pre>
+ *
+ * @author Korovin Anatoliy
+ */
+public class ConcurrentMapProperties {
+
+    public static final String PREFIX = "concurrent-map";
+
+    private Map<String, MapProperties> maps = new LinkedHashMap<>();
+    private Map<String, MutexFactoryProperties> mutexFactories = new LinkedHashMap<>();
+
+    public Map<String, MapProperties> getMaps() {
+        return maps;
+    }
+
+    public void setMaps(Map<String, MapProperties> maps) {
+        this.maps = maps;
+    }
+
+    public Map<String, MutexFactoryProperties> getMutexFactories() {
+        return mutexFactories;
+    }
+
+    public void setMutexFactories(Map<String, MutexFactoryProperties> mutexFactories) {
+        this.mutexFactories = mutexFactories;
+    }
+
+
+    public enum MapType {
+
+        CONCURRENT_HASH_MAP {
+            @Override
+            ConcurrentMap<Object, Object> create(MapProperties properties) {
+                return new ConcurrentHashMap<>(properties.getInitialCapacity(),
+                                               LOAD_FACTOR,
+                                               properties.getConcurrencyLevel());
+            }
+        },
+
+        /**
+         * ConcurrentReferenceHashMap from the xsync
+         */
+        CONCURRENT_REFERENCE_HASH_MAP {
+            @Override
+            ConcurrentMap<Object, Object> create(MapProperties properties) {
+                return new com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap<>(
+                        properties.getInitialCapacity(),
+                        LOAD_FACTOR,
+                        properties.getConcurrencyLevel(),
+                        com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap.ReferenceType.valueOf(
+                                properties.getReferenceType().name()));
+            }
+        },
+
+        /**
+         * ConcurrentReferenceHashMap from the spring-core
+         */
+        SPRING_CONCURRENT_REFERENCE_HASH_MAP {
+            @Override
+            ConcurrentMap<Object, Object> create(MapProperties properties) {
+                return new org.springframework.util.ConcurrentReferenceHashMap<>(
+                        properties.getInitialCapacity(),
+                        LOAD_FACTOR,
+                        properties.getConcurrencyLevel(),
+                        org.springframework.util.ConcurrentReferenceHashMap.ReferenceType.valueOf(
+                                properties.getReferenceType().name()));
+            }
+        },
+
+        BATCHING_CONCURRENT_REFERENCE_HASH_MAP {
+            @Override
+            ConcurrentMap<Object, Object> create(MapProperties properties) {
+                return new BatchingConcurrentReferenceHashMap<>(
+                        properties.getInitialCapacity(),
+                        LOAD_FACTOR,
+                        properties.getConcurrencyLevel(),
+                        BatchingConcurrentReferenceHashMap.ReferenceType.valueOf(properties.getReferenceType().name()));
+            }
+        },
+
+        LOCK_FREE_REFERENCE_HASH_MAP {
+            @Override
+            ConcurrentMap<Object, Object> create(MapProperties properties) {
+                return new LockFreeReferenceHashMap<>(properties.getInitialCapacity(),
+                                                      properties.getReferenceType(),
+                                                      properties.getPurgePolicy());
+            }
+        },
+
+        /**
+         * The initial capacity is the maximum size
+         */
+        BOUNDED_CONCURRENT_CACHE {
+            @Override
+            ConcurrentMap<Object, Object> create(MapProperties properties) {
+                return new BoundedConcurrentCache<>(properties.getInitialCapacity());
+            }
+        },
+
+        ADAPTIVE_CONCURRENT_MAP {
+            @Override
+            ConcurrentMap<Object, Object> create(MapProperties properties) {
+                return new AdaptiveConcurrentMap<>();
+            }
+        };
+
+        private static final float LOAD_FACTOR = 0.75f;
+
+        abstract ConcurrentMap<Object, Object> create(MapProperties properties);
+    }
+
+    public enum MutexFactoryType {
+
+        XMUTEX_FACTORY(XMutexFactory.class) {
+            @Override
+            Object create(MutexFactoryProperties properties) {
+                return new XMutexFactory<>(properties.getConcurrencyLevel(),
+                                           com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap.ReferenceType.valueOf(
+                                                   properties.getReferenceType().name()));
+            }
+        },
+
+        LOCK_FREE_XMUTEX_FACTORY(LockFreeXMutexFactory.class) {
+            @Override
+            Object create(MutexFactoryProperties properties) {
+                return new LockFreeXMutexFactory<>(properties.getInitialCapacity(),
+                                                   properties.getReferenceType(),
+                                                   properties.getPurgePolicy());
+            }
+        },
+
+        ASYNC_XMUTEX_FACTORY(AsyncXMutexFactory.class) {
+            @Override
+            Object create(MutexFactoryProperties properties) {
+                return new AsyncXMutexFactory<>();
+            }
+        };
+
+        private final Class<?> beanClass;
+
+        MutexFactoryType(Class<?> beanClass) {
+            this.beanClass = beanClass;
+        }
+
+        Class<?> getBeanClass() {
+            return beanClass;
+        }
+
+        abstract Object create(MutexFactoryProperties properties);
+    }
+
+    public static class MapProperties {
+
+        private MapType implementation = MapType.CONCURRENT_HASH_MAP;
+        private int initialCapacity = 16;
+        private int concurrencyLevel = 16;
+        private LockFreeReferenceHashMap.ReferenceType referenceType = LockFreeReferenceHashMap.ReferenceType.WEAK;
+        /**
+         * Used by the LOCK_FREE_REFERENCE_HASH_MAP only
+         */
+        private LockFreeReferenceHashMap.PurgePolicy purgePolicy = LockFreeReferenceHashMap.PurgePolicy.INLINE;
+        /**
+         * Wraps the map in the InstrumentedConcurrentMap to measure latency and contention,
+         * it has a cost on each operation.
+         */
+        private boolean instrumented = false;
+
+        public MapType getImplementation() {
+            return implementation;
+        }
+
+        public void setImplementation(MapType implementation) {
+            this.implementation = implementation;
+        }
+
+        public int getInitialCapacity() {
+            return initialCapacity;
+        }
+
+        public void setInitialCapacity(int initialCapacity) {
+            this.initialCapacity = initialCapacity;
+        }
+
+        public int getConcurrencyLevel() {
+            return concurrencyLevel;
+        }
+
+        public void setConcurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+        }
+
+        public LockFreeReferenceHashMap.ReferenceType getReferenceType() {
+            return referenceType;
+        }
+
+        public void setReferenceType(LockFreeReferenceHashMap.ReferenceType referenceType) {
+            this.referenceType = referenceType;
+        }
+
+        public LockFreeReferenceHashMap.PurgePolicy getPurgePolicy() {
+            return purgePolicy;
+        }
+
+        public void setPurgePolicy(LockFreeReferenceHashMap.PurgePolicy purgePolicy) {
+            this.purgePolicy = purgePolicy;
+        }
+
+        public boolean isInstrumented() {
+            return instrumented;
+        }
+
+        public void setInstrumented(boolean instrumented) {
+            this.instrumented = instrumented;
+        }
+
+        ConcurrentMap<Object, Object> create() {
+            ConcurrentMap<Object, Object> map = implementation.create(this);
+            return instrumented ? new InstrumentedConcurrentMap<>(map) : map;
+        }
+    }
+
+    public static class MutexFactoryProperties {
+
+        private MutexFactoryType implementation = MutexFactoryType.XMUTEX_FACTORY;
+        private int initialCapacity = 16;
+        private int concurrencyLevel = 16;
+        private LockFreeReferenceHashMap.ReferenceType referenceType = LockFreeReferenceHashMap.ReferenceType.WEAK;
+        /**
+         * Used by the LOCK_FREE_XMUTEX_FACTORY only
+         */
+        private LockFreeReferenceHashMap.PurgePolicy purgePolicy = LockFreeReferenceHashMap.PurgePolicy.INLINE;
+
+        public MutexFactoryType getImplementation() {
+            return implementation;
+        }
+
+        public void setImplementation(MutexFactoryType implementation) {
+            this.implementation = implementation;
+        }
+
+        public int getInitialCapacity() {
+            return initialCapacity;
+        }
+
+        public void setInitialCapacity(int initialCapacity) {
+            this.initialCapacity = initialCapacity;
+        }
+
+        public int getConcurrencyLevel() {
+            return concurrencyLevel;
+        }
+
+        public void setConcurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+        }
+
+        public LockFreeReferenceHashMap.ReferenceType getReferenceType() {
+            return referenceType;
+        }
+
+        public void setReferenceType(LockFreeReferenceHashMap.ReferenceType referenceType) {
+            this.referenceType = referenceType;
+        }
+
+        public LockFreeReferenceHashMap.PurgePolicy getPurgePolicy() {
+            return purgePolicy;
+        }
+
+        public void setPurgePolicy(LockFreeReferenceHashMap.PurgePolicy purgePolicy) {
+            this.purgePolicy = purgePolicy;
+        }
+
+        Object create() {
+            return implementation.create(this);
+        }
+    }
+}
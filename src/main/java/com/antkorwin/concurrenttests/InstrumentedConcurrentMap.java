@@ -0,0 +1,370 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Decorator of a ConcurrentMap which records latency of each method
+ * into a LatencyHistogram (in nanoseconds).
+ *
+ * It also counts contention per bucket of key hashes: an operation
+ * which finds another operation in flight on the same bucket is counted
+ * as contended. Retries are observable only through remapping functions:
+ * each extra call of a function in a single compute/merge is a retry
+ * of the underlying CAS loop or lock. Functions are wrapped in a counting
+ * function which each thread reuses, so these methods don't allocate.
+ *
+ * The in-flight and the contended counters of a bucket share its own
+ * cache line, operations on keys of different buckets don't touch
+ * a common line, histograms are striped per thread.
+ *
+ * @author Korovin Anatoliy
+ */
+public class InstrumentedConcurrentMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final int DEFAULT_NUMBER_OF_BUCKETS = 64;
+    // counters of different buckets are in different cache lines
+    private static final int PADDING = 16;
+    private static final int CONTENDED_OFFSET = 1;
+    private static final ThreadLocal<CountingFunction> COUNTING_FUNCTIONS =
+            ThreadLocal.withInitial(CountingFunction::new);
+
+    private final ConcurrentMap<K, V> delegate;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Operation.values().length];
+    // per bucket: the number of operations in flight, the number of contended operations
+    private final AtomicLongArray counters;
+    private final LongAdder retries = new LongAdder();
+    private final int bucketMask;
+
+    public InstrumentedConcurrentMap(ConcurrentMap<K, V> delegate) {
+        this(delegate, DEFAULT_NUMBER_OF_BUCKETS);
+    }
+
+    /**
+     * @param numberOfBuckets number of buckets to count contention, rounded up to a power of two
+     */
+    public InstrumentedConcurrentMap(ConcurrentMap<K, V> delegate, int numberOfBuckets) {
+        this.delegate = delegate;
+        int buckets = (numberOfBuckets <= 1) ? 1 : Integer.highestOneBit(numberOfBuckets - 1) << 1;
+        this.counters = new AtomicLongArray(buckets * PADDING);
+        this.bucketMask = buckets - 1;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        try {
+            return delegate.get(key);
+        } finally {
+            exit(bucket, Operation.GET, start);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        try {
+            return delegate.containsKey(key);
+        } finally {
+            exit(bucket, Operation.GET, start);
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        try {
+            return delegate.put(key, value);
+        } finally {
+            exit(bucket, Operation.PUT, start);
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        try {
+            return delegate.putIfAbsent(key, value);
+        } finally {
+            exit(bucket, Operation.PUT_IF_ABSENT, start);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        try {
+            return delegate.remove(key);
+        } finally {
+            exit(bucket, Operation.REMOVE, start);
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        try {
+            return delegate.remove(key, value);
+        } finally {
+            exit(bucket, Operation.REMOVE, start);
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        try {
+            return delegate.replace(key, oldValue, newValue);
+        } finally {
+            exit(bucket, Operation.REPLACE, start);
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        try {
+            return delegate.replace(key, value);
+        } finally {
+            exit(bucket, Operation.REPLACE, start);
+        }
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        CountingFunction counting = CountingFunction.acquire(mappingFunction);
+        try {
+            return delegate.computeIfAbsent(key, counting.<K, V>asFunction());
+        } finally {
+            countRetries(counting.release());
+            exit(bucket, Operation.COMPUTE_IF_ABSENT, start);
+        }
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        CountingFunction counting = CountingFunction.acquire(remappingFunction);
+        try {
+            return delegate.computeIfPresent(key, counting.<K, V, V>asBiFunction());
+        } finally {
+            countRetries(counting.release());
+            exit(bucket, Operation.COMPUTE, start);
+        }
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        CountingFunction counting = CountingFunction.acquire(remappingFunction);
+        try {
+            return delegate.compute(key, counting.<K, V, V>asBiFunction());
+        } finally {
+            countRetries(counting.release());
+            exit(bucket, Operation.COMPUTE, start);
+        }
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        long start = System.nanoTime();
+        int bucket = enter(key);
+        CountingFunction counting = CountingFunction.acquire(remappingFunction);
+        try {
+            return delegate.merge(key, value, counting.<V, V, V>asBiFunction());
+        } finally {
+            countRetries(counting.release());
+            exit(bucket, Operation.MERGE, start);
+        }
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return delegate.containsValue(value);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        delegate.putAll(m);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return delegate.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return delegate.values();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return delegate.entrySet();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return delegate.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return delegate.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    public ConcurrentMap<K, V> getDelegate() {
+        return delegate;
+    }
+
+    public MapStatistics snapshot() {
+        return takeSnapshot(false);
+    }
+
+    public MapStatistics snapshotAndReset() {
+        return takeSnapshot(true);
+    }
+
+    public void reset() {
+        takeSnapshot(true);
+    }
+
+    private MapStatistics takeSnapshot(boolean reset) {
+        EnumMap<Operation, LatencyHistogram.Snapshot> latencies = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = histograms[operation.ordinal()];
+            latencies.put(operation, reset ? histogram.snapshotAndReset() : histogram.snapshot());
+        }
+        long[] contendedCounts = new long[bucketMask + 1];
+        for (int i = 0; i < contendedCounts.length; i++) {
+            int index = i * PADDING + CONTENDED_OFFSET;
+            contendedCounts[i] = reset ? counters.getAndSet(index, 0) : counters.get(index);
+        }
+        long retryCount = reset ? retries.sumThenReset() : retries.sum();
+        return new MapStatistics(latencies, contendedCounts, retryCount, delegate.size());
+    }
+
+    private int enter(Object key) {
+        int bucket = spread(key) & bucketMask;
+        if (counters.incrementAndGet(bucket * PADDING) > 1) {
+            counters.incrementAndGet(bucket * PADDING + CONTENDED_OFFSET);
+        }
+        return bucket;
+    }
+
+    private void exit(int bucket, Operation operation, long start) {
+        counters.decrementAndGet(bucket * PADDING);
+        histograms[operation.ordinal()].record(System.nanoTime() - start);
+    }
+
+    private static int spread(Object key) {
+        int h = (key == null) ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+
+    public enum Operation {
+        GET, PUT, PUT_IF_ABSENT, REMOVE, REPLACE, COMPUTE, COMPUTE_IF_ABSENT, MERGE
+    }
+
+    private void countRetries(int calls) {
+        if (calls > 1) {
+            retries.add(calls - 1);
+        }
+    }
+
+    /**
+     * Function which counts its calls, a thread reuses its instance,
+     * a new one is taken only for a compute nested in a function.
+     */
+    @SuppressWarnings("unchecked")
+    private static final class CountingFunction implements BiFunction<Object, Object, Object> {
+
+        // a view for computeIfAbsent, created once with the instance
+        private final Function<Object, Object> unary = this::applyUnary;
+        private Object function;
+        private int calls;
+        private boolean busy;
+
+        static CountingFunction acquire(Object function) {
+            CountingFunction counting = COUNTING_FUNCTIONS.get();
+            if (counting.busy) {
+                counting = new CountingFunction();
+            }
+            counting.function = function;
+            counting.calls = 0;
+            counting.busy = true;
+            return counting;
+        }
+
+        /**
+         * @return number of calls of the function
+         */
+        int release() {
+            function = null;
+            busy = false;
+            return calls;
+        }
+
+        <T, R> Function<T, R> asFunction() {
+            return (Function<T, R>) (Function<?, ?>) unary;
+        }
+
+        <T, U, R> BiFunction<T, U, R> asBiFunction() {
+            return (BiFunction<T, U, R>) (BiFunction<?, ?, ?>) this;
+        }
+
+        private Object applyUnary(Object key) {
+            calls++;
+            return ((Function<Object, Object>) function).apply(key);
+        }
+
+        @Override
+        public Object apply(Object first, Object second) {
+            calls++;
+            return ((BiFunction<Object, Object, Object>) function).apply(first, second);
+        }
+    }
+}
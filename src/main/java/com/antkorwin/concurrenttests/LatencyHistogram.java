@@ -0,0 +1,184 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with log-linear buckets, like the HdrHistogram:
+ * each power of two is split in 8 sub-buckets, so the relative error
+ * of a percentile is below 12.5% for any value. Recording is a single
+ * atomic increment and doesn't allocate.
+ *
+ * Counters are striped like cells of the ShardedCounter: a thread records
+ * into the stripe chosen by its id, so threads which record the same
+ * latency don't increment the same counter. Snapshots sum all stripes.
+ *
+ * @author Korovin Anatoliy
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUMBER_OF_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    // 16 longs = 128 bytes between stripes, so edges of stripes don't share a cache line
+    private static final int PADDING = 16;
+    private static final int STRIPE_LENGTH = NUMBER_OF_BUCKETS + PADDING;
+
+    private final AtomicLongArray counts;
+    private final int mask;
+
+    /**
+     * A stripe for each core.
+     */
+    public LatencyHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes number of stripes, rounded up to a power of two
+     */
+    public LatencyHistogram(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("number of stripes must be > 0");
+        }
+        int size = (stripes == 1) ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.counts = new AtomicLongArray(size * STRIPE_LENGTH);
+        this.mask = size - 1;
+    }
+
+    public void record(long value) {
+        counts.getAndIncrement(stripeOf(Thread.currentThread()) + bucketOf(Math.max(0, value)));
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[NUMBER_OF_BUCKETS];
+        for (int stripe = 0; stripe < counts.length(); stripe += STRIPE_LENGTH) {
+            for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+                copy[i] += counts.get(stripe + i);
+            }
+        }
+        return new Snapshot(copy);
+    }
+
+    /**
+     * Takes the snapshot and resets counters, a value recorded
+     * concurrently gets either in this snapshot or in the next one.
+     */
+    public Snapshot snapshotAndReset() {
+        long[] copy = new long[NUMBER_OF_BUCKETS];
+        for (int stripe = 0; stripe < counts.length(); stripe += STRIPE_LENGTH) {
+            for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+                copy[i] += counts.getAndSet(stripe + i, 0);
+            }
+        }
+        return new Snapshot(copy);
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * Ids of threads are sequential, the multiplication spreads them
+     * to the different stripes.
+     */
+    private int stripeOf(Thread thread) {
+        int h = (int) thread.threadId() * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & mask) * STRIPE_LENGTH;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value of the bucket
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+
+    /**
+     * Immutable state of the histogram.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long totalCount;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            this.totalCount = total;
+        }
+
+        public long getCount() {
+            return totalCount;
+        }
+
+        /**
+         * @param percentile in the range [0, 100]
+         * @return the upper bound of the bucket with the percentile, 0 for an empty histogram
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueOf(i);
+                }
+            }
+            return getMax();
+        }
+
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestValueOf(i);
+                }
+            }
+            return 0;
+        }
+
+        public double getMean() {
+            if (totalCount == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                sum += (double) counts[i] * highestValueOf(i);
+            }
+            return sum / totalCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d p50=%d p99=%d p99.9=%d max=%d",
+                                 totalCount,
+                                 getValueAtPercentile(50),
+                                 getValueAtPercentile(99),
+                                 getValueAtPercentile(99.9),
+                                 getMax());
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.antkorwin.concurrenttests;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Concurrent map with weak (or soft) references to values,
+ * an alternative to the ConcurrentReferenceHashMap.
+ *
+ * The ConcurrentReferenceHashMap takes a segment lock on each write
+ * and drains the reference queue inside this lock. This map keeps
+ * references in the ConcurrentHashMap, so the bin heads are updated
+ * by CAS and a write locks only a single bin. Cleared references
+ * are purged by one thread at a time, other threads never wait for it.
+ *
+ * Keys are held strongly and an entry lives while its value is reachable,
+ * so the value should keep a reference to its key (like the XMutex does).
+ *
+ * The PurgePolicy decides who pays for the purge: writes (INLINE, up to
+ * a thousand entries per write), each write a little (AMORTIZED) or
+ * a shared background thread (BACKGROUND), then writes never purge
+ * and cleared entries stay in the table until the next round of the thread.
+ *
+ * @author Korovin Anatoliy
+ */
+public class LockFreeReferenceHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int MAX_PURGE_PER_CALL = 1_000;
+    private static final int AMORTIZED_PURGE_PER_CALL = 4;
+
+    private final ConcurrentHashMap<K, ValueReference<K, V>> table;
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+    private final AtomicBoolean purging = new AtomicBoolean(false);
+    private final ReferenceType referenceType;
+    private final PurgePolicy purgePolicy;
+    // written only by the purging thread
+    private volatile long purgedCount;
+
+    private Set<Entry<K, V>> entrySet;
+
+    public LockFreeReferenceHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, ReferenceType.WEAK);
+    }
+
+    public LockFreeReferenceHashMap(int initialCapacity) {
+        this(initialCapacity, ReferenceType.WEAK);
+    }
+
+    public LockFreeReferenceHashMap(int initialCapacity, ReferenceType referenceType) {
+        this(initialCapacity, referenceType, PurgePolicy.INLINE);
+    }
+
+    public LockFreeReferenceHashMap(int initialCapacity, ReferenceType referenceType, PurgePolicy purgePolicy) {
+        this.table = new ConcurrentHashMap<>(initialCapacity);
+        this.referenceType = referenceType;
+        this.purgePolicy = purgePolicy;
+        if (purgePolicy == PurgePolicy.BACKGROUND) {
+            BackgroundPurger.register(this);
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        return dereference(table.get(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkValue(value);
+        V old = dereference(table.put(key, createReference(key, value)));
+        purgeAfterWrite();
+        return old;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        checkValue(value);
+        ValueReference<K, V> created = null;
+        while (true) {
+            ValueReference<K, V> current = table.get(key);
+            V existing = dereference(current);
+            if (existing != null) {
+                return existing;
+            }
+            if (created == null) {
+                created = createReference(key, value);
+            }
+            boolean installed = (current == null)
+                                ? table.putIfAbsent(key, created) == null
+                                : table.replace(key, current, created);
+            if (installed) {
+                purgeAfterWrite();
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        V old = dereference(table.remove(key));
+        purgeAfterWrite();
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (value == null) {
+            return false;
+        }
+        ValueReference<K, V> current = table.get(key);
+        return current != null
+               && value.equals(current.get())
+               && table.remove(key, current);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        checkValue(oldValue);
+        checkValue(newValue);
+        ValueReference<K, V> current = table.get(key);
+        return current != null
+               && oldValue.equals(current.get())
+               && table.replace(key, current, createReference(key, newValue));
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        checkValue(value);
+        ValueReference<K, V> created = createReference(key, value);
+        while (true) {
+            ValueReference<K, V> current = table.get(key);
+            V existing = dereference(current);
+            if (existing == null) {
+                return null;
+            }
+            if (table.replace(key, current, created)) {
+                return existing;
+            }
+        }
+    }
+
+    /**
+     * The fast path reads the bin without locking,
+     * only a missed or cleared value goes through the bin lock.
+     */
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        return compute(key, (k, v) -> (v != null) ? v : mappingFunction.apply(k));
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return compute(key, (k, v) -> (v != null) ? remappingFunction.apply(k, v) : null);
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        // the new value must stay strongly reachable until it is returned,
+        // otherwise the GC can clear it right after the bin is unlocked
+        Object[] result = new Object[1];
+        table.compute(key, (k, current) -> {
+            V oldValue = dereference(current);
+            V newValue = remappingFunction.apply(k, oldValue);
+            result[0] = newValue;
+            if (newValue == null) {
+                return null;
+            }
+            return (newValue == oldValue) ? current : createReference(k, newValue);
+        });
+        purgeAfterWrite();
+        @SuppressWarnings("unchecked")
+        V value = (V) result[0];
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        checkValue(value);
+        return compute(key, (k, v) -> (v == null) ? value : remappingFunction.apply(v, value));
+    }
+
+    /**
+     * @return number of entries including the cleared ones which are not purged yet
+     */
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> result = entrySet;
+        if (result == null) {
+            result = new EntrySet();
+            entrySet = result;
+        }
+        return result;
+    }
+
+    public ReferenceType getReferenceType() {
+        return referenceType;
+    }
+
+    public PurgePolicy getPurgePolicy() {
+        return purgePolicy;
+    }
+
+    /**
+     * @return number of entries with cleared values removed since the creation of the map
+     */
+    public long getPurgedCount() {
+        return purgedCount;
+    }
+
+    /**
+     * Removes entries with cleared values. Only one thread purges at a time,
+     * a thread which finds the purge in progress returns immediately.
+     * The work per call is bounded, the rest is left for the next call.
+     */
+    public void purgeUnreferencedEntries() {
+        purge(MAX_PURGE_PER_CALL);
+    }
+
+    private void purgeAfterWrite() {
+        int limit = purgePolicy.purgesPerWrite;
+        if (limit > 0) {
+            purge(limit);
+        }
+    }
+
+    /**
+     * @return number of purged entries, 0 if another thread is purging
+     */
+    @SuppressWarnings("unchecked")
+    private int purge(int limit) {
+        if (!purging.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            Reference<? extends V> reference;
+            int purged = 0;
+            while (purged < limit && (reference = queue.poll()) != null) {
+                ValueReference<K, V> valueReference = (ValueReference<K, V>) reference;
+                table.remove(valueReference.getKey(), valueReference);
+                purged++;
+            }
+            purgedCount += purged;
+            return purged;
+        } finally {
+            purging.set(false);
+        }
+    }
+
+    private ValueReference<K, V> createReference(K key, V value) {
+        return (referenceType == ReferenceType.SOFT)
+               ? new SoftValueReference<>(key, value, queue)
+               : new WeakValueReference<>(key, value, queue);
+    }
+
+    private V dereference(ValueReference<K, V> reference) {
+        return (reference == null) ? null : reference.get();
+    }
+
+    private void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException("null values are not supported");
+        }
+    }
+
+
+    public enum ReferenceType {
+        WEAK, SOFT
+    }
+
+    public enum PurgePolicy {
+
+        INLINE(MAX_PURGE_PER_CALL),
+        AMORTIZED(AMORTIZED_PURGE_PER_CALL),
+        BACKGROUND(0);
+
+        private final int purgesPerWrite;
+
+        PurgePolicy(int purgesPerWrite) {
+            this.purgesPerWrite = purgesPerWrite;
+        }
+    }
+
+    /**
+     * One daemon thread drains reference queues of all maps with the BACKGROUND policy
+     * each PERIOD_MILLIS. Maps are held weakly, a collected map leaves the list.
+     */
+    private static final class BackgroundPurger {
+
+        private static final long PERIOD_MILLIS = 10;
+        private static final List<WeakReference<LockFreeReferenceHashMap<?, ?>>> MAPS = new CopyOnWriteArrayList<>();
+
+        static {
+            Thread thread = new Thread(BackgroundPurger::run, "reference-purger");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        static void register(LockFreeReferenceHashMap<?, ?> map) {
+            MAPS.add(new WeakReference<>(map));
+        }
+
+        private static void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(PERIOD_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (WeakReference<LockFreeReferenceHashMap<?, ?>> reference : MAPS) {
+                    LockFreeReferenceHashMap<?, ?> map = reference.get();
+                    if (map == null) {
+                        MAPS.remove(reference);
+                        continue;
+                    }
+                    while (map.purge(MAX_PURGE_PER_CALL) == MAX_PURGE_PER_CALL) {
+                        // the queue can have more references
+                    }
+                }
+            }
+        }
+    }
+
+    private interface ValueReference<K, V> {
+        K getKey();
+
+        V get();
+    }
+
+    private static final class WeakValueReference<K, V> extends WeakReference<V> implements ValueReference<K, V> {
+
+        private final K key;
+
+        WeakValueReference(K key, V value, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+    }
+
+    private static final class SoftValueReference<K, V> extends SoftReference<V> implements ValueReference<K, V> {
+
+        private final K key;
+
+        SoftValueReference(K key, V value, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        /**
+         * Splits by bins of the table, as the ConcurrentHashMap does.
+         */
+        @Override
+        public Spliterator<Entry<K, V>> spliterator() {
+            return new MappingSpliterator<>(table.entrySet().spliterator(), entry -> {
+                V value = dereference(entry.getValue());
+                return (value == null) ? null : new SimpleImmutableEntry<>(entry.getKey(), value);
+            });
+        }
+
+        @Override
+        public int size() {
+            return LockFreeReferenceHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            LockFreeReferenceHashMap.this.clear();
+        }
+    }
+
+    /**
+     * Skips cleared values, returned entries hold the value strongly.
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final Iterator<Map.Entry<K, ValueReference<K, V>>> iterator = table.entrySet().iterator();
+        private Entry<K, V> next;
+        private Entry<K, V> last;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && iterator.hasNext()) {
+                Map.Entry<K, ValueReference<K, V>> entry = iterator.next();
+                V value = dereference(entry.getValue());
+                if (value != null) {
+                    next = new SimpleImmutableEntry<>(entry.getKey(), value);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = null;
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            LockFreeReferenceHashMap.this.remove(last.getKey(), last.getValue());
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutex;
+
+/**
+ * Drop-in replacement of the XMutexFactory
+ * based on the LockFreeReferenceHashMap.
+ *
+ * @author Korovin Anatoliy
+ */
+public class LockFreeXMutexFactory<KeyT> {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    final LockFreeReferenceHashMap<KeyT, XMutex<KeyT>> map;
+
+    public LockFreeXMutexFactory() {
+        this(DEFAULT_INITIAL_CAPACITY, LockFreeReferenceHashMap.ReferenceType.WEAK);
+    }
+
+    public LockFreeXMutexFactory(int initialCapacity, LockFreeReferenceHashMap.ReferenceType referenceType) {
+        this(initialCapacity, referenceType, LockFreeReferenceHashMap.PurgePolicy.INLINE);
+    }
+
+    public LockFreeXMutexFactory(int initialCapacity,
+                                 LockFreeReferenceHashMap.ReferenceType referenceType,
+                                 LockFreeReferenceHashMap.PurgePolicy purgePolicy) {
+        this.map = new LockFreeReferenceHashMap<>(initialCapacity, referenceType, purgePolicy);
+    }
+
+    /**
+     * Creates and returns a mutex by the key.
+     * If the mutex for this key already exists in the weak-map,
+     * then returns the same reference of the mutex.
+     */
+    public XMutex<KeyT> getMutex(KeyT key) {
+        return map.computeIfAbsent(key, XMutex::new);
+    }
+
+    /**
+     * @return count of mutexes in this factory.
+     */
+    public long size() {
+        map.purgeUnreferencedEntries();
+        return map.size();
+    }
+}
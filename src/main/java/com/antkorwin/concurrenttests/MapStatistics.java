@@ -0,0 +1,76 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Snapshot of statistics of the InstrumentedConcurrentMap.
+ *
+ * @author Korovin Anatoliy
+ */
+public class MapStatistics {
+
+    private final Map<InstrumentedConcurrentMap.Operation, LatencyHistogram.Snapshot> latencies;
+    private final long[] contendedByBucket;
+    private final long retries;
+    private final int size;
+
+    MapStatistics(EnumMap<InstrumentedConcurrentMap.Operation, LatencyHistogram.Snapshot> latencies,
+                  long[] contendedByBucket,
+                  long retries,
+                  int size) {
+        this.latencies = Collections.unmodifiableMap(latencies);
+        this.contendedByBucket = contendedByBucket;
+        this.retries = retries;
+        this.size = size;
+    }
+
+    /**
+     * @return latency of operations in nanoseconds
+     */
+    public Map<InstrumentedConcurrentMap.Operation, LatencyHistogram.Snapshot> getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return number of contended operations in each bucket of key hashes
+     */
+    public long[] getContendedByBucket() {
+        return contendedByBucket.clone();
+    }
+
+    public long getContended() {
+        return Arrays.stream(contendedByBucket).sum();
+    }
+
+    /**
+     * @return number of repeated calls of remapping functions
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return multiline report, operations without calls are skipped
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("size=").append(size)
+              .append(" contended=").append(getContended())
+              .append(" retries=").append(retries);
+        latencies.forEach((operation, latency) -> {
+            if (latency.getCount() > 0) {
+                report.append(System.lineSeparator())
+                      .append("  ").append(operation).append(" (ns): ").append(latency);
+            }
+        });
+        return report.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package com.antkorwin.concurrenttests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically logs statistics of all InstrumentedConcurrentMap beans
+ * and resets them, so each report covers only the last interval.
+ *
+ * @author Korovin Anatoliy
+ */
+@Component
+public class MapStatisticsReporter {
+
+    private static final Logger log = LoggerFactory.getLogger(MapStatisticsReporter.class);
+
+    private final ApplicationContext context;
+
+    public MapStatisticsReporter(ApplicationContext context) {
+        this.context = context;
+    }
+
+    @Scheduled(fixedDelayString = "${concurrent-map.report.interval-ms:60000}",
+               initialDelayString = "${concurrent-map.report.interval-ms:60000}")
+    public void report() {
+        context.getBeansOfType(InstrumentedConcurrentMap.class)
+               .forEach((name, map) -> log.info("{}: {}", name, map.snapshotAndReset()));
+    }
+}
@@ -0,0 +1,57 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Maps elements of a spliterator (of the ConcurrentHashMap inside of a map)
+ * to entries of the map and skips elements mapped to null (cleared or expired),
+ * splits exactly as the underlying spliterator does.
+ *
+ * @author Korovin Anatoliy
+ */
+final class MappingSpliterator<T, R> implements Spliterator<R> {
+
+    private final Spliterator<T> spliterator;
+    private final Function<? super T, ? extends R> mapper;
+    private R next;
+
+    MappingSpliterator(Spliterator<T> spliterator, Function<? super T, ? extends R> mapper) {
+        this.spliterator = spliterator;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        next = null;
+        while (next == null) {
+            if (!spliterator.tryAdvance(element -> next = mapper.apply(element))) {
+                return false;
+            }
+        }
+        R result = next;
+        next = null;
+        action.accept(result);
+        return true;
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+        Spliterator<T> prefix = spliterator.trySplit();
+        return (prefix == null) ? null : new MappingSpliterator<>(prefix, mapper);
+    }
+
+    /**
+     * Includes skipped elements, as the size of the map.
+     */
+    @Override
+    public long estimateSize() {
+        return spliterator.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return DISTINCT | NONNULL | CONCURRENT;
+    }
+}
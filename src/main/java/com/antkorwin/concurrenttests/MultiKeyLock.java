@@ -0,0 +1,276 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Locks a few keys at once, for example both accounts of a transfer:
+ * <pre>
+ * try (MultiKeyLock&lt;UUID&gt;.Permit permit = locks.lock(from, to)) {
+ *     ...
+ * }
+ * </pre>
+ * Nested synchronized blocks on mutexes of the XMutexFactory deadlock
+ * when two threads take the same keys in a different order. Here keys
+ * are sorted in the canonical order (the comparator), locks of the keys
+ * are reentrant and live in a weak map like mutexes of the LockFreeXMutexFactory.
+ *
+ * Only the first lock is awaited, the next ones are taken by tryLock:
+ * if one of them is busy, the permit releases what it has taken, waits
+ * for the busy lock and starts over. So a thread never waits while it holds
+ * a lock of this call, and threads which already hold other keys (a nested lock)
+ * can't deadlock with the canonical order of others. A nested lock can't release
+ * the outer keys, it backs off for a random time (up to MAX_BACKOFF_NANOS) and tries again.
+ *
+ * Two nested locks which wait for outer keys of each other would retry forever,
+ * in the debug mode a thread which closes such a cycle of waiting threads
+ * gets the IllegalStateException with the cycle instead.
+ *
+ * @author Korovin Anatoliy
+ */
+public class MultiKeyLock<KeyT> {
+
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LockFreeReferenceHashMap<KeyT, KeyLock<KeyT>> locks = new LockFreeReferenceHashMap<>();
+    private final Comparator<? super KeyT> order;
+    private final boolean debug;
+    // permits held by the current thread
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    // the lock which each thread waits for, only in the debug mode
+    private final ConcurrentHashMap<Thread, KeyLock<KeyT>> waiting = new ConcurrentHashMap<>();
+
+    /**
+     * Keys in the natural order, they must be Comparable
+     */
+    @SuppressWarnings("unchecked")
+    public MultiKeyLock() {
+        this((Comparator<? super KeyT>) Comparator.naturalOrder(), false);
+    }
+
+    /**
+     * @param order canonical order of keys, consistent with equals
+     * @param debug detects cycles of waiting threads
+     */
+    public MultiKeyLock(Comparator<? super KeyT> order, boolean debug) {
+        this.order = order;
+        this.debug = debug;
+    }
+
+    @SafeVarargs
+    public final Permit lock(KeyT... keys) {
+        return lock(Arrays.asList(keys));
+    }
+
+    /**
+     * Waits until all the keys are locked by the current thread.
+     */
+    public Permit lock(Collection<? extends KeyT> keys) {
+        List<KeyLock<KeyT>> keyLocks = keyLocks(keys);
+        acquire(keyLocks, Long.MAX_VALUE);
+        return new Permit(keyLocks);
+    }
+
+    /**
+     * @return the permit, or null if the keys were not locked in the timeout
+     */
+    public Permit tryLock(Collection<? extends KeyT> keys, long timeout, TimeUnit unit) {
+        List<KeyLock<KeyT>> keyLocks = keyLocks(keys);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return acquire(keyLocks, deadline) ? new Permit(keyLocks) : null;
+    }
+
+    public <T> T withLock(Collection<? extends KeyT> keys, Supplier<T> action) {
+        try (Permit permit = lock(keys)) {
+            return action.get();
+        }
+    }
+
+    public void execute(Collection<? extends KeyT> keys, Runnable action) {
+        try (Permit permit = lock(keys)) {
+            action.run();
+        }
+    }
+
+    /**
+     * @return count of locks, including the unused ones which are not purged yet
+     */
+    public long size() {
+        locks.purgeUnreferencedEntries();
+        return locks.size();
+    }
+
+    /**
+     * @return locks of distinct keys in the canonical order
+     */
+    private List<KeyLock<KeyT>> keyLocks(Collection<? extends KeyT> keys) {
+        List<KeyT> sorted = new ArrayList<>(keys);
+        sorted.sort(order);
+        List<KeyLock<KeyT>> result = new ArrayList<>(sorted.size());
+        KeyT previous = null;
+        for (KeyT key : sorted) {
+            if (previous != null && order.compare(previous, key) == 0) {
+                continue;
+            }
+            result.add(locks.computeIfAbsent(key, KeyLock::new));
+            previous = key;
+        }
+        return result;
+    }
+
+    /**
+     * @param deadline System.nanoTime() to give up, Long.MAX_VALUE - never
+     */
+    private boolean acquire(List<KeyLock<KeyT>> keyLocks, long deadline) {
+        boolean nested = depth.get()[0] > 0;
+        boolean untimed = deadline == Long.MAX_VALUE;
+        for (int attempt = 0; ; attempt++) {
+            int acquired = 0;
+            KeyLock<KeyT> busy = null;
+            for (KeyLock<KeyT> keyLock : keyLocks) {
+                if (acquired == 0 && !nested && untimed) {
+                    keyLock.lock();
+                } else if (!keyLock.tryLock()) {
+                    busy = keyLock;
+                    break;
+                }
+                acquired++;
+            }
+            if (busy == null) {
+                depth.get()[0]++;
+                return true;
+            }
+            unlock(keyLocks, acquired);
+            if (!await(busy, nested || !untimed, deadline, attempt)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Waits for the busy lock without holding locks of the current call.
+     *
+     * @param backOff wait for a random time instead of the lock
+     * @return false if the deadline is passed
+     */
+    private boolean await(KeyLock<KeyT> busy, boolean backOff, long deadline, int attempt) {
+        Thread current = Thread.currentThread();
+        if (debug) {
+            waiting.put(current, busy);
+            checkCycle(current, busy);
+        }
+        try {
+            if (!backOff) {
+                busy.lock();
+                busy.unlock();
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            long limit = MIN_BACKOFF_NANOS << Math.min(attempt, 10);
+            long pause = ThreadLocalRandom.current().nextLong(Math.min(limit, MAX_BACKOFF_NANOS)) + 1;
+            LockSupport.parkNanos(Math.min(pause, remaining));
+            return System.nanoTime() - deadline < 0;
+        } finally {
+            if (debug) {
+                waiting.remove(current);
+            }
+        }
+    }
+
+    /**
+     * Follows owners of awaited locks, the cycle is closed when it comes back to the current thread.
+     */
+    private void checkCycle(Thread current, KeyLock<KeyT> busy) {
+        List<String> cycle = new ArrayList<>();
+        KeyLock<KeyT> lock = busy;
+        for (int step = 0; lock != null && step <= waiting.size(); step++) {
+            Thread owner = lock.owner();
+            if (owner == null) {
+                return;
+            }
+            cycle.add(owner.getName() + " holds " + lock.key);
+            if (owner == current) {
+                waiting.remove(current);
+                throw new IllegalStateException("Cycle of threads waiting for locks: "
+                                                + current.getName() + " waits for " + busy.key
+                                                + ", " + String.join(", ", cycle));
+            }
+            lock = waiting.get(owner);
+        }
+    }
+
+    private void unlock(List<KeyLock<KeyT>> keyLocks, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            keyLocks.get(i).unlock();
+        }
+    }
+
+
+    private static final class KeyLock<KeyT> extends ReentrantLock {
+
+        // the map holds the lock weakly, so it stays mapped while a caller holds the lock
+        // (a permit or a thread which waits for it), holding only the key doesn't keep it;
+        // the lock keeps its key as values of the LockFreeReferenceHashMap should
+        private final KeyT key;
+
+        KeyLock(KeyT key) {
+            this.key = key;
+        }
+
+        Thread owner() {
+            return getOwner();
+        }
+    }
+
+    /**
+     * Holds locks of all keys, it is released by the thread which acquired it.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final List<KeyLock<KeyT>> keyLocks;
+        private boolean released;
+
+        private Permit(List<KeyLock<KeyT>> keyLocks) {
+            this.keyLocks = keyLocks;
+        }
+
+        /**
+         * @return distinct keys in the canonical order
+         */
+        public List<KeyT> getKeys() {
+            List<KeyT> keys = new ArrayList<>(keyLocks.size());
+            for (KeyLock<KeyT> keyLock : keyLocks) {
+                keys.add(keyLock.key);
+            }
+            return Collections.unmodifiableList(keys);
+        }
+
+        public void release() {
+            if (released) {
+                throw new IllegalStateException("the permit is released already");
+            }
+            released = true;
+            unlock(keyLocks, keyLocks.size());
+            depth.get()[0]--;
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+}
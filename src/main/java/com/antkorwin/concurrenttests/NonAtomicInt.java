@@ -19,4 +19,8 @@ class NonAtomicInt {
     public void increment() {
         ++value;
     }
+
+    public void decrement() {
+        --value;
+    }
 }
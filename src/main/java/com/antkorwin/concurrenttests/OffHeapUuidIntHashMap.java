@@ -0,0 +1,662 @@
+package com.antkorwin.concurrenttests;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+
+/**
+ * Off-heap hash table with the ConcurrentMap&lt;UUID, Integer&gt; contract.
+ *
+ * Slots live in direct ByteBuffers (or in a memory-mapped file),
+ * so the GC neither traces nor copies the content of the map.
+ * The layout of a slot is the same as in the UuidIntHashMap:
+ * [used: int][value: int][msb: long][lsb: long] = 24 bytes.
+ *
+ * The table is split in segments, each segment is a separate buffer
+ * guarded by a StampedLock. The capacity is fixed at the creation,
+ * segments have a margin over maxSize / segments for the skew of the hash,
+ * a put into a full segment throws an IllegalStateException.
+ * Writes work on the slots directly, without boxing into a remapping function.
+ *
+ * The file-backed map keeps its content after a restart, the file is
+ * reused when it was created with the same number of segments and capacity.
+ * The header has a dirty flag, which is set when the file is opened and cleared
+ * by close() after the table is forced. A file which is still dirty was not closed
+ * (a crash, maybe in the middle of a write), its table can be torn,
+ * so it is rejected instead of being trusted.
+ *
+ * @author Korovin Anatoliy
+ */
+public class OffHeapUuidIntHashMap extends AbstractMap<UUID, Integer>
+        implements ConcurrentMap<UUID, Integer>, Closeable {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final double SKEW_MARGIN = 0.25;
+    private static final double SKEW_DEVIATIONS = 6;
+
+    private static final long MAGIC = 0x55554944494e5431L;
+    private static final int HEADER_SIZE = 64;
+    private static final int STATE_OFFSET = 16;
+    private static final int CLEAN = 0;
+    private static final int DIRTY = 1;
+
+    private static final int SLOT_SIZE = 24;
+    private static final int USED_OFFSET = 0;
+    private static final int VALUE_OFFSET = 4;
+    private static final int MSB_OFFSET = 8;
+    private static final int LSB_OFFSET = 16;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+
+    private Set<Entry<UUID, Integer>> entrySet;
+
+    /**
+     * Creates the map in direct memory.
+     *
+     * @param maxSize maximum number of entries
+     */
+    public OffHeapUuidIntHashMap(int maxSize) {
+        this(maxSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public OffHeapUuidIntHashMap(int maxSize, int concurrencyLevel) {
+        int segmentCount = segmentCount(concurrencyLevel);
+        int segmentCapacity = segmentCapacity(maxSize, segmentCount);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(segmentCapacity * SLOT_SIZE);
+            segments[i] = new Segment(buffer.order(ByteOrder.LITTLE_ENDIAN), segmentCapacity);
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.channel = null;
+        this.header = null;
+    }
+
+    private OffHeapUuidIntHashMap(FileChannel channel,
+                                  MappedByteBuffer header,
+                                  int segmentCount,
+                                  int segmentCapacity) throws IOException {
+        this.segments = new Segment[segmentCount];
+        long segmentBytes = (long) segmentCapacity * SLOT_SIZE;
+        for (int i = 0; i < segmentCount; i++) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                                                  HEADER_SIZE + i * segmentBytes,
+                                                  segmentBytes);
+            segments[i] = new Segment(buffer.order(ByteOrder.LITTLE_ENDIAN), segmentCapacity);
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.channel = channel;
+        this.header = header;
+    }
+
+    /**
+     * Opens the map backed by a memory-mapped file,
+     * creates the file if it doesn't exist.
+     *
+     * @param file     the file of the table
+     * @param maxSize  maximum number of entries
+     * @throws IllegalStateException if the file was created with other parameters
+     *                               or it wasn't closed after the last open
+     */
+    public static OffHeapUuidIntHashMap mapped(Path file, int maxSize) throws IOException {
+        return mapped(file, maxSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public static OffHeapUuidIntHashMap mapped(Path file, int maxSize, int concurrencyLevel) throws IOException {
+        int segmentCount = segmentCount(concurrencyLevel);
+        int segmentCapacity = segmentCapacity(maxSize, segmentCount);
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+
+        FileChannel channel = FileChannel.open(file,
+                                               StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (exists) {
+                if (header.getLong(0) != MAGIC
+                    || header.getInt(8) != segmentCount
+                    || header.getInt(12) != segmentCapacity) {
+                    throw new IllegalStateException("The file " + file + " has another layout of the table");
+                }
+                if (header.getInt(STATE_OFFSET) != CLEAN) {
+                    throw new IllegalStateException("The file " + file + " wasn't closed, its table can be torn");
+                }
+            } else {
+                header.putLong(0, MAGIC);
+                header.putInt(8, segmentCount);
+                header.putInt(12, segmentCapacity);
+            }
+            header.putInt(STATE_OFFSET, DIRTY);
+            header.force();
+            return new OffHeapUuidIntHashMap(channel, header, segmentCount, segmentCapacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof UUID)) {
+            return null;
+        }
+        UUID uuid = (UUID) key;
+        return get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public Integer get(long msb, long lsb) {
+        int hash = UuidIntHashMap.hash(msb, lsb);
+        return segmentFor(hash).get(msb, lsb, hash);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Integer put(UUID key, Integer value) {
+        checkValue(value);
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int hash = UuidIntHashMap.hash(msb, lsb);
+        return segmentFor(hash).put(msb, lsb, hash, value, false);
+    }
+
+    @Override
+    public Integer putIfAbsent(UUID key, Integer value) {
+        checkValue(value);
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int hash = UuidIntHashMap.hash(msb, lsb);
+        return segmentFor(hash).put(msb, lsb, hash, value, true);
+    }
+
+    @Override
+    public Integer remove(Object key) {
+        if (!(key instanceof UUID)) {
+            return null;
+        }
+        UUID uuid = (UUID) key;
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int hash = UuidIntHashMap.hash(msb, lsb);
+        return segmentFor(hash).remove(msb, lsb, hash);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!(key instanceof UUID) || !(value instanceof Integer)) {
+            return false;
+        }
+        UUID uuid = (UUID) key;
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int hash = UuidIntHashMap.hash(msb, lsb);
+        return segmentFor(hash).remove(msb, lsb, hash, (Integer) value);
+    }
+
+    @Override
+    public boolean replace(UUID key, Integer oldValue, Integer newValue) {
+        checkValue(oldValue);
+        checkValue(newValue);
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int hash = UuidIntHashMap.hash(msb, lsb);
+        return segmentFor(hash).replace(msb, lsb, hash, oldValue, newValue);
+    }
+
+    @Override
+    public Integer replace(UUID key, Integer value) {
+        checkValue(value);
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int hash = UuidIntHashMap.hash(msb, lsb);
+        return segmentFor(hash).replace(msb, lsb, hash, value);
+    }
+
+    /**
+     * The remapping function is applied under the segment lock.
+     */
+    @Override
+    public Integer compute(UUID key, BiFunction<? super UUID, ? super Integer, ? extends Integer> remappingFunction) {
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int hash = UuidIntHashMap.hash(msb, lsb);
+        return segmentFor(hash).compute(key, msb, lsb, hash, remappingFunction);
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public Set<Entry<UUID, Integer>> entrySet() {
+        Set<Entry<UUID, Integer>> result = entrySet;
+        if (result == null) {
+            result = new EntrySet();
+            entrySet = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return bytes of direct memory (or of the file) occupied by the table
+     */
+    public long memoryUsage() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += (long) segment.capacity * SLOT_SIZE;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes changes of the mapped table to the storage device,
+     * does nothing for the map in the direct memory.
+     */
+    public void force() {
+        if (channel == null) {
+            return;
+        }
+        for (Segment segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            try {
+                force();
+                header.putInt(STATE_OFFSET, CLEAN);
+                header.force();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(segmentShift == 32) ? 0 : hash >>> segmentShift];
+    }
+
+    private void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException("null values are not supported");
+        }
+    }
+
+    private static int segmentCount(int concurrencyLevel) {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel must be > 0");
+        }
+        return (concurrencyLevel == 1) ? 1 : Integer.highestOneBit(concurrencyLevel - 1) << 1;
+    }
+
+    /**
+     * Keys are spread over segments by the hash, so a segment gets more than
+     * the mean maxSize / segmentCount: it is sized for the mean plus SKEW_MARGIN
+     * or SKEW_DEVIATIONS standard deviations, whichever is larger.
+     */
+    private static int segmentCapacity(int maxSize, int segmentCount) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+        double mean = (double) maxSize / segmentCount;
+        double margin = Math.max(mean * SKEW_MARGIN, SKEW_DEVIATIONS * Math.sqrt(mean));
+        long entries = Math.min(maxSize, (long) Math.ceil(mean + margin));
+        long capacity = (long) Math.ceil(entries / LOAD_FACTOR);
+        long powerOfTwo = Long.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        if (powerOfTwo * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxSize is too large for " + segmentCount + " segments");
+        }
+        return (int) powerOfTwo;
+    }
+
+
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private final int maxSize;
+        private volatile int size;
+
+        Segment(ByteBuffer buffer, int capacity) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.maxSize = (int) (capacity * LOAD_FACTOR);
+            this.size = countUsedSlots();
+        }
+
+        Integer get(long msb, long lsb, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Integer value = find(msb, lsb, hash);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(msb, lsb, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private Integer find(long msb, long lsb, int hash) {
+            int mask = capacity - 1;
+            int index = hash & mask;
+            for (int probe = 0; probe < capacity && isUsed(index); probe++) {
+                int offset = index * SLOT_SIZE;
+                if (buffer.getLong(offset + MSB_OFFSET) == msb && buffer.getLong(offset + LSB_OFFSET) == lsb) {
+                    return buffer.getInt(offset + VALUE_OFFSET);
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        Integer put(long msb, long lsb, int hash, int value, boolean onlyIfAbsent) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(msb, lsb, hash);
+                if (!isUsed(index)) {
+                    insert(index, msb, lsb, value);
+                    return null;
+                }
+                int old = valueAt(index);
+                if (!onlyIfAbsent) {
+                    buffer.putInt(index * SLOT_SIZE + VALUE_OFFSET, value);
+                }
+                return old;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Integer remove(long msb, long lsb, int hash) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(msb, lsb, hash);
+                if (!isUsed(index)) {
+                    return null;
+                }
+                int old = valueAt(index);
+                delete(index);
+                return old;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean remove(long msb, long lsb, int hash, int expected) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(msb, lsb, hash);
+                if (!isUsed(index) || valueAt(index) != expected) {
+                    return false;
+                }
+                delete(index);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean replace(long msb, long lsb, int hash, int expected, int value) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(msb, lsb, hash);
+                if (!isUsed(index) || valueAt(index) != expected) {
+                    return false;
+                }
+                buffer.putInt(index * SLOT_SIZE + VALUE_OFFSET, value);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Integer replace(long msb, long lsb, int hash, int value) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(msb, lsb, hash);
+                if (!isUsed(index)) {
+                    return null;
+                }
+                int old = valueAt(index);
+                buffer.putInt(index * SLOT_SIZE + VALUE_OFFSET, value);
+                return old;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Integer compute(UUID key, long msb, long lsb, int hash,
+                        BiFunction<? super UUID, ? super Integer, ? extends Integer> remappingFunction) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(msb, lsb, hash);
+                boolean present = isUsed(index);
+                Integer old = present ? valueAt(index) : null;
+                Integer value = remappingFunction.apply(key, old);
+                if (value == null) {
+                    if (present) {
+                        delete(index);
+                    }
+                } else if (present) {
+                    buffer.putInt(index * SLOT_SIZE + VALUE_OFFSET, value);
+                } else {
+                    insert(index, msb, lsb, value);
+                }
+                return value;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        List<Entry<UUID, Integer>> entries() {
+            long stamp = lock.readLock();
+            try {
+                List<Entry<UUID, Integer>> entries = new ArrayList<>(size);
+                for (int index = 0; index < capacity; index++) {
+                    if (isUsed(index)) {
+                        int offset = index * SLOT_SIZE;
+                        UUID key = new UUID(buffer.getLong(offset + MSB_OFFSET), buffer.getLong(offset + LSB_OFFSET));
+                        entries.add(new SimpleImmutableEntry<>(key, buffer.getInt(offset + VALUE_OFFSET)));
+                    }
+                }
+                return entries;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                for (int index = 0; index < capacity; index++) {
+                    buffer.putInt(index * SLOT_SIZE + USED_OFFSET, 0);
+                }
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void force() {
+            long stamp = lock.readLock();
+            try {
+                ((MappedByteBuffer) buffer).force();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private boolean isUsed(int index) {
+            return buffer.getInt(index * SLOT_SIZE + USED_OFFSET) != 0;
+        }
+
+        private int indexOf(long msb, long lsb, int hash) {
+            int mask = capacity - 1;
+            int index = hash & mask;
+            while (isUsed(index)) {
+                int offset = index * SLOT_SIZE;
+                if (buffer.getLong(offset + MSB_OFFSET) == msb && buffer.getLong(offset + LSB_OFFSET) == lsb) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private int valueAt(int index) {
+            return buffer.getInt(index * SLOT_SIZE + VALUE_OFFSET);
+        }
+
+        private void insert(int index, long msb, long lsb, int value) {
+            if (size >= maxSize) {
+                throw new IllegalStateException("The off-heap map is full, capacity of the segment: " + maxSize);
+            }
+            write(index, msb, lsb, value);
+            size = size + 1;
+        }
+
+        private void write(int index, long msb, long lsb, int value) {
+            int offset = index * SLOT_SIZE;
+            buffer.putLong(offset + MSB_OFFSET, msb);
+            buffer.putLong(offset + LSB_OFFSET, lsb);
+            buffer.putInt(offset + VALUE_OFFSET, value);
+            buffer.putInt(offset + USED_OFFSET, 1);
+        }
+
+        /**
+         * Backward-shift deletion, the same as in the UuidIntHashMap.
+         */
+        private void delete(int index) {
+            int mask = capacity - 1;
+            int hole = index;
+            int next = (hole + 1) & mask;
+            while (isUsed(next)) {
+                int offset = next * SLOT_SIZE;
+                long msb = buffer.getLong(offset + MSB_OFFSET);
+                long lsb = buffer.getLong(offset + LSB_OFFSET);
+                int home = UuidIntHashMap.hash(msb, lsb) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    write(hole, msb, lsb, buffer.getInt(offset + VALUE_OFFSET));
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            buffer.putInt(hole * SLOT_SIZE + USED_OFFSET, 0);
+            size = size - 1;
+        }
+
+        private int countUsedSlots() {
+            int count = 0;
+            for (int index = 0; index < capacity; index++) {
+                if (isUsed(index)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<UUID, Integer>> {
+
+        /**
+         * Weakly consistent: each segment is copied under its read lock
+         * when the iterator reaches it.
+         */
+        @Override
+        public Iterator<Entry<UUID, Integer>> iterator() {
+            return new Iterator<Entry<UUID, Integer>>() {
+
+                private int segmentIndex = 0;
+                private Iterator<Entry<UUID, Integer>> current = segments[0].entries().iterator();
+                private Entry<UUID, Integer> last;
+
+                @Override
+                public boolean hasNext() {
+                    while (!current.hasNext() && segmentIndex < segments.length - 1) {
+                        current = segments[++segmentIndex].entries().iterator();
+                    }
+                    return current.hasNext();
+                }
+
+                @Override
+                public Entry<UUID, Integer> next() {
+                    hasNext();
+                    last = current.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    OffHeapUuidIntHashMap.this.remove(last.getKey(), last.getValue());
+                    last = null;
+                }
+            };
+        }
+
+        /**
+         * Splits by ranges of segments, a segment is copied under its read lock.
+         */
+        @Override
+        public Spliterator<Entry<UUID, Integer>> spliterator() {
+            return new PartitionSpliterator<>(0, segments.length, size(), index -> segments[index].entries());
+        }
+
+        @Override
+        public int size() {
+            return OffHeapUuidIntHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            OffHeapUuidIntHashMap.this.clear();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Parallel forEach, reduce and search over any map, with the same semantics
+ * as bulk operations of the ConcurrentHashMap: the parallelismThreshold is
+ * the number of entries for which an operation is split into tasks
+ * of the common ForkJoinPool (Long.MAX_VALUE - sequential, 1 - the maximal parallelism),
+ * a transformer can return null to skip an entry.
+ *
+ * The ConcurrentHashMap runs its own bulk operations. Other concurrent maps
+ * are split by their entry spliterators: by bins of the inner ConcurrentHashMap
+ * (LockFreeReferenceHashMap, BoundedConcurrentCache), by segments or stripes
+ * (OffHeapUuidIntHashMap, AdaptiveConcurrentMap), or by batches of the iterator
+ * (ConcurrentReferenceHashMap, it doesn't open its segments).
+ * Other maps (Collections.synchronizedMap) are copied under their lock,
+ * the lock isn't held while the operation runs.
+ *
+ * @author Korovin Anatoliy
+ */
+public final class ParallelMapTraversal {
+
+    private ParallelMapTraversal() {
+    }
+
+    public static <K, V> void forEach(Map<K, V> map,
+                                      long parallelismThreshold,
+                                      BiConsumer<? super K, ? super V> action) {
+        if (map instanceof ConcurrentHashMap) {
+            ((ConcurrentHashMap<K, V>) map).forEach(parallelismThreshold, action);
+            return;
+        }
+        run(map, parallelismThreshold, (key, value) -> {
+            action.accept(key, value);
+            return null;
+        }, null, null);
+    }
+
+    /**
+     * @return the result of the reducer on transformed entries,
+     * or null if there are no transformed entries
+     */
+    public static <K, V, U> U reduce(Map<K, V> map,
+                                     long parallelismThreshold,
+                                     BiFunction<? super K, ? super V, ? extends U> transformer,
+                                     BiFunction<? super U, ? super U, ? extends U> reducer) {
+        if (map instanceof ConcurrentHashMap) {
+            return ((ConcurrentHashMap<K, V>) map).reduce(parallelismThreshold, transformer, reducer);
+        }
+        return run(map, parallelismThreshold, transformer, reducer, null);
+    }
+
+    /**
+     * @return a non-null result of the search function on some entry, or null if there is none;
+     * other tasks stop as soon as the result is found
+     */
+    public static <K, V, U> U search(Map<K, V> map,
+                                     long parallelismThreshold,
+                                     BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        if (map instanceof ConcurrentHashMap) {
+            return ((ConcurrentHashMap<K, V>) map).search(parallelismThreshold, searchFunction);
+        }
+        AtomicReference<U> found = new AtomicReference<>();
+        run(map, parallelismThreshold, searchFunction, null, found);
+        return found.get();
+    }
+
+    private static <K, V, U> U run(Map<K, V> map,
+                                   long parallelismThreshold,
+                                   BiFunction<? super K, ? super V, ? extends U> transformer,
+                                   BiFunction<? super U, ? super U, ? extends U> reducer,
+                                   AtomicReference<U> found) {
+        if (parallelismThreshold <= 0) {
+            throw new IllegalArgumentException("parallelismThreshold must be > 0");
+        }
+        TraversalTask<K, V, U> task = new TraversalTask<>(spliterator(map), parallelismThreshold,
+                                                          transformer, reducer, found);
+        return ForkJoinPool.commonPool().invoke(task);
+    }
+
+    private static <K, V> Spliterator<Entry<K, V>> spliterator(Map<K, V> map) {
+        if (map instanceof ConcurrentMap) {
+            return map.entrySet().spliterator();
+        }
+        List<Entry<K, V>> entries;
+        // the mutex of the Collections.synchronizedMap is the map itself
+        synchronized (map) {
+            entries = new ArrayList<>(map.size());
+            for (Entry<K, V> entry : map.entrySet()) {
+                entries.add(new SimpleImmutableEntry<>(entry));
+            }
+        }
+        return Spliterators.spliterator(entries, Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+
+    /**
+     * Splits its spliterator while it is larger than the threshold,
+     * forks prefixes and traverses the rest itself.
+     */
+    private static final class TraversalTask<K, V, U> extends RecursiveTask<U> implements Consumer<Entry<K, V>> {
+
+        private final Spliterator<Entry<K, V>> spliterator;
+        private final long threshold;
+        private final BiFunction<? super K, ? super V, ? extends U> transformer;
+        private final BiFunction<? super U, ? super U, ? extends U> reducer;
+        private final AtomicReference<U> found;
+        private U result;
+
+        TraversalTask(Spliterator<Entry<K, V>> spliterator,
+                      long threshold,
+                      BiFunction<? super K, ? super V, ? extends U> transformer,
+                      BiFunction<? super U, ? super U, ? extends U> reducer,
+                      AtomicReference<U> found) {
+            this.spliterator = spliterator;
+            this.threshold = threshold;
+            this.transformer = transformer;
+            this.reducer = reducer;
+            this.found = found;
+        }
+
+        @Override
+        protected U compute() {
+            List<TraversalTask<K, V, U>> forks = new ArrayList<>();
+            Spliterator<Entry<K, V>> prefix;
+            while (spliterator.estimateSize() > threshold && (prefix = spliterator.trySplit()) != null) {
+                TraversalTask<K, V, U> fork = new TraversalTask<>(prefix, threshold, transformer, reducer, found);
+                fork.fork();
+                forks.add(fork);
+            }
+
+            while ((found == null || found.get() == null) && spliterator.tryAdvance(this)) {
+                // the work is done in the accept
+            }
+
+            for (int i = forks.size() - 1; i >= 0; i--) {
+                combine(forks.get(i).join());
+            }
+            return result;
+        }
+
+        @Override
+        public void accept(Entry<K, V> entry) {
+            U value = transformer.apply(entry.getKey(), entry.getValue());
+            if (value == null) {
+                return;
+            }
+            if (found != null) {
+                found.compareAndSet(null, value);
+            } else {
+                combine(value);
+            }
+        }
+
+        private void combine(U value) {
+            if (value == null || reducer == null) {
+                return;
+            }
+            result = (result == null) ? value : reducer.apply(result, value);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Spliterator over partitions (segments, stripes) of a map,
+ * it splits by ranges of partitions. A partition is copied
+ * by the given function (under the lock of the partition)
+ * when the traversal reaches it, so the lock isn't held
+ * while an action runs on entries.
+ *
+ * @author Korovin Anatoliy
+ */
+final class PartitionSpliterator<T> implements Spliterator<T> {
+
+    private final IntFunction<? extends Collection<T>> partition;
+    private final int fence;
+    private int index;
+    private long estimatedSize;
+    private Iterator<T> current = Collections.emptyIterator();
+
+    /**
+     * @param from           the first partition
+     * @param to             the partition after the last one
+     * @param estimatedSize  number of entries in the partitions
+     * @param partition      copies entries of the partition by its index
+     */
+    PartitionSpliterator(int from, int to, long estimatedSize, IntFunction<? extends Collection<T>> partition) {
+        this.index = from;
+        this.fence = to;
+        this.estimatedSize = estimatedSize;
+        this.partition = partition;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!current.hasNext()) {
+            if (index >= fence) {
+                return false;
+            }
+            current = partition.apply(index++).iterator();
+        }
+        action.accept(current.next());
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int remaining = fence - index;
+        if (remaining < 2) {
+            return null;
+        }
+        int middle = index + remaining / 2;
+        long half = estimatedSize / 2;
+        Spliterator<T> prefix = new PartitionSpliterator<>(index, middle, half, partition);
+        index = middle;
+        estimatedSize -= half;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimatedSize;
+    }
+
+    @Override
+    public int characteristics() {
+        return DISTINCT | NONNULL | CONCURRENT;
+    }
+}
@@ -0,0 +1,589 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Map of UUID keys where each partition of the key space is owned by one
+ * writer thread. A partition is a plain HashMap, only its writer touches it,
+ * so there are no locks and no CAS on entries: under heavy write contention
+ * lines of the map don't move between cores, only updates do.
+ *
+ * Producers send updates to the partition of a key through a bounded
+ * lock-free MPSC ring buffer, the writer drains it by batches (up to batchSize)
+ * and applies them in the order of the ring, so updates of one producer
+ * are applied in the order they were sent. When the ring is full a producer
+ * waits for the writer (back-pressure).
+ *
+ * Reads don't go to the writer, get() reads a published snapshot of the partition.
+ * The snapshot is an array of small immutable buckets: the writer copies a bucket
+ * on the first change after a publication and replaces changed buckets not more
+ * often than once per the publish interval, so a publication costs as much as
+ * the changes since the previous one, not as the size of the partition.
+ * A read may be stale up to the interval plus the time to drain the ring,
+ * flush() publishes all updates sent before it.
+ *
+ * An exception of a remapping function fails only its update. Any other
+ * throwable (an Error in the writer) fails the partition: results of its
+ * pending updates complete exceptionally and send to it throws.
+ *
+ * @author Korovin Anatoliy
+ */
+public class PartitionedUuidMap<V> implements AutoCloseable {
+
+    private static final int DEFAULT_RING_CAPACITY = 1 << 14;
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final long DEFAULT_PUBLISH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // a waiting thread spins, then yields the core (to the writer if they share it), then parks
+    private static final int SPINS = 16;
+    private static final int YIELDS = 1000;
+    // buckets of a snapshot are doubled when they hold more entries on average
+    private static final int MAX_BUCKET_LOAD = 8;
+    private static final int MIN_BUCKETS = 16;
+
+    private final Partition[] partitions;
+    private final int batchSize;
+    private final long publishIntervalNanos;
+    private final LongAdder failedUpdates = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * A partition for each pair of cores.
+     */
+    public PartitionedUuidMap() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+             DEFAULT_RING_CAPACITY,
+             DEFAULT_BATCH_SIZE,
+             DEFAULT_PUBLISH_INTERVAL_NANOS);
+    }
+
+    /**
+     * @param partitions           number of writer threads
+     * @param ringCapacity         updates which wait for the writer of a partition, rounded up to a power of two
+     * @param batchSize            max updates applied between checks of the publish interval
+     * @param publishIntervalNanos min time between snapshots of a partition
+     */
+    public PartitionedUuidMap(int partitions, int ringCapacity, int batchSize, long publishIntervalNanos) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("number of partitions must be > 0");
+        }
+        if (ringCapacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("capacity of the ring and size of the batch must be > 0");
+        }
+        this.batchSize = batchSize;
+        this.publishIntervalNanos = publishIntervalNanos;
+        this.partitions = new PartitionedUuidMap.Partition[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new Partition(ringCapacity);
+        }
+        for (int i = 0; i < partitions; i++) {
+            Thread writer = new Thread(this.partitions[i]::run, "partition-writer-" + i);
+            writer.setDaemon(true);
+            this.partitions[i].writer = writer;
+            writer.start();
+        }
+    }
+
+    /**
+     * Sends the update without waiting for the result,
+     * exceptions of the function are counted by getFailedUpdates()
+     */
+    public void update(UUID key, BiFunction<? super UUID, ? super V, ? extends V> remappingFunction) {
+        send(key, new Update<>(key, remappingFunction, null));
+    }
+
+    /**
+     * @return a stage which completes with the new value when the writer applies the update,
+     * dependent actions without an executor run in the writer thread, so they must be short
+     */
+    public CompletionStage<V> compute(UUID key, BiFunction<? super UUID, ? super V, ? extends V> remappingFunction) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        send(key, new Update<>(key, remappingFunction, result));
+        return result;
+    }
+
+    public void put(UUID key, V value) {
+        update(key, (k, v) -> value);
+    }
+
+    public void remove(UUID key) {
+        update(key, (k, v) -> null);
+    }
+
+    /**
+     * @return the value from the last published snapshot of the partition
+     */
+    public V get(UUID key) {
+        int hash = hash(key);
+        return partitions[partitionOf(hash)].get(key, hash);
+    }
+
+    /**
+     * @return count of entries in published snapshots
+     */
+    public long size() {
+        long size = 0;
+        for (Partition partition : partitions) {
+            size += partition.publishedSize;
+        }
+        return size;
+    }
+
+    /**
+     * @return a stage which completes when updates sent by this thread before the flush
+     * are applied and visible in snapshots, or completes exceptionally when a partition has failed
+     */
+    public CompletionStage<Void> flush() {
+        CompletableFuture<?>[] flushed = new CompletableFuture<?>[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            Throwable failure = partitions[i].failure;
+            if (failure != null) {
+                flushed[i] = CompletableFuture.failedFuture(failure);
+                continue;
+            }
+            CompletableFuture<V> result = new CompletableFuture<>();
+            partitions[i].send(new Update<>(null, null, result));
+            flushed[i] = result;
+        }
+        return CompletableFuture.allOf(flushed);
+    }
+
+    /**
+     * @return count of updates which failed with an exception
+     */
+    public long getFailedUpdates() {
+        return failedUpdates.sum();
+    }
+
+    public int getPartitions() {
+        return partitions.length;
+    }
+
+    /**
+     * Stops writers after they apply all updates which were sent,
+     * an update sent concurrently with the close may be not applied.
+     * The last snapshots stay readable.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        for (Partition partition : partitions) {
+            LockSupport.unpark(partition.writer);
+        }
+        for (Partition partition : partitions) {
+            partition.writer.join();
+        }
+    }
+
+    private void send(UUID key, Update<V> update) {
+        partitions[partitionOf(hash(key))].send(update);
+    }
+
+    /**
+     * High bits of the hash choose a partition, low bits choose a bucket in it
+     */
+    private int partitionOf(int hash) {
+        return (int) (((hash & 0xFFFFFFFFL) * partitions.length) >>> 32);
+    }
+
+    private static int bucketOf(int hash, int buckets) {
+        return (hash ^ (hash >>> 16)) & (buckets - 1);
+    }
+
+    private static int hash(UUID key) {
+        long bits = key.getMostSignificantBits() ^ key.getLeastSignificantBits();
+        return (int) (bits ^ (bits >>> 32)) * 0x9E3779B9;
+    }
+
+
+    /**
+     * An update, or a flush marker when the key is null
+     */
+    private static final class Update<V> {
+
+        private final UUID key;
+        private final BiFunction<? super UUID, ? super V, ? extends V> remappingFunction;
+        private final CompletableFuture<V> result;
+
+        Update(UUID key, BiFunction<? super UUID, ? super V, ? extends V> remappingFunction, CompletableFuture<V> result) {
+            this.key = key;
+            this.remappingFunction = remappingFunction;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Entries of a bucket in arrays, the writer changes only a bucket
+     * which is not published yet.
+     */
+    private static final class Bucket {
+
+        private static final Bucket EMPTY = new Bucket(0);
+
+        private UUID[] keys;
+        private Object[] values;
+        private int size;
+
+        Bucket(int capacity) {
+            this.keys = new UUID[capacity];
+            this.values = new Object[capacity];
+        }
+
+        Object get(UUID key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i].equals(key)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        Bucket copy() {
+            Bucket copy = new Bucket(size + 2);
+            System.arraycopy(keys, 0, copy.keys, 0, size);
+            System.arraycopy(values, 0, copy.values, 0, size);
+            copy.size = size;
+            return copy;
+        }
+
+        /**
+         * @param value null removes the key
+         */
+        void set(UUID key, Object value) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i].equals(key)) {
+                    if (value != null) {
+                        values[i] = value;
+                    } else {
+                        size--;
+                        keys[i] = keys[size];
+                        values[i] = values[size];
+                        keys[size] = null;
+                        values[size] = null;
+                    }
+                    return;
+                }
+            }
+            if (value == null) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2 + 2);
+                values = Arrays.copyOf(values, size * 2 + 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    private final class Partition {
+
+        private final RingBuffer<Update<V>> ring;
+        // owned by the writer
+        private final HashMap<UUID, V> map = new HashMap<>();
+        // copies of buckets changed since the last publication
+        private Bucket[] drafts = new Bucket[MIN_BUCKETS];
+        private int[] changedBuckets = new int[MIN_BUCKETS];
+        private int changedCount;
+        private long publishedAt;
+
+        private volatile AtomicReferenceArray<Bucket> buckets = emptyBuckets(MIN_BUCKETS);
+        private volatile int publishedSize;
+        private volatile boolean sleeping;
+        private volatile Throwable failure;
+        private Thread writer;
+
+        Partition(int ringCapacity) {
+            this.ring = new RingBuffer<>(ringCapacity);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(UUID key, int hash) {
+            AtomicReferenceArray<Bucket> published = buckets;
+            return (V) published.get(bucketOf(hash, published.length())).get(key);
+        }
+
+        void send(Update<V> update) {
+            if (closed) {
+                throw new IllegalStateException("the map is closed");
+            }
+            checkFailure();
+            int attempt = 0;
+            while (!ring.offer(update)) {
+                checkFailure();
+                // the writer is behind, wait for it
+                LockSupport.unpark(writer);
+                if (++attempt < SPINS) {
+                    Thread.onSpinWait();
+                } else if (attempt < YIELDS) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(1_000);
+                }
+            }
+            if (sleeping) {
+                LockSupport.unpark(writer);
+            }
+        }
+
+        private void checkFailure() {
+            if (failure != null) {
+                throw new IllegalStateException("the writer of the partition failed", failure);
+            }
+        }
+
+        void run() {
+            try {
+                serve();
+            } catch (Throwable e) {
+                failure = e;
+                reject(e);
+            }
+        }
+
+        /**
+         * The failed writer stays the consumer of the ring until the close,
+         * so updates which were sent concurrently with the failure get their results too
+         */
+        private void reject(Throwable e) {
+            Consumer<Update<V>> rejection = update -> {
+                if (update.key != null) {
+                    failedUpdates.increment();
+                }
+                if (update.result != null) {
+                    update.result.completeExceptionally(e);
+                }
+            };
+            while (!closed || !ring.isEmpty()) {
+                if (ring.drain(rejection, batchSize) == 0) {
+                    sleeping = true;
+                    if (ring.isEmpty() && !closed) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    }
+                    sleeping = false;
+                }
+            }
+        }
+
+        private void serve() {
+            int idle = 0;
+            while (true) {
+                int applied = ring.drain(this::apply, batchSize);
+                if (applied > 0) {
+                    idle = 0;
+                    publishIfDue();
+                    continue;
+                }
+                publishIfDue();
+                if (closed && ring.isEmpty()) {
+                    publish();
+                    return;
+                }
+                if (++idle < SPINS) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (idle < YIELDS) {
+                    Thread.yield();
+                    continue;
+                }
+                // the volatile write and the read of the tail in isEmpty
+                // pair with the offer and the read of sleeping in send
+                sleeping = true;
+                if (ring.isEmpty() && !closed) {
+                    LockSupport.parkNanos((changedCount > 0) ? publishIntervalNanos : TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                sleeping = false;
+            }
+        }
+
+        private void apply(Update<V> update) {
+            try {
+                if (update.key == null) {
+                    publish();
+                    update.result.complete(null);
+                    return;
+                }
+                V value;
+                try {
+                    value = map.compute(update.key, update.remappingFunction);
+                } catch (RuntimeException e) {
+                    failedUpdates.increment();
+                    if (update.result != null) {
+                        update.result.completeExceptionally(e);
+                    }
+                    return;
+                }
+                change(update.key, value);
+                if (update.result != null) {
+                    update.result.complete(value);
+                }
+            } catch (Throwable e) {
+                // fails the partition
+                if (update.key != null) {
+                    failedUpdates.increment();
+                }
+                if (update.result != null) {
+                    update.result.completeExceptionally(e);
+                }
+                throw e;
+            }
+        }
+
+        private void change(UUID key, V value) {
+            int bucket = bucketOf(hash(key), drafts.length);
+            Bucket draft = drafts[bucket];
+            if (draft == null) {
+                draft = buckets.get(bucket).copy();
+                drafts[bucket] = draft;
+                changedBuckets[changedCount++] = bucket;
+            }
+            draft.set(key, value);
+        }
+
+        private void publishIfDue() {
+            if (changedCount > 0 && System.nanoTime() - publishedAt >= publishIntervalNanos) {
+                publish();
+            }
+        }
+
+        private void publish() {
+            if (changedCount > 0) {
+                if (map.size() > drafts.length * MAX_BUCKET_LOAD) {
+                    rebuild();
+                } else {
+                    AtomicReferenceArray<Bucket> published = buckets;
+                    for (int i = 0; i < changedCount; i++) {
+                        int bucket = changedBuckets[i];
+                        published.set(bucket, drafts[bucket]);
+                        drafts[bucket] = null;
+                    }
+                }
+                changedCount = 0;
+                publishedSize = map.size();
+            }
+            publishedAt = System.nanoTime();
+        }
+
+        /**
+         * Doubles buckets until their average load is a half of the max,
+         * the whole partition is copied, but only once per doubling of its size.
+         */
+        private void rebuild() {
+            int count = drafts.length;
+            while (map.size() > count * MAX_BUCKET_LOAD / 2) {
+                count *= 2;
+            }
+            AtomicReferenceArray<Bucket> rebuilt = emptyBuckets(count);
+            Bucket[] filled = new Bucket[count];
+            for (Map.Entry<UUID, V> entry : map.entrySet()) {
+                int bucket = bucketOf(hash(entry.getKey()), count);
+                if (filled[bucket] == null) {
+                    filled[bucket] = new Bucket(MAX_BUCKET_LOAD / 2);
+                }
+                filled[bucket].set(entry.getKey(), entry.getValue());
+            }
+            for (int bucket = 0; bucket < count; bucket++) {
+                if (filled[bucket] != null) {
+                    rebuilt.lazySet(bucket, filled[bucket]);
+                }
+            }
+            buckets = rebuilt;
+            drafts = new Bucket[count];
+            changedBuckets = new int[count];
+        }
+    }
+
+    private static AtomicReferenceArray<Bucket> emptyBuckets(int count) {
+        AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(count);
+        for (int i = 0; i < count; i++) {
+            buckets.lazySet(i, Bucket.EMPTY);
+        }
+        return buckets;
+    }
+
+    /**
+     * Bounded multi-producer single-consumer queue on an array.
+     *
+     * A producer claims a slot by CAS of the tail and then writes the element,
+     * the consumer takes elements in the order of slots and waits
+     * for a claimed slot until its element is written. The consumer clears
+     * a slot before it moves the head, so a producer which has seen the new head
+     * writes into the cleared slot.
+     */
+    private static final class RingBuffer<E> {
+
+        // 16 longs = 128 bytes, the tail of producers and the head of the consumer
+        // are in different pairs of cache lines
+        private static final int PADDING = 16;
+        private static final int TAIL = PADDING;
+        private static final int HEAD = 2 * PADDING;
+
+        private final AtomicReferenceArray<E> slots;
+        private final AtomicLongArray counters = new AtomicLongArray(3 * PADDING);
+        private final int mask;
+
+        RingBuffer(int capacity) {
+            int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        boolean offer(E element) {
+            while (true) {
+                long tail = counters.get(TAIL);
+                if (tail - counters.get(HEAD) > mask) {
+                    return false;
+                }
+                if (counters.compareAndSet(TAIL, tail, tail + 1)) {
+                    slots.lazySet((int) tail & mask, element);
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Called only by the consumer
+         */
+        int drain(Consumer<E> consumer, int limit) {
+            long head = counters.get(HEAD);
+            int count = 0;
+            try {
+                while (count < limit) {
+                    int index = (int) head & mask;
+                    E element = slots.get(index);
+                    if (element == null) {
+                        break;
+                    }
+                    slots.lazySet(index, null);
+                    head++;
+                    count++;
+                    consumer.accept(element);
+                }
+            } finally {
+                // a cleared slot is consumed even if the consumer has thrown
+                if (count > 0) {
+                    counters.lazySet(HEAD, head);
+                }
+            }
+            return count;
+        }
+
+        boolean isEmpty() {
+            return counters.get(TAIL) == counters.get(HEAD);
+        }
+    }
+}
@@ -0,0 +1,725 @@
+package com.antkorwin.concurrenttests;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * Decorator of a ConcurrentMap&lt;UUID, Integer&gt; which keeps its content
+ * in a directory: the last snapshot of the map and change logs written after it.
+ * <pre>
+ * PersistentUuidIntMap map = PersistentUuidIntMap.open(dir, new ConcurrentHashMap&lt;&gt;());
+ * map.put(id, 1);
+ * map.snapshot();
+ * </pre>
+ *
+ * Each successful change of the map is appended to the current change log
+ * [msb: long][lsb: long][value: int][operation: int][crc32c: int] = 28 bytes.
+ * Writes of the same stripe of keys are serialized by the StripedLocks,
+ * each stripe buffers its records and writes them to a region of the log
+ * claimed by an atomic increment of the log position, so writers of different
+ * stripes don't wait for each other. Records of a key are in the order of its changes,
+ * records of different stripes are interleaved by buffers. Reads go straight to the delegate.
+ * A change is appended to the log before it is applied to the delegate
+ * (the stripe lock keeps the checked value), so a change which failed
+ * to get into the log is not visible in the map.
+ *
+ * The snapshot doesn't stop writers: it switches writers to a new change log
+ * (while it holds all stripe locks, so every change of the old log is already
+ * in the map), then it iterates the delegate and writes a weakly consistent image
+ * to a temporary file through the FileChannel. The image together with the new
+ * change log is the state of the map, the temporary file replaces the snapshot
+ * by an atomic move, the directory is synced (otherwise the move may be lost
+ * on a crash, while deletes are not) and only then older logs are deleted.
+ * A new change log is synced with its directory entry when it is created.
+ * The layout of the snapshot is [magic: long][generation: long][count: long][crc32c: int][reserved: int]
+ * followed by entries [msb: long][lsb: long][value: int] = 20 bytes.
+ *
+ * The open loads the snapshot and replays logs through memory-mapped reads.
+ * A torn record at the end of a log (a crash in the middle of a write) is cut off.
+ * Changes are buffered in memory until the buffer is full, flush/sync/close
+ * or the next snapshot, changes which weren't flushed are lost on a crash.
+ * A crash can also leave a claimed region unwritten, the replay stops
+ * at this hole like at a damaged record.
+ *
+ * @author Korovin Anatoliy
+ */
+public class PersistentUuidIntMap extends AbstractMap<UUID, Integer>
+        implements ConcurrentMap<UUID, Integer>, Closeable {
+
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final long MAGIC = 0x50414e5344495555L;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 20;
+    private static final int SNAPSHOT_BUFFER_SIZE = 1 << 20;
+
+    private static final int DEFAULT_STRIPES = 64;
+    private static final int DEFAULT_LOG_BUFFER_SIZE = 1 << 18;
+
+    private final ConcurrentMap<UUID, Integer> delegate;
+    private final Map<UUID, Integer> readOnlyView;
+    private final Path directory;
+    private final StripedLocks<ReentrantLock> locks;
+    private final ChangeLog log;
+    private final Object snapshotMonitor = new Object();
+
+    private PersistentUuidIntMap(ConcurrentMap<UUID, Integer> delegate,
+                                 Path directory,
+                                 StripedLocks<ReentrantLock> locks,
+                                 ChangeLog log) {
+        this.delegate = delegate;
+        this.readOnlyView = Collections.unmodifiableMap(delegate);
+        this.directory = directory;
+        this.locks = locks;
+        this.log = log;
+    }
+
+    /**
+     * Loads the content of the directory into the delegate,
+     * creates the directory if it doesn't exist.
+     *
+     * @param directory directory of the snapshot and change logs, used by one map at a time
+     * @param delegate  an empty map
+     * @throws IllegalStateException if the snapshot is damaged
+     */
+    public static PersistentUuidIntMap open(Path directory, ConcurrentMap<UUID, Integer> delegate) throws IOException {
+        return open(directory, delegate, DEFAULT_STRIPES, DEFAULT_LOG_BUFFER_SIZE);
+    }
+
+    /**
+     * @param stripes       number of write locks, rounded up to a power of two
+     * @param logBufferSize bytes of changes buffered in memory before a write to the log,
+     *                      split between stripes, but not less than a record per stripe
+     */
+    public static PersistentUuidIntMap open(Path directory,
+                                            ConcurrentMap<UUID, Integer> delegate,
+                                            int stripes,
+                                            int logBufferSize) throws IOException {
+        if (logBufferSize < ChangeLog.RECORD_SIZE) {
+            throw new IllegalArgumentException("logBufferSize must be >= " + ChangeLog.RECORD_SIZE);
+        }
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_FILE + TEMPORARY_SUFFIX));
+
+        long snapshotGeneration = loadSnapshot(directory.resolve(SNAPSHOT_FILE), delegate);
+        long lastGeneration = snapshotGeneration;
+        for (long generation : ChangeLog.generations(directory)) {
+            Path file = ChangeLog.file(directory, generation);
+            if (generation < snapshotGeneration) {
+                // the snapshot was moved, but the log wasn't deleted yet
+                Files.delete(file);
+            } else {
+                ChangeLog.replay(file, delegate);
+                lastGeneration = Math.max(lastGeneration, generation);
+            }
+        }
+
+        StripedLocks<ReentrantLock> locks = StripedLocks.reentrantLocks(stripes);
+        int stripeBufferSize = Math.max(ChangeLog.RECORD_SIZE, logBufferSize / locks.size());
+        ChangeLog log = new ChangeLog(directory, lastGeneration + 1, locks.size(), stripeBufferSize);
+        return new PersistentUuidIntMap(delegate, directory, locks, log);
+    }
+
+    @Override
+    public Integer get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return delegate.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public Integer put(UUID key, Integer value) {
+        int stripe = locks.stripeOf(key);
+        ReentrantLock lock = locks.getMutexOfStripe(stripe);
+        lock.lock();
+        try {
+            log.put(stripe, key, value);
+            return delegate.put(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Integer putIfAbsent(UUID key, Integer value) {
+        int stripe = locks.stripeOf(key);
+        ReentrantLock lock = locks.getMutexOfStripe(stripe);
+        lock.lock();
+        try {
+            Integer existing = delegate.get(key);
+            if (existing == null) {
+                log.put(stripe, key, value);
+                delegate.put(key, value);
+            }
+            return existing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Integer remove(Object key) {
+        if (!(key instanceof UUID)) {
+            return null;
+        }
+        int stripe = locks.stripeOf(key);
+        ReentrantLock lock = locks.getMutexOfStripe(stripe);
+        lock.lock();
+        try {
+            Integer existing = delegate.get(key);
+            if (existing != null) {
+                log.remove(stripe, (UUID) key);
+                delegate.remove(key);
+            }
+            return existing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!(key instanceof UUID) || value == null) {
+            return false;
+        }
+        int stripe = locks.stripeOf(key);
+        ReentrantLock lock = locks.getMutexOfStripe(stripe);
+        lock.lock();
+        try {
+            if (!value.equals(delegate.get(key))) {
+                return false;
+            }
+            log.remove(stripe, (UUID) key);
+            delegate.remove(key);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(UUID key, Integer oldValue, Integer newValue) {
+        int stripe = locks.stripeOf(key);
+        ReentrantLock lock = locks.getMutexOfStripe(stripe);
+        lock.lock();
+        try {
+            if (oldValue == null || !oldValue.equals(delegate.get(key))) {
+                return false;
+            }
+            log.put(stripe, key, newValue);
+            delegate.put(key, newValue);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Integer replace(UUID key, Integer value) {
+        int stripe = locks.stripeOf(key);
+        ReentrantLock lock = locks.getMutexOfStripe(stripe);
+        lock.lock();
+        try {
+            Integer existing = delegate.get(key);
+            if (existing != null) {
+                log.put(stripe, key, value);
+                delegate.put(key, value);
+            }
+            return existing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The remapping function is applied under the stripe lock,
+     * an absent key which stays absent isn't logged.
+     */
+    @Override
+    public Integer compute(UUID key, BiFunction<? super UUID, ? super Integer, ? extends Integer> remappingFunction) {
+        int stripe = locks.stripeOf(key);
+        ReentrantLock lock = locks.getMutexOfStripe(stripe);
+        lock.lock();
+        try {
+            Integer existing = delegate.get(key);
+            Integer value = remappingFunction.apply(key, existing);
+            if (value != null) {
+                log.put(stripe, key, value);
+                delegate.put(key, value);
+            } else if (existing != null) {
+                log.remove(stripe, key);
+                delegate.remove(key);
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (UUID key : delegate.keySet()) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Read-only views, the map is changed only by its methods.
+     */
+    @Override
+    public Set<Entry<UUID, Integer>> entrySet() {
+        return readOnlyView.entrySet();
+    }
+
+    @Override
+    public Set<UUID> keySet() {
+        return readOnlyView.keySet();
+    }
+
+    @Override
+    public Collection<Integer> values() {
+        return readOnlyView.values();
+    }
+
+    /**
+     * Writes the snapshot of the map and deletes change logs before it.
+     * Writers are blocked only while the change log is switched.
+     *
+     * @return number of entries in the snapshot
+     */
+    public long snapshot() throws IOException {
+        synchronized (snapshotMonitor) {
+            long generation = switchLog();
+            Path temporary = directory.resolve(SNAPSHOT_FILE + TEMPORARY_SUFFIX);
+            long count = writeSnapshot(temporary, generation);
+            Files.move(temporary,
+                       directory.resolve(SNAPSHOT_FILE),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory(directory);
+            for (long old : ChangeLog.generations(directory)) {
+                if (old < generation) {
+                    Files.delete(ChangeLog.file(directory, old));
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Writes buffered changes to the log file.
+     */
+    public void flush() throws IOException {
+        flushLog(false);
+    }
+
+    /**
+     * Writes buffered changes to the log file and the file to the storage device.
+     */
+    public void sync() throws IOException {
+        flushLog(true);
+    }
+
+    /**
+     * Syncs the change log, the snapshot isn't written.
+     */
+    @Override
+    public void close() throws IOException {
+        lockAll();
+        try {
+            log.close();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private long switchLog() throws IOException {
+        lockAll();
+        try {
+            return log.next();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Writes buffers stripe by stripe, the file is forced under the lock
+     * of the last stripe, so the log can't be switched at this time.
+     */
+    private void flushLog(boolean force) throws IOException {
+        int stripes = locks.size();
+        for (int i = 0; i < stripes; i++) {
+            ReentrantLock lock = locks.getMutexOfStripe(i);
+            lock.lock();
+            try {
+                log.flush(i, force && i == stripes - 1);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void lockAll() {
+        for (int i = 0; i < locks.size(); i++) {
+            locks.getMutexOfStripe(i).lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.getMutexOfStripe(i).unlock();
+        }
+    }
+
+    private long writeSnapshot(Path file, long generation) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SNAPSHOT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C checksum = new CRC32C();
+        long count = 0;
+
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            channel.position(HEADER_SIZE);
+            for (Entry<UUID, Integer> entry : delegate.entrySet()) {
+                Integer value = entry.getValue();
+                if (value == null) {
+                    continue;
+                }
+                if (buffer.remaining() < ENTRY_SIZE) {
+                    writeEntries(channel, buffer, checksum);
+                }
+                UUID key = entry.getKey();
+                buffer.putLong(key.getMostSignificantBits())
+                      .putLong(key.getLeastSignificantBits())
+                      .putInt(value);
+                count++;
+            }
+            writeEntries(channel, buffer, checksum);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC)
+                  .putLong(generation)
+                  .putLong(count)
+                  .putInt((int) checksum.getValue())
+                  .putInt(0)
+                  .flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+            channel.force(true);
+        }
+        return count;
+    }
+
+    /**
+     * Makes creates, renames and deletes of files in the directory durable
+     */
+    private static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static void writeEntries(FileChannel channel, ByteBuffer buffer, CRC32C checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer);
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return generation of the first change log after the snapshot, 0 if there is no snapshot
+     */
+    private static long loadSnapshot(Path file, Map<UUID, Integer> target) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = (size >= HEADER_SIZE)
+                                ? channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                                : null;
+            if (header == null
+                || header.getLong(0) != MAGIC
+                || size != HEADER_SIZE + header.getLong(16) * ENTRY_SIZE) {
+                throw new IllegalStateException("The file " + file + " isn't a snapshot of the map");
+            }
+
+            List<ByteBuffer> regions = map(channel, HEADER_SIZE, size, ENTRY_SIZE);
+            CRC32C checksum = new CRC32C();
+            for (ByteBuffer region : regions) {
+                checksum.update(region.duplicate());
+            }
+            if ((int) checksum.getValue() != header.getInt(24)) {
+                throw new IllegalStateException("The snapshot " + file + " is damaged");
+            }
+
+            for (ByteBuffer region : regions) {
+                while (region.hasRemaining()) {
+                    long msb = region.getLong();
+                    long lsb = region.getLong();
+                    target.put(new UUID(msb, lsb), region.getInt());
+                }
+            }
+            return header.getLong(8);
+        }
+    }
+
+    /**
+     * A MappedByteBuffer is limited by 2GB, a large file is mapped by regions
+     * of whole records.
+     */
+    private static List<ByteBuffer> map(FileChannel channel, long from, long to, int recordSize) throws IOException {
+        long maxRegion = (Integer.MAX_VALUE / recordSize) * (long) recordSize;
+        List<ByteBuffer> regions = new ArrayList<>();
+        for (long position = from; position < to; position += maxRegion) {
+            long length = Math.min(maxRegion, to - position);
+            regions.add(channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        return regions;
+    }
+
+
+    /**
+     * Append-only log of changes, one file per generation: changes-[generation].log
+     * Each stripe of keys has its own buffer, which is changed only under
+     * the lock of the stripe. A full buffer is written to the region of the file
+     * claimed by getAndAdd of the position, positional writes of different
+     * stripes run in parallel. The file is switched under locks of all stripes.
+     */
+    private static final class ChangeLog implements Closeable {
+
+        static final int RECORD_SIZE = 28;
+        private static final int CHECKED_SIZE = 24;
+
+        private static final int PUT = 1;
+        private static final int REMOVE = 2;
+
+        private static final String PREFIX = "changes-";
+        private static final String SUFFIX = ".log";
+
+        private final Path directory;
+        private final Stripe[] stripes;
+        private final AtomicLong position = new AtomicLong();
+        private volatile FileChannel channel;
+        private long generation;
+
+        ChangeLog(Path directory, long generation, int stripes, int stripeBufferSize) throws IOException {
+            this.directory = directory;
+            this.stripes = new Stripe[stripes];
+            for (int i = 0; i < stripes; i++) {
+                this.stripes[i] = new Stripe(stripeBufferSize - stripeBufferSize % RECORD_SIZE);
+            }
+            this.generation = generation;
+            this.channel = create(file(directory, generation));
+        }
+
+        /**
+         * Methods which take a stripe are called under the lock of this stripe
+         */
+        void put(int stripe, UUID key, int value) {
+            append(stripes[stripe], PUT, key, value);
+        }
+
+        void remove(int stripe, UUID key) {
+            append(stripes[stripe], REMOVE, key, 0);
+        }
+
+        private void append(Stripe stripe, int operation, UUID key, int value) {
+            ByteBuffer buffer = stripe.buffer;
+            try {
+                if (!buffer.hasRemaining()) {
+                    writeBuffer(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int start = buffer.position();
+            buffer.putLong(key.getMostSignificantBits())
+                  .putLong(key.getLeastSignificantBits())
+                  .putInt(value)
+                  .putInt(operation);
+            stripe.checksum.reset();
+            stripe.checksum.update(buffer.array(), start, CHECKED_SIZE);
+            buffer.putInt((int) stripe.checksum.getValue());
+        }
+
+        void flush(int stripe, boolean force) throws IOException {
+            writeBuffer(stripes[stripe].buffer);
+            if (force) {
+                channel.force(false);
+            }
+        }
+
+        /**
+         * Syncs and closes the current file, next changes go to the file of the next generation.
+         * Called under locks of all stripes.
+         *
+         * @return the generation of the new file
+         */
+        long next() throws IOException {
+            closeFile();
+            generation++;
+            channel = create(file(directory, generation));
+            position.set(0);
+            return generation;
+        }
+
+        /**
+         * Called under locks of all stripes.
+         */
+        @Override
+        public void close() throws IOException {
+            closeFile();
+        }
+
+        private void closeFile() throws IOException {
+            try {
+                for (Stripe stripe : stripes) {
+                    writeBuffer(stripe.buffer);
+                }
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void writeBuffer(ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            if (buffer.hasRemaining()) {
+                long offset = position.getAndAdd(buffer.remaining());
+                FileChannel file = channel;
+                while (buffer.hasRemaining()) {
+                    offset += file.write(buffer, offset);
+                }
+            }
+            buffer.clear();
+        }
+
+        private static FileChannel create(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                syncDirectory(file.getParent());
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return channel;
+        }
+
+        static Path file(Path directory, long generation) {
+            return directory.resolve(String.format(Locale.ROOT, "%s%019d%s", PREFIX, generation, SUFFIX));
+        }
+
+        /**
+         * @return generations of log files in the directory, in ascending order
+         */
+        static List<Long> generations(Path directory) throws IOException {
+            List<Long> result = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    result.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                }
+            }
+            Collections.sort(result);
+            return result;
+        }
+
+        /**
+         * Applies records of the file to the map until the first incomplete
+         * or damaged record, the rest of the file is cut off.
+         *
+         * @return number of applied records
+         */
+        static long replay(Path file, Map<UUID, Integer> target) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                long complete = size - size % RECORD_SIZE;
+                CRC32C checksum = new CRC32C();
+                long applied = 0;
+
+                for (ByteBuffer region : map(channel, 0, complete, RECORD_SIZE)) {
+                    while (region.hasRemaining()) {
+                        int start = region.position();
+                        int limit = region.limit();
+                        checksum.reset();
+                        region.limit(start + CHECKED_SIZE);
+                        checksum.update(region);
+                        region.limit(limit).position(start);
+                        long msb = region.getLong();
+                        long lsb = region.getLong();
+                        int value = region.getInt();
+                        int operation = region.getInt();
+                        if (region.getInt() != (int) checksum.getValue()) {
+                            channel.truncate(applied * RECORD_SIZE);
+                            return applied;
+                        }
+                        UUID key = new UUID(msb, lsb);
+                        if (operation == PUT) {
+                            target.put(key, value);
+                        } else {
+                            target.remove(key);
+                        }
+                        applied++;
+                    }
+                }
+                if (complete < size) {
+                    channel.truncate(complete);
+                }
+                return applied;
+            }
+        }
+
+        /**
+         * A heap buffer is allocated before its ByteBuffer object,
+         * so buffer objects of neighbour stripes are not in one cache line.
+         */
+        private static final class Stripe {
+
+            private final ByteBuffer buffer;
+            private final CRC32C checksum = new CRC32C();
+
+            Stripe(int bufferSize) {
+                this.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter which spreads updates of different threads over a fixed
+ * number of cells, each cell takes its own cache line. Similar to
+ * the LongAdder, but:
+ * <ul>
+ * <li>cells are created once, there is no lazy inflation under contention;</li>
+ * <li>approximateSum() returns a cached sum, which is recalculated
+ * not more often than once per the staleness interval, so a frequent reader
+ * doesn't walk over cache lines of writers;</li>
+ * <li>sumThenReset() takes each cell by getAndSet(0), so an increment
+ * made concurrently with the reset is never lost, it goes either
+ * to the returned sum or to the next one.</li>
+ * </ul>
+ *
+ * @author Korovin Anatoliy
+ */
+public class ShardedCounter {
+
+    // 16 longs = 128 bytes, the adjacent line prefetcher loads lines by pairs
+    private static final int PADDING = 16;
+    private static final long DEFAULT_STALENESS_NANOS = 1_000_000;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+    private final long stalenessNanos;
+
+    private volatile long cachedSum;
+    private volatile long cachedAt = System.nanoTime();
+
+    /**
+     * Two cells for each core.
+     */
+    public ShardedCounter() {
+        this(2 * Runtime.getRuntime().availableProcessors(), DEFAULT_STALENESS_NANOS);
+    }
+
+    /**
+     * @param shards         number of cells, rounded up to a power of two
+     * @param stalenessNanos max age of the value returned by approximateSum
+     */
+    public ShardedCounter(int shards, long stalenessNanos) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("number of shards must be > 0");
+        }
+        int size = (shards == 1) ? 1 : Integer.highestOneBit(shards - 1) << 1;
+        this.cells = new AtomicLongArray(size * PADDING);
+        this.mask = size - 1;
+        this.stalenessNanos = stalenessNanos;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(cellOf(Thread.currentThread()), delta);
+    }
+
+    /**
+     * @return the sum of all cells, it is exact only if there are
+     * no concurrent updates
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the sum calculated not earlier than the staleness interval ago
+     */
+    public long approximateSum() {
+        long now = System.nanoTime();
+        if (now - cachedAt > stalenessNanos) {
+            cachedSum = sum();
+            cachedAt = now;
+        }
+        return cachedSum;
+    }
+
+    /**
+     * Resets cells to zero and returns the sum of their values.
+     * Sum of the results of all calls of this method and the current sum
+     * is always equal to the sum of all increments.
+     */
+    public long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.getAndSet(i, 0);
+        }
+        cachedSum = 0;
+        cachedAt = System.nanoTime();
+        return sum;
+    }
+
+    public int shards() {
+        return mask + 1;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    /**
+     * Ids of threads are sequential, the multiplication spreads them
+     * to the different cells.
+     */
+    private int cellOf(Thread thread) {
+        int h = (int) thread.threadId() * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & mask) * PADDING;
+    }
+}
@@ -0,0 +1,111 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Fixed pool of locks, an alternative to the XMutexFactory
+ * which allocates a mutex (and a weak map entry) for each key.
+ *
+ * A key is mapped to one of stripes by its spread hash, so equal keys
+ * always get the same lock, but different keys can share a lock too.
+ * Nothing is allocated after the creation of the pool.
+ *
+ * <pre>
+ * StripedLocks&lt;Object&gt; locks = StripedLocks.monitors(1024);
+ * synchronized (locks.getMutex(id)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author Korovin Anatoliy
+ */
+public class StripedLocks<LockT> {
+
+    private final Object[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes  number of locks, rounded up to a power of two
+     * @param supplier creates each lock of the pool
+     */
+    public StripedLocks(int stripes, Supplier<LockT> supplier) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("number of stripes must be > 0");
+        }
+        int size = (stripes == 1) ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new Object[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = supplier.get();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Monitors for the synchronized block, each monitor
+     * takes a whole cache line to avoid false sharing.
+     */
+    public static StripedLocks<Object> monitors(int stripes) {
+        return new StripedLocks<>(stripes, PaddedMonitor::new);
+    }
+
+    /**
+     * Monitors without padding, neighbours can share a cache line.
+     */
+    public static StripedLocks<Object> compactMonitors(int stripes) {
+        return new StripedLocks<>(stripes, Object::new);
+    }
+
+    public static StripedLocks<ReentrantLock> reentrantLocks(int stripes) {
+        return new StripedLocks<>(stripes, ReentrantLock::new);
+    }
+
+    public static StripedLocks<ReentrantReadWriteLock> readWriteLocks(int stripes) {
+        return new StripedLocks<>(stripes, ReentrantReadWriteLock::new);
+    }
+
+    public static StripedLocks<StampedLock> stampedLocks(int stripes) {
+        return new StripedLocks<>(stripes, StampedLock::new);
+    }
+
+    /**
+     * @return the lock of the stripe of this key
+     */
+    @SuppressWarnings("unchecked")
+    public LockT getMutex(Object key) {
+        return (LockT) locks[stripeOf(key)];
+    }
+
+    /**
+     * @return the lock of the stripe, to take all locks of the pool in the order of stripes
+     */
+    @SuppressWarnings("unchecked")
+    public LockT getMutexOfStripe(int stripe) {
+        return (LockT) locks[stripe];
+    }
+
+    public int stripeOf(Object key) {
+        return spread(key.hashCode()) & mask;
+    }
+
+    public int size() {
+        return locks.length;
+    }
+
+    /**
+     * UUID.hashCode is a xor of its halves, the multiplication
+     * mixes it, so the low bits depend on all bits of the key.
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+
+    @SuppressWarnings("unused")
+    private static final class PaddedMonitor {
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -0,0 +1,385 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent map from UUID to int without boxing.
+ *
+ * A key is stored as two longs (most and least significant bits)
+ * and a value as an int, in parallel primitive arrays of an open-addressing
+ * table (linear probing, backward-shift deletion). There are no entry objects,
+ * no Integer values and no UUID objects inside of the map.
+ *
+ * The table is split in segments, each segment is guarded by a StampedLock:
+ * writes take the write lock of one segment, reads are optimistic
+ * and fall back to the read lock only when a write interleaves.
+ *
+ * The {@code missingValue} (Integer.MIN_VALUE by default) is returned when
+ * there is no mapping for the key, so it can't be stored as a value.
+ *
+ * @author Korovin Anatoliy
+ */
+public class UuidIntHashMap {
+
+    public static final int DEFAULT_MISSING_VALUE = Integer.MIN_VALUE;
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIN_SEGMENT_CAPACITY = 2;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int missingValue;
+
+    public UuidIntHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_CONCURRENCY_LEVEL, DEFAULT_MISSING_VALUE);
+    }
+
+    public UuidIntHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_CONCURRENCY_LEVEL, DEFAULT_MISSING_VALUE);
+    }
+
+    public UuidIntHashMap(int initialCapacity, int concurrencyLevel, int missingValue) {
+        if (initialCapacity < 0 || concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be >= 0 and concurrencyLevel must be > 0");
+        }
+        int segmentCount = nextPowerOfTwo(concurrencyLevel);
+        int segmentCapacity = nextPowerOfTwo(Math.max(MIN_SEGMENT_CAPACITY,
+                                                      (int) (initialCapacity / LOAD_FACTOR / segmentCount) + 1));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.missingValue = missingValue;
+    }
+
+    /**
+     * @return the value for the key or the missingValue if there is no mapping
+     */
+    public int get(long msb, long lsb) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).get(msb, lsb, hash);
+    }
+
+    public int get(UUID key) {
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    public boolean containsKey(long msb, long lsb) {
+        return get(msb, lsb) != missingValue;
+    }
+
+    /**
+     * @return the previous value or the missingValue if there was no mapping
+     */
+    public int put(long msb, long lsb, int value) {
+        checkValue(value);
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).put(msb, lsb, hash, value, false);
+    }
+
+    /**
+     * @return the existing value or the missingValue if the value was stored
+     */
+    public int putIfAbsent(long msb, long lsb, int value) {
+        checkValue(value);
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).put(msb, lsb, hash, value, true);
+    }
+
+    public int putIfAbsent(UUID key, int value) {
+        return putIfAbsent(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    /**
+     * Attempts to compute a mapping for the key and its current value
+     * (the missingValue if there is no mapping). The function is applied
+     * under the segment lock, if it returns the missingValue then
+     * the mapping is removed.
+     *
+     * @return the new value or the missingValue if there is no mapping anymore
+     */
+    public int compute(long msb, long lsb, UuidIntRemappingFunction remappingFunction) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).compute(msb, lsb, hash, remappingFunction);
+    }
+
+    public int compute(UUID key, UuidIntRemappingFunction remappingFunction) {
+        return compute(key.getMostSignificantBits(), key.getLeastSignificantBits(), remappingFunction);
+    }
+
+    /**
+     * @return the removed value or the missingValue if there was no mapping
+     */
+    public int remove(long msb, long lsb) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).remove(msb, lsb, hash);
+    }
+
+    public int size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int getMissingValue() {
+        return missingValue;
+    }
+
+    /**
+     * @return bytes occupied by the arrays of all segments, without object headers
+     */
+    public long memoryUsage() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.memoryUsage();
+        }
+        return bytes;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(segmentShift == 32) ? 0 : hash >>> segmentShift];
+    }
+
+    private void checkValue(int value) {
+        if (value == missingValue) {
+            throw new IllegalArgumentException("the missingValue can't be stored in the map");
+        }
+    }
+
+    static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return (value <= 1) ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+
+    /**
+     * Remapping function for primitive UUID keys and int values.
+     */
+    @FunctionalInterface
+    public interface UuidIntRemappingFunction {
+        int apply(long msb, long lsb, int oldValue);
+    }
+
+    private final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+
+        private long[] msbs;
+        private long[] lsbs;
+        private int[] values;
+        private boolean[] used;
+        private int threshold;
+        private volatile int size;
+
+        Segment(int capacity) {
+            allocate(capacity);
+        }
+
+        int get(long msb, long lsb, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                int value = find(msb, lsb, hash);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(msb, lsb, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Reads arrays into locals, so an optimistic read never sees
+         * arrays of different generations, and the probe is bounded
+         * by the capacity even if a concurrent write breaks the chain.
+         */
+        private int find(long msb, long lsb, int hash) {
+            long[] msbs = this.msbs;
+            long[] lsbs = this.lsbs;
+            int[] values = this.values;
+            boolean[] used = this.used;
+            int capacity = used.length;
+            if (msbs.length != capacity || lsbs.length != capacity || values.length != capacity) {
+                return missingValue;
+            }
+            int mask = capacity - 1;
+            int index = hash & mask;
+            for (int probe = 0; probe < capacity && used[index]; probe++) {
+                if (msbs[index] == msb && lsbs[index] == lsb) {
+                    return values[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return missingValue;
+        }
+
+        int put(long msb, long lsb, int hash, int value, boolean onlyIfAbsent) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(msb, lsb, hash);
+                if (used[index]) {
+                    int old = values[index];
+                    if (!onlyIfAbsent) {
+                        values[index] = value;
+                    }
+                    return old;
+                }
+                insert(index, msb, lsb, hash, value);
+                return missingValue;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int compute(long msb, long lsb, int hash, UuidIntRemappingFunction remappingFunction) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(msb, lsb, hash);
+                boolean present = used[index];
+                int old = present ? values[index] : missingValue;
+                int value = remappingFunction.apply(msb, lsb, old);
+                if (value == missingValue) {
+                    if (present) {
+                        delete(index);
+                    }
+                } else if (present) {
+                    values[index] = value;
+                } else {
+                    insert(index, msb, lsb, hash, value);
+                }
+                return value;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int remove(long msb, long lsb, int hash) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(msb, lsb, hash);
+                if (!used[index]) {
+                    return missingValue;
+                }
+                int old = values[index];
+                delete(index);
+                return old;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                allocate(used.length);
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        long memoryUsage() {
+            return (long) used.length * (Long.BYTES * 2 + Integer.BYTES + 1);
+        }
+
+        /**
+         * @return index of the key or index of the free slot where the key should be
+         */
+        private int indexOf(long msb, long lsb, int hash) {
+            int mask = used.length - 1;
+            int index = hash & mask;
+            while (used[index]) {
+                if (msbs[index] == msb && lsbs[index] == lsb) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private void insert(int index, long msb, long lsb, int hash, int value) {
+            if (size >= threshold) {
+                resize(used.length << 1);
+                index = indexOf(msb, lsb, hash);
+            }
+            msbs[index] = msb;
+            lsbs[index] = lsb;
+            values[index] = value;
+            used[index] = true;
+            size = size + 1;
+        }
+
+        /**
+         * Backward-shift deletion: moves the following entries of the probe chain
+         * back into the hole, so the table never contains tombstones.
+         */
+        private void delete(int index) {
+            int mask = used.length - 1;
+            int hole = index;
+            int next = (hole + 1) & mask;
+            while (used[next]) {
+                int home = hash(msbs[next], lsbs[next]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    msbs[hole] = msbs[next];
+                    lsbs[hole] = lsbs[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            used[hole] = false;
+            size = size - 1;
+        }
+
+        private void resize(int capacity) {
+            long[] oldMsbs = msbs;
+            long[] oldLsbs = lsbs;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            allocate(capacity);
+            for (int i = 0; i < oldUsed.length; i++) {
+                if (oldUsed[i]) {
+                    int index = indexOf(oldMsbs[i], oldLsbs[i], hash(oldMsbs[i], oldLsbs[i]));
+                    msbs[index] = oldMsbs[i];
+                    lsbs[index] = oldLsbs[i];
+                    values[index] = oldValues[i];
+                    used[index] = true;
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            msbs = new long[capacity];
+            lsbs = new long[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+            threshold = (int) (capacity * LOAD_FACTOR);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.antkorwin.concurrenttests;
+
+import java.lang.ref.WeakReference;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Canonical instances of UUIDs: equal UUIDs (or their strings) give
+ * the same UUID object while it stays in the table, so a lookup by
+ * a string doesn't allocate a new UUID and weak-key maps don't keep
+ * duplicates of the same key.
+ *
+ * The table has a fixed capacity, a UUID is searched in a few slots
+ * after its home slot. When all of them are taken, the home slot
+ * is overwritten, so the retention is bounded. In the weak mode
+ * slots keep weak references and the GC releases unused UUIDs.
+ * It is a best effort: an overwritten UUID can meet a new instance
+ * of itself, they are equal, but not identical.
+ *
+ * A string is parsed to the most and least significant bits
+ * without allocation, only the canonical form
+ * (xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx) is supported.
+ *
+ * @author Korovin Anatoliy
+ */
+public final class UuidInterner {
+
+    private static final int PROBES = 4;
+    private static final int UUID_LENGTH = 36;
+
+    private final AtomicReferenceArray<Object> slots;
+    private final int mask;
+    private final boolean weak;
+
+    private UuidInterner(int capacity, boolean weak) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.weak = weak;
+    }
+
+    /**
+     * Keeps weak references, an unused UUID is released by the GC.
+     */
+    public static UuidInterner weak(int capacity) {
+        return new UuidInterner(capacity, true);
+    }
+
+    /**
+     * Keeps strong references to at most capacity of UUIDs.
+     */
+    public static UuidInterner bounded(int capacity) {
+        return new UuidInterner(capacity, false);
+    }
+
+    public UUID intern(CharSequence value) {
+        return intern(parseMostSignificantBits(value), parseLeastSignificantBits(value));
+    }
+
+    public UUID intern(UUID value) {
+        long msb = value.getMostSignificantBits();
+        long lsb = value.getLeastSignificantBits();
+        UUID existing = find(msb, lsb);
+        return (existing != null) ? existing : insert(msb, lsb, value);
+    }
+
+    public UUID intern(long msb, long lsb) {
+        UUID existing = find(msb, lsb);
+        return (existing != null) ? existing : insert(msb, lsb, null);
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public static long parseMostSignificantBits(CharSequence value) {
+        checkFormat(value);
+        return (parseHex(value, 0, 8) << 32) | (parseHex(value, 9, 13) << 16) | parseHex(value, 14, 18);
+    }
+
+    public static long parseLeastSignificantBits(CharSequence value) {
+        checkFormat(value);
+        return (parseHex(value, 19, 23) << 48) | parseHex(value, 24, 36);
+    }
+
+    private UUID find(long msb, long lsb) {
+        int home = UuidIntHashMap.hash(msb, lsb) & mask;
+        for (int i = 0; i < PROBES; i++) {
+            UUID candidate = dereference(slots.get((home + i) & mask));
+            if (candidate != null
+                && candidate.getMostSignificantBits() == msb
+                && candidate.getLeastSignificantBits() == lsb) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes a free (or cleared) slot or the home slot. A thread which loses
+     * the race for the slot checks the winner, it can be the same UUID.
+     */
+    private UUID insert(long msb, long lsb, UUID value) {
+        UUID created = (value != null) ? value : new UUID(msb, lsb);
+        Object entry = weak ? new WeakReference<>(created) : created;
+        int home = UuidIntHashMap.hash(msb, lsb) & mask;
+        int target = home;
+        for (int i = 0; i < PROBES; i++) {
+            int index = (home + i) & mask;
+            if (dereference(slots.get(index)) == null) {
+                target = index;
+                break;
+            }
+        }
+        Object current = slots.get(target);
+        UUID winner = dereference(current);
+        if (winner != null && winner.getMostSignificantBits() == msb && winner.getLeastSignificantBits() == lsb) {
+            return winner;
+        }
+        if (slots.compareAndSet(target, current, entry)) {
+            return created;
+        }
+        UUID existing = find(msb, lsb);
+        return (existing != null) ? existing : created;
+    }
+
+    private UUID dereference(Object entry) {
+        if (entry == null) {
+            return null;
+        }
+        if (weak) {
+            @SuppressWarnings("unchecked")
+            WeakReference<UUID> reference = (WeakReference<UUID>) entry;
+            return reference.get();
+        }
+        return (UUID) entry;
+    }
+
+    private static void checkFormat(CharSequence value) {
+        if (value.length() != UUID_LENGTH
+            || value.charAt(8) != '-'
+            || value.charAt(13) != '-'
+            || value.charAt(18) != '-'
+            || value.charAt(23) != '-') {
+            throw new IllegalArgumentException("Invalid UUID string: " + value);
+        }
+    }
+
+    private static long parseHex(CharSequence value, int from, int to) {
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(value.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid UUID string: " + value);
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+}
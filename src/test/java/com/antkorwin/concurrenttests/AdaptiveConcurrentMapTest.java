@@ -0,0 +1,94 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class AdaptiveConcurrentMapTest {
+
+    private static final int NUMBER_OF_KEYS = 100;
+    private static final int ITERATION_NUMBER = 1_000_000;
+
+    @Test
+    public void testColdMapStaysSynchronized() {
+        // Arrange
+        AdaptiveConcurrentMap<UUID, Integer> map = new AdaptiveConcurrentMap<>();
+        UUID key = UUID.randomUUID();
+
+        // Act
+        for (int i = 0; i < ITERATION_NUMBER; i++) {
+            map.merge(key, 1, Integer::sum);
+        }
+
+        // Asserts
+        Assertions.assertThat(map.getLayout()).isEqualTo(AdaptiveConcurrentMap.Layout.SYNCHRONIZED);
+        Assertions.assertThat(map.get(key)).isEqualTo(ITERATION_NUMBER);
+    }
+
+    @Test
+    public void testContentionMovesToTheNextLayout() throws Exception {
+        // Arrange
+        AdaptiveConcurrentMap<UUID, Integer> map = new AdaptiveConcurrentMap<>(1, TimeUnit.SECONDS.toNanos(10));
+        UUID key = UUID.randomUUID();
+        map.put(key, 0);
+
+        // Act & Asserts
+        contendOn(map, key);
+        Assertions.assertThat(map.getLayout()).isEqualTo(AdaptiveConcurrentMap.Layout.STRIPED);
+        Assertions.assertThat(map.get(key)).isEqualTo(2);
+
+        contendOn(map, key);
+        Assertions.assertThat(map.getLayout()).isEqualTo(AdaptiveConcurrentMap.Layout.CONCURRENT);
+        Assertions.assertThat(map.get(key)).isEqualTo(4);
+    }
+
+    @Test
+    public void testNoLostUpdatesDuringMigration() {
+        // Arrange
+        AdaptiveConcurrentMap<UUID, Integer> map = new AdaptiveConcurrentMap<>(16, TimeUnit.SECONDS.toNanos(1));
+        UUID[] keys = IntStream.range(0, NUMBER_OF_KEYS)
+                               .mapToObj(i -> UUID.randomUUID())
+                               .toArray(UUID[]::new);
+
+        // Act
+        IntStream.range(0, ITERATION_NUMBER)
+                 .parallel()
+                 .forEach(i -> map.compute(keys[i % NUMBER_OF_KEYS], (k, v) -> (v == null) ? 1 : v + 1));
+
+        // Asserts
+        Assertions.assertThat(map).hasSize(NUMBER_OF_KEYS);
+        Assertions.assertThat(map.values().stream().mapToInt(Integer::intValue).sum())
+                  .isEqualTo(ITERATION_NUMBER);
+    }
+
+    /**
+     * One thread holds the lock of the key, another one fails to take it.
+     */
+    private void contendOn(AdaptiveConcurrentMap<UUID, Integer> map, UUID key) throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CompletableFuture<Integer> holder = CompletableFuture.supplyAsync(() -> map.compute(key, (k, v) -> {
+            locked.countDown();
+            sleep(100);
+            return v + 1;
+        }));
+        locked.await();
+        map.compute(key, (k, v) -> v + 1);
+        holder.get(10, TimeUnit.SECONDS);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class AsyncXMutexFactoryTest {
+
+    private static final int TIMEOUT_FOR_PREVENTION_OF_DEADLOCK = 30000;
+    private static final int NUMBER_OF_KEYS = 10;
+    private static final int NUMBER_OF_ITERATIONS = 100_000;
+
+    @Test
+    public void testFreeLockIsAcquiredImmediately() {
+        // Arrange
+        AsyncXMutexFactory<UUID> mutexFactory = new AsyncXMutexFactory<>();
+        UUID key = UUID.randomUUID();
+
+        // Act
+        CompletableFuture<AsyncXMutexFactory<UUID>.Permit> first = mutexFactory.lock(key).toCompletableFuture();
+        CompletableFuture<AsyncXMutexFactory<UUID>.Permit> second = mutexFactory.lock(key).toCompletableFuture();
+        CompletableFuture<AsyncXMutexFactory<UUID>.Permit> other = mutexFactory.lock(UUID.randomUUID())
+                                                                              .toCompletableFuture();
+
+        // Asserts
+        Assertions.assertThat(first.isDone()).isTrue();
+        Assertions.assertThat(second.isDone()).isFalse();
+        Assertions.assertThat(other.isDone()).isTrue();
+
+        first.join().release();
+        Assertions.assertThat(second.join().getKey()).isEqualTo(key);
+    }
+
+    @Test
+    public void testFifo() {
+        // Arrange
+        AsyncXMutexFactory<UUID> mutexFactory = new AsyncXMutexFactory<>(Runnable::run);
+        UUID key = UUID.randomUUID();
+        List<Integer> order = new ArrayList<>();
+        AsyncXMutexFactory<UUID>.Permit first = mutexFactory.lock(key).toCompletableFuture().join();
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            int waiter = i;
+            mutexFactory.lock(key).thenAccept(permit -> {
+                order.add(waiter);
+                permit.release();
+            });
+        }
+        first.release();
+
+        // Asserts
+        Assertions.assertThat(order).isEqualTo(IntStream.range(0, 100).boxed().collect(toList()));
+    }
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testMutualExclusionAndReclamation() {
+        // Arrange
+        ExecutorService executorService = Executors.newFixedThreadPool(10);
+        AsyncXMutexFactory<UUID> mutexFactory = new AsyncXMutexFactory<>(executorService);
+        UUID[] keys = IntStream.range(0, NUMBER_OF_KEYS)
+                               .mapToObj(i -> UUID.randomUUID())
+                               .toArray(UUID[]::new);
+        // not atomic, each counter is guarded by the lock of its key
+        int[] counters = new int[NUMBER_OF_KEYS];
+        AtomicIntegerArray inside = new AtomicIntegerArray(NUMBER_OF_KEYS);
+        AtomicInteger violations = new AtomicInteger();
+
+        // Act
+        CompletableFuture<?>[] futures =
+                IntStream.range(0, NUMBER_OF_ITERATIONS)
+                         .mapToObj(i -> CompletableFuture.supplyAsync(() -> i % NUMBER_OF_KEYS, executorService)
+                                                         .thenCompose(k -> mutexFactory.withLock(keys[k], key -> {
+                                                             if (inside.incrementAndGet(k) != 1) {
+                                                                 violations.incrementAndGet();
+                                                             }
+                                                             counters[k]++;
+                                                             inside.decrementAndGet(k);
+                                                             return CompletableFuture.completedFuture(k);
+                                                         })))
+                         .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+        executorService.shutdown();
+
+        // Asserts
+        Assertions.assertThat(violations.get()).isEqualTo(0);
+        Assertions.assertThat(IntStream.of(counters).sum()).isEqualTo(NUMBER_OF_ITERATIONS);
+        Assertions.assertThat(mutexFactory.size()).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleRelease() {
+        AsyncXMutexFactory<UUID> mutexFactory = new AsyncXMutexFactory<>();
+        AsyncXMutexFactory<UUID>.Permit permit = mutexFactory.lock(UUID.randomUUID()).toCompletableFuture().join();
+        permit.release();
+        permit.release();
+    }
+
+    @Test
+    public void testReleaseOnFailure() throws Exception {
+        // Arrange
+        AsyncXMutexFactory<UUID> mutexFactory = new AsyncXMutexFactory<>();
+        UUID key = UUID.randomUUID();
+
+        // Act
+        CompletableFuture<Object> failed = mutexFactory.withLock(key, k -> {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            result.completeExceptionally(new IllegalStateException("test"));
+            return result;
+        }).toCompletableFuture();
+
+        // Asserts
+        Assertions.assertThat(failed.isCompletedExceptionally()).isTrue();
+        Assertions.assertThat(mutexFactory.lock(key).toCompletableFuture().get(1, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testCancelledWaiterPassesTheLock() {
+        // Arrange
+        AsyncXMutexFactory<UUID> mutexFactory = new AsyncXMutexFactory<>(Runnable::run);
+        UUID key = UUID.randomUUID();
+        AsyncXMutexFactory<UUID>.Permit first = mutexFactory.lock(key).toCompletableFuture().join();
+        CompletableFuture<AsyncXMutexFactory<UUID>.Permit> cancelled = mutexFactory.lock(key).toCompletableFuture();
+        CompletableFuture<AsyncXMutexFactory<UUID>.Permit> next = mutexFactory.lock(key).toCompletableFuture();
+
+        // Act
+        cancelled.cancel(false);
+        first.release();
+
+        // Asserts
+        Assertions.assertThat(next.join().getKey()).isEqualTo(key);
+        next.join().release();
+        Assertions.assertThat(mutexFactory.size()).isEqualTo(0);
+    }
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testRejectedHandOverPassesTheLock() {
+        // Arrange
+        AsyncXMutexFactory<UUID> mutexFactory = new AsyncXMutexFactory<>(task -> {
+            throw new RejectedExecutionException("test");
+        });
+        UUID key = UUID.randomUUID();
+        AsyncXMutexFactory<UUID>.Permit first = mutexFactory.lock(key).toCompletableFuture().join();
+        CompletableFuture<AsyncXMutexFactory<UUID>.Permit> rejected = mutexFactory.lock(key).toCompletableFuture();
+
+        // Act
+        first.release();
+
+        // Asserts
+        Assertions.assertThatThrownBy(rejected::join)
+                  .isInstanceOf(CompletionException.class)
+                  .hasCauseInstanceOf(RejectedExecutionException.class);
+        Assertions.assertThat(mutexFactory.size()).isEqualTo(0);
+        Assertions.assertThat(mutexFactory.lock(key).toCompletableFuture().isDone()).isTrue();
+    }
+}
@@ -0,0 +1,162 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutex;
+import com.antkorwin.xsync.XMutexFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The workload of the TroubleTest.executor (a pool of 10 threads,
+ * tasks get a mutex of one of a few keys) with a slow critical section:
+ * it waits for SECTION_NANOS, like a call to another service.
+ *
+ * The XMutexFactory holds a thread of the pool while it waits,
+ * the AsyncXMutexFactory waits for a timer and doesn't hold any thread.
+ * While each workload runs, the pool gets short probe tasks,
+ * their latency shows whether the pool is still available for others.
+ *
+ * The report (throughput, latency of probes, peak number of threads)
+ * is appended to target/jmh/async-mutex.csv, the header is written
+ * when the file is created. It is a benchmark, so it is not run by
+ * the default test phase, run it by -Dtest=AsyncXMutexFactoryWorkloadBenchmark
+ *
+ * @author Korovin Anatoliy
+ */
+public class AsyncXMutexFactoryWorkloadBenchmark {
+
+    private static final int POOL_SIZE = 10;
+    private static final int[] NUMBER_OF_KEYS = {1, 2, 10};
+    private static final int NUMBER_OF_TASKS = 20_000;
+    private static final int NUMBER_OF_PROBES = 100;
+    private static final long SECTION_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final String HEADER = "factory,keys,tasks,tasksPerSecond,probeLatencyUs,peakThreads";
+
+    @Test
+    public void xMutexFactory() throws Exception {
+        for (int keys : NUMBER_OF_KEYS) {
+            XMutexFactory<UUID> mutexFactory = new XMutexFactory<>();
+            UUID[] ids = createKeys(keys);
+            long[] counters = new long[keys];
+
+            run("XMutexFactory", keys, (pool, i, done) -> pool.execute(() -> {
+                XMutex<UUID> mutex = mutexFactory.getMutex(ids[i % keys]);
+                synchronized (mutex) {
+                    LockSupport.parkNanos(SECTION_NANOS);
+                    counters[i % keys]++;
+                }
+                done.countDown();
+            }));
+
+            assertCounters(counters);
+        }
+    }
+
+    @Test
+    public void asyncXMutexFactory() throws Exception {
+        for (int keys : NUMBER_OF_KEYS) {
+            UUID[] ids = createKeys(keys);
+            long[] counters = new long[keys];
+            ExecutorService pool = Executors.newFixedThreadPool(POOL_SIZE);
+            AsyncXMutexFactory<UUID> mutexFactory = new AsyncXMutexFactory<>(pool);
+            Executor timer = CompletableFuture.delayedExecutor(SECTION_NANOS, TimeUnit.NANOSECONDS, pool);
+
+            run("AsyncXMutexFactory", keys, pool, (executor, i, done) -> executor.execute(
+                    () -> mutexFactory.withLock(ids[i % keys], key -> CompletableFuture.runAsync(() -> counters[i % keys]++, timer))
+                                      .thenRun(done::countDown)));
+
+            assertCounters(counters);
+            Assertions.assertThat(mutexFactory.size()).isEqualTo(0);
+        }
+    }
+
+    private void run(String factory, int keys, Task task) throws Exception {
+        run(factory, keys, Executors.newFixedThreadPool(POOL_SIZE), task);
+    }
+
+    private void run(String factory, int keys, ExecutorService pool, Task task) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        CountDownLatch done = new CountDownLatch(NUMBER_OF_TASKS);
+        long start = System.nanoTime();
+        for (int i = 0; i < NUMBER_OF_TASKS; i++) {
+            task.submit(pool, i, done);
+        }
+        long probeNanos = probe(pool);
+        Assertions.assertThat(done.await(10, TimeUnit.MINUTES)).isTrue();
+        long elapsed = System.nanoTime() - start;
+
+        pool.shutdown();
+        Assertions.assertThat(pool.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        String line = String.format(Locale.ROOT, "%s,%d,%d,%.0f,%.1f,%d",
+                                    factory, keys, NUMBER_OF_TASKS,
+                                    NUMBER_OF_TASKS / (elapsed / 1e9),
+                                    probeNanos / 1e3 / NUMBER_OF_PROBES,
+                                    threads.getPeakThreadCount());
+        Path file = ProfiledBenchmarkRunner.RESULTS_DIR.resolve("async-mutex.csv");
+        Files.createDirectories(file.getParent());
+        boolean created = Files.notExists(file);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file,
+                                                                       StandardCharsets.UTF_8,
+                                                                       StandardOpenOption.CREATE,
+                                                                       StandardOpenOption.APPEND))) {
+            if (created) {
+                out.println(HEADER);
+            }
+            out.println(line);
+        }
+    }
+
+    /**
+     * @return total latency of probe tasks submitted to the busy pool one by one
+     */
+    private long probe(ExecutorService pool) {
+        long total = 0;
+        for (int i = 0; i < NUMBER_OF_PROBES; i++) {
+            long submitted = System.nanoTime();
+            CompletableFuture.runAsync(() -> { }, pool).join();
+            total += System.nanoTime() - submitted;
+        }
+        return total;
+    }
+
+    private UUID[] createKeys(int keys) {
+        UUID[] ids = new UUID[keys];
+        for (int i = 0; i < keys; i++) {
+            ids[i] = UUID.randomUUID();
+        }
+        return ids;
+    }
+
+    private void assertCounters(long[] counters) {
+        long sum = 0;
+        for (long counter : counters) {
+            sum += counter;
+        }
+        Assertions.assertThat(sum).isEqualTo(NUMBER_OF_TASKS);
+    }
+
+
+    @FunctionalInterface
+    private interface Task {
+        void submit(ExecutorService pool, int index, CountDownLatch done);
+    }
+}
@@ -0,0 +1,133 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutex;
+import com.antkorwin.xsync.XMutexFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps and mutex factories created directly against the same beans
+ * of the ConcurrentMapAutoConfiguration, with their meters bound to a registry.
+ * Scores of direct and bean benchmarks should be the same,
+ * the instrumented map shows the cost of the latency and contention meters.
+ *
+ * @author Korovin Anatoliy
+ */
+public class AutoConfigurationOverheadBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 1_000;
+
+    @Benchmark
+    public Integer get_direct(Data data, ThreadKeys threadKeys) {
+        return data.directMap.get(data.keys[threadKeys.next()]);
+    }
+
+    @Benchmark
+    public Integer get_bean(Data data, ThreadKeys threadKeys) {
+        return data.beanMap.get(data.keys[threadKeys.next()]);
+    }
+
+    @Benchmark
+    public Integer get_instrumentedBean(Data data, ThreadKeys threadKeys) {
+        return data.instrumentedBeanMap.get(data.keys[threadKeys.next()]);
+    }
+
+    @Benchmark
+    public XMutex<UUID> getMutex_direct(Data data, ThreadKeys threadKeys) {
+        return data.directMutexFactory.getMutex(data.keys[threadKeys.next()]);
+    }
+
+    @Benchmark
+    public XMutex<UUID> getMutex_bean(Data data, ThreadKeys threadKeys) {
+        return data.beanMutexFactory.getMutex(data.keys[threadKeys.next()]);
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(2)
+                .measurementTime(TimeValue.seconds(2))
+                .measurementIterations(5)
+                .threads(8)
+                .forks(1)
+                .shouldFailOnError(true)
+                .jvmArgs("-Xms2048m", "-Xmx2048m")
+                .build();
+
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        UUID[] keys = new UUID[NUMBER_OF_KEYS];
+
+        ConfigurableApplicationContext context;
+        ConcurrentMap<UUID, Integer> directMap = new ConcurrentHashMap<>();
+        ConcurrentMap<UUID, Integer> beanMap;
+        ConcurrentMap<UUID, Integer> instrumentedBeanMap;
+        XMutexFactory<UUID> directMutexFactory = new XMutexFactory<>();
+        XMutexFactory<UUID> beanMutexFactory;
+
+        @Setup
+        @SuppressWarnings("unchecked")
+        public void setUp() {
+            context = new SpringApplicationBuilder(ConcurrentTestsApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .properties("concurrent-map.maps.benchmarkMap.implementation=CONCURRENT_HASH_MAP",
+                                "concurrent-map.maps.instrumentedMap.implementation=CONCURRENT_HASH_MAP",
+                                "concurrent-map.maps.instrumentedMap.instrumented=true",
+                                "concurrent-map.mutex-factories.benchmarkMutexes.implementation=XMUTEX_FACTORY")
+                    .run();
+
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            context.getBeansOfType(ConcurrentMapMetrics.class).values().forEach(metrics -> metrics.bindTo(registry));
+
+            beanMap = context.getBean("benchmarkMap", ConcurrentMap.class);
+            instrumentedBeanMap = context.getBean("instrumentedMap", ConcurrentMap.class);
+            beanMutexFactory = context.getBean("benchmarkMutexes", XMutexFactory.class);
+
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                keys[i] = UUID.randomUUID();
+                directMap.put(keys[i], i);
+                beanMap.put(keys[i], i);
+                instrumentedBeanMap.put(keys[i], i);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        int position;
+
+        int next() {
+            position = (position + 1 == NUMBER_OF_KEYS) ? 0 : position + 1;
+            return position;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class BatchingConcurrentReferenceHashMapTest {
+
+    private static final int NUMBER_OF_KEYS = 10_000;
+    private static final int NUMBER_OF_BATCHES = 100;
+
+    @Test
+    public void testComputeAllFromManyThreads() {
+        // Arrange
+        BatchingConcurrentReferenceHashMap<UUID, Integer> map =
+                new BatchingConcurrentReferenceHashMap<>(16, ConcurrentReferenceHashMap.ReferenceType.SOFT);
+        UUID[] keys = IntStream.range(0, NUMBER_OF_KEYS)
+                               .mapToObj(i -> UUID.randomUUID())
+                               .toArray(UUID[]::new);
+
+        // Act
+        IntStream.range(0, NUMBER_OF_BATCHES)
+                 .parallel()
+                 .forEach(i -> map.computeAll(keys, (k, v) -> (v == null) ? 1 : v + 1));
+
+        // Asserts
+        Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS);
+        for (UUID key : keys) {
+            Assertions.assertThat(map.get(key)).isEqualTo(NUMBER_OF_BATCHES);
+        }
+    }
+
+    @Test
+    public void testPutAllIfAbsent() {
+        // Arrange
+        BatchingConcurrentReferenceHashMap<UUID, Integer> map =
+                new BatchingConcurrentReferenceHashMap<>(16, ConcurrentReferenceHashMap.ReferenceType.SOFT);
+        UUID existing = UUID.randomUUID();
+        map.put(existing, -1);
+
+        Map<UUID, Integer> entries = new HashMap<>();
+        entries.put(existing, 1);
+        IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> entries.put(UUID.randomUUID(), i));
+
+        // Act
+        map.putAllIfAbsent(entries);
+
+        // Asserts
+        Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS + 1);
+        Assertions.assertThat(map.get(existing)).isEqualTo(-1);
+    }
+}
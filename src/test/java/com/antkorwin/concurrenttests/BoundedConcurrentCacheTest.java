@@ -0,0 +1,110 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class BoundedConcurrentCacheTest {
+
+    private static final int MAXIMUM_SIZE = 1_000;
+
+    @Test
+    public void testSizeIsBounded() {
+        // Arrange
+        BoundedConcurrentCache<UUID, Integer> cache = new BoundedConcurrentCache<>(MAXIMUM_SIZE);
+
+        // Act
+        IntStream.range(0, MAXIMUM_SIZE * 100)
+                 .parallel()
+                 .forEach(i -> cache.put(UUID.randomUUID(), i));
+        cache.cleanUp();
+
+        // Asserts
+        Assertions.assertThat(cache.size()).isLessThanOrEqualTo(MAXIMUM_SIZE);
+        Assertions.assertThat(cache.statistics().getEvictionCount())
+                  .isEqualTo(MAXIMUM_SIZE * 100 - cache.size());
+    }
+
+    @Test
+    public void testReferencedEntryGetsSecondChance() {
+        // Arrange
+        BoundedConcurrentCache<UUID, Integer> cache = new BoundedConcurrentCache<>(2);
+        UUID hot = UUID.randomUUID();
+        UUID cold = UUID.randomUUID();
+        cache.put(hot, 1);
+        cache.put(cold, 2);
+
+        // Act
+        // fill a read buffer to drain it
+        for (int i = 0; i < 16; i++) {
+            cache.get(hot);
+        }
+        cache.cleanUp();
+        cache.put(UUID.randomUUID(), 3);
+
+        // Asserts
+        Assertions.assertThat(cache.get(hot)).isEqualTo(1);
+        Assertions.assertThat(cache.containsKey(cold)).isFalse();
+        Assertions.assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testComputeIfAbsentAndStatistics() {
+        // Arrange
+        BoundedConcurrentCache<UUID, Integer> cache = new BoundedConcurrentCache<>(MAXIMUM_SIZE);
+        UUID key = UUID.randomUUID();
+
+        // Act
+        Integer first = cache.computeIfAbsent(key, k -> 1);
+        Integer second = cache.computeIfAbsent(key, k -> 2);
+
+        // Asserts
+        Assertions.assertThat(first).isEqualTo(1);
+        Assertions.assertThat(second).isEqualTo(1);
+        Assertions.assertThat(cache.statistics().getHitCount()).isEqualTo(1);
+        Assertions.assertThat(cache.statistics().getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws InterruptedException {
+        // Arrange
+        BoundedConcurrentCache<UUID, Integer> cache =
+                new BoundedConcurrentCache<>(MAXIMUM_SIZE, 10, TimeUnit.MILLISECONDS);
+        UUID key = UUID.randomUUID();
+        cache.put(key, 1);
+
+        // Act
+        Thread.sleep(20);
+
+        // Asserts
+        Assertions.assertThat(cache.get(key)).isNull();
+        Assertions.assertThat(cache.putIfAbsent(key, 2)).isNull();
+        Assertions.assertThat(cache.get(key)).isEqualTo(2);
+        Assertions.assertThat(cache.statistics().getExpirationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testConcurrentMapOperations() {
+        // Arrange
+        BoundedConcurrentCache<UUID, Integer> cache = new BoundedConcurrentCache<>(MAXIMUM_SIZE);
+        UUID key = UUID.randomUUID();
+
+        // Act
+        cache.put(key, 1);
+        boolean replaced = cache.replace(key, 1, 2);
+        Integer merged = cache.merge(key, 10, Integer::sum);
+        boolean removed = cache.remove(key, 12);
+
+        // Asserts
+        Assertions.assertThat(replaced).isTrue();
+        Assertions.assertThat(merged).isEqualTo(12);
+        Assertions.assertThat(removed).isTrue();
+        Assertions.assertThat(cache).isEmpty();
+    }
+}
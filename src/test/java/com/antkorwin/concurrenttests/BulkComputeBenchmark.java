@@ -0,0 +1,113 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Batched (computeAll) vs per-key compute. Each invocation processes
+ * all keys, split in batches of the batchSize.
+ *
+ * @author Korovin Anatoliy
+ */
+public class BulkComputeBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 10_000;
+    private static final BiFunction<UUID, Integer, Integer> COMPUTE_FUNC = (k, v) -> (v == null) ? 1 : v + 1;
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void perKey_ConcurrentReferenceHashMap(Data data, Blackhole bh) {
+        perKey(data.concurrentReferenceHashMap, data, bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void batched_ConcurrentReferenceHashMap(Data data, Blackhole bh) {
+        batched(data.batchingConcurrentReferenceHashMap, data, bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void perKey_ConcurrentHashMap(Data data, Blackhole bh) {
+        perKey(data.concurrentHashMap, data, bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void batched_ConcurrentHashMap(Data data, Blackhole bh) {
+        batched(data.concurrentHashMap, data, bh);
+    }
+
+    private void perKey(ConcurrentMap<UUID, Integer> map, Data data, Blackhole bh) {
+        for (UUID[] batch : data.batches) {
+            for (UUID key : batch) {
+                bh.consume(map.compute(key, COMPUTE_FUNC));
+            }
+        }
+    }
+
+    private void batched(ConcurrentMap<UUID, Integer> map, Data data, Blackhole bh) {
+        for (UUID[] batch : data.batches) {
+            BulkConcurrentMap.computeAll(map, batch, COMPUTE_FUNC);
+        }
+        bh.consume(map);
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(1)
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .threads(8)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xms7024m", "-Xmx7024m", "-verbose:gc")
+                .build();
+
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"16", "128", "1024", "10000"})
+        int batchSize;
+
+        List<UUID[]> batches = new ArrayList<>();
+
+        ConcurrentMap<UUID, Integer> concurrentHashMap = new ConcurrentHashMap<>();
+        ConcurrentMap<UUID, Integer> concurrentReferenceHashMap = new ConcurrentReferenceHashMap<>();
+        ConcurrentMap<UUID, Integer> batchingConcurrentReferenceHashMap = new BatchingConcurrentReferenceHashMap<>();
+
+        @Setup
+        public void setUp() {
+            UUID[] keys = new UUID[NUMBER_OF_KEYS];
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                keys[i] = UUID.randomUUID();
+            }
+            for (int from = 0; from < NUMBER_OF_KEYS; from += batchSize) {
+                batches.add(Arrays.copyOfRange(keys, from, Math.min(from + batchSize, NUMBER_OF_KEYS)));
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps as a cache: computeIfAbsent over a Zipfian trace of keys,
+ * the BoundedConcurrentCache (bounded by cacheSize) against weak maps
+ * which are bounded only by the GC.
+ *
+ * Reference maps are created with WEAK references, as in the PurgeLatencyBenchmark
+ * (SOFT entries would survive in this heap and keep all keys). A loaded value
+ * is a new Integer and each lookup goes with a new copy of the key, so only
+ * the map refers to an entry, to its key of the WeakHashMap too,
+ * and the entry is lost at the next GC.
+ * Hits and misses are counted by the loader, the hit ratio
+ * and the throughput are written to target/jmh/cache.csv
+ *
+ * @author Korovin Anatoliy
+ */
+public class CacheBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 100_000;
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+
+    @Benchmark
+    public Integer computeIfAbsent(Data data, ThreadKeys threadKeys) {
+        UUID key = data.keys[threadKeys.next()];
+        return data.map.computeIfAbsent(new UUID(key.getMostSignificantBits(), key.getLeastSignificantBits()),
+                                        threadKeys::load);
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(1)
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .threads(8)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xms2048m", "-Xmx2048m", "-verbose:gc")
+                .build();
+
+        Collection<RunResult> results = ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+        writeHitRatio(results, ProfiledBenchmarkRunner.RESULTS_DIR.resolve("cache.csv"));
+    }
+
+    private void writeHitRatio(Collection<RunResult> results, Path file) throws Exception {
+        Files.createDirectories(file.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("implementation,cacheSize,opsPerUs,hitRatio");
+            for (RunResult result : results) {
+                Map<String, Result> counters = result.getSecondaryResults();
+                double hits = counters.get("hits").getScore();
+                double misses = counters.get("misses").getScore();
+                String line = String.format(Locale.ROOT, "%s,%s,%.3f,%.4f",
+                                            result.getParams().getParam("implementation"),
+                                            result.getParams().getParam("cacheSize"),
+                                            result.getPrimaryResult().getScore(),
+                                            hits / (hits + misses));
+                out.println(line);
+            }
+        }
+    }
+
+
+    public enum Cache {
+
+        BOUNDED_CONCURRENT_CACHE,
+        SYNCHRONIZED_WEAK_HASH_MAP,
+        CONCURRENT_REFERENCE_HASH_MAP,
+        SPRING_CONCURRENT_REFERENCE_HASH_MAP,
+        LOCK_FREE_REFERENCE_HASH_MAP;
+
+        Map<UUID, Integer> create(int cacheSize) {
+            switch (this) {
+                case BOUNDED_CONCURRENT_CACHE:
+                    return new BoundedConcurrentCache<>(cacheSize);
+                case SYNCHRONIZED_WEAK_HASH_MAP:
+                    return Collections.synchronizedMap(new WeakHashMap<>(cacheSize));
+                case CONCURRENT_REFERENCE_HASH_MAP:
+                    return new ConcurrentReferenceHashMap<>(cacheSize, 0.75f, 16,
+                                                            ConcurrentReferenceHashMap.ReferenceType.WEAK);
+                case SPRING_CONCURRENT_REFERENCE_HASH_MAP:
+                    return new org.springframework.util.ConcurrentReferenceHashMap<>(
+                            cacheSize, org.springframework.util.ConcurrentReferenceHashMap.ReferenceType.WEAK);
+                default:
+                    return new LockFreeReferenceHashMap<>(cacheSize, LockFreeReferenceHashMap.ReferenceType.WEAK);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param
+        Cache implementation;
+
+        /**
+         * Maximum size of the bounded cache, reference maps ignore it
+         */
+        @Param({"1000", "10000"})
+        int cacheSize;
+
+        UUID[] keys = new UUID[NUMBER_OF_KEYS];
+        Map<UUID, Integer> map;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                keys[i] = UUID.randomUUID();
+            }
+            map = implementation.create(cacheSize);
+        }
+    }
+
+    /**
+     * Each thread has its own Zipfian sequence of keys
+     * and counts its own hits and misses.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ThreadKeys {
+
+        public long hits;
+        public long misses;
+
+        int[] sequence;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threadParams) {
+            sequence = KeyDistribution.ZIPFIAN.sequence(NUMBER_OF_KEYS,
+                                                        SEQUENCE_LENGTH,
+                                                        threadParams.getThreadIndex());
+        }
+
+        @Setup(Level.Iteration)
+        public void resetCounters() {
+            hits = 0;
+            misses = 0;
+        }
+
+        int next() {
+            int index = sequence[position];
+            position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            hits++;
+            return index;
+        }
+
+        /**
+         * The next() has counted a hit, the loader turns it into a miss.
+         */
+        Integer load(UUID key) {
+            hits--;
+            misses++;
+            // out of the Integer cache, so it is a new object
+            return 1_000_000 + (key.hashCode() & 0xFFFF);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class ConcurrentCounterMapTest {
+
+    private static final int NUMBER_OF_KEYS = 100;
+    private static final int ITERATION_NUMBER = 1_000_000;
+
+    @Test
+    public void testParallelIncrements() {
+        // Arrange
+        ConcurrentCounterMap<UUID> counters = new ConcurrentCounterMap<>();
+        UUID[] keys = IntStream.range(0, NUMBER_OF_KEYS)
+                               .mapToObj(i -> UUID.randomUUID())
+                               .toArray(UUID[]::new);
+
+        // Act
+        IntStream.range(0, ITERATION_NUMBER)
+                 .parallel()
+                 .forEach(i -> counters.incrementAndGet(keys[i % NUMBER_OF_KEYS]));
+
+        // Asserts
+        Assertions.assertThat(counters.size()).isEqualTo(NUMBER_OF_KEYS);
+        Assertions.assertThat(counters.sum()).isEqualTo(ITERATION_NUMBER);
+        for (UUID key : keys) {
+            Assertions.assertThat(counters.get(key)).isEqualTo(ITERATION_NUMBER / NUMBER_OF_KEYS);
+        }
+    }
+
+    @Test
+    public void testAddGetAndRemove() {
+        // Arrange
+        ConcurrentCounterMap<UUID> counters = new ConcurrentCounterMap<>();
+        String id = UUID.randomUUID().toString();
+
+        // Act
+        long first = counters.addAndGet(UUID.fromString(id), 10);
+        long previous = counters.getAndAdd(UUID.fromString(id), 5);
+        long decremented = counters.decrementAndGet(UUID.fromString(id));
+
+        // Asserts
+        Assertions.assertThat(first).isEqualTo(10);
+        Assertions.assertThat(previous).isEqualTo(10);
+        Assertions.assertThat(decremented).isEqualTo(14);
+        Assertions.assertThat(counters.remove(UUID.fromString(id))).isEqualTo(14);
+        Assertions.assertThat(counters.get(UUID.fromString(id))).isEqualTo(0);
+        Assertions.assertThat(counters.containsKey(UUID.fromString(id))).isFalse();
+    }
+}
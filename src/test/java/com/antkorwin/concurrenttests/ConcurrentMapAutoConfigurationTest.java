@@ -0,0 +1,79 @@
+package com.antkorwin.concurrenttests;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class ConcurrentMapAutoConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(ConcurrentMapAutoConfiguration.class))
+                    .withPropertyValues("concurrent-map.maps.sessions.implementation=LOCK_FREE_REFERENCE_HASH_MAP",
+                                        "concurrent-map.maps.sessions.reference-type=SOFT",
+                                        "concurrent-map.maps.counters.instrumented=true",
+                                        "concurrent-map.mutex-factories.orderLocks.implementation=LOCK_FREE_XMUTEX_FACTORY",
+                                        "concurrent-map.mutex-factories.userLocks.concurrency-level=32");
+
+    @Test
+    public void testBeansByProperties() {
+        contextRunner.run(context -> {
+            Object sessions = context.getBean("sessions");
+            Assertions.assertThat(sessions).isInstanceOf(LockFreeReferenceHashMap.class);
+            Assertions.assertThat(((LockFreeReferenceHashMap<?, ?>) sessions).getReferenceType())
+                      .isEqualTo(LockFreeReferenceHashMap.ReferenceType.SOFT);
+
+            Object counters = context.getBean("counters");
+            Assertions.assertThat(counters).isInstanceOf(InstrumentedConcurrentMap.class);
+            Assertions.assertThat(((InstrumentedConcurrentMap<?, ?>) counters).getDelegate())
+                      .isInstanceOf(ConcurrentHashMap.class);
+
+            Assertions.assertThat(context.getBean("orderLocks")).isInstanceOf(LockFreeXMutexFactory.class);
+            Assertions.assertThat(context.getBean("userLocks")).isInstanceOf(com.antkorwin.xsync.XMutexFactory.class);
+        });
+    }
+
+    @Test
+    public void testMeters() {
+        contextRunner.run(context -> {
+            // Arrange
+            @SuppressWarnings("unchecked")
+            ConcurrentMap<String, Integer> counters = context.getBean("counters", ConcurrentMap.class);
+            LockFreeXMutexFactory<String> orderLocks = context.getBean("orderLocks", LockFreeXMutexFactory.class);
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            context.getBeansOfType(ConcurrentMapMetrics.class).values().forEach(metrics -> metrics.bindTo(registry));
+
+            // Act
+            counters.put("a", 1);
+            counters.get("a");
+            Object mutex = orderLocks.getMutex("order");
+
+            // Asserts
+            Assertions.assertThat(registry.get("concurrent.map.size").tag("name", "counters").gauge().value())
+                      .isEqualTo(1.0);
+            Assertions.assertThat(registry.get("concurrent.map.latency")
+                                          .tag("name", "counters")
+                                          .tag("operation", "get")
+                                          .tag("quantile", "0.5")
+                                          .timeGauge()
+                                          .value(TimeUnit.NANOSECONDS))
+                      .isGreaterThan(0.0);
+            Assertions.assertThat(registry.get("concurrent.mutex.factory.size").tag("name", "orderLocks").gauge().value())
+                      .isEqualTo(1.0);
+            Assertions.assertThat(registry.get("concurrent.map.purged").tag("name", "orderLocks").functionCounter().count())
+                      .isEqualTo(0.0);
+            Assertions.assertThat(registry.get("concurrent.map.size").tag("name", "sessions").gauge().value())
+                      .isEqualTo(0.0);
+            Assertions.assertThat(mutex).isNotNull();
+        });
+    }
+}
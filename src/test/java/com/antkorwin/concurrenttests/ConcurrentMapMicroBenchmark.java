@@ -4,7 +4,6 @@ import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
 import org.junit.Test;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
-import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.openjdk.jmh.runner.options.TimeValue;
@@ -26,6 +25,7 @@ import java.util.stream.IntStream;
 public class ConcurrentMapMicroBenchmark {
 
     private static final int NUMBER_OF_KEYS = 1_000;
+    private static final BiFunction<UUID, Long, Long> INCREMENT_FUNC = (k, v) -> (v == null) ? 1 : v + 1;
 
     @Benchmark
     @OperationsPerInvocation(NUMBER_OF_KEYS)
@@ -35,6 +35,14 @@ public class ConcurrentMapMicroBenchmark {
         }
     }
 
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void compute_InstrumentedConcurrentHashMap(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.instrumentedConcurrentHashMap.compute(data.keys[i], computeFunc(data)));
+        }
+    }
+
     @Benchmark
     @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void compute_ConcurrentReferenceHashMap(Data data, Blackhole bh) {
@@ -43,6 +51,14 @@ public class ConcurrentMapMicroBenchmark {
         }
     }
 
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void compute_LockFreeReferenceHashMap(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.lockFreeReferenceHashMap.compute(data.keys[i], computeFunc(data)));
+        }
+    }
+
     @Benchmark
     @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void compute_SynchronizedMap(Data data, Blackhole bh) {
@@ -51,6 +67,39 @@ public class ConcurrentMapMicroBenchmark {
         }
     }
 
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void compute_UuidIntHashMap(Data data, Blackhole bh) {
+        UuidIntHashMap.UuidIntRemappingFunction func = primitiveComputeFunc(data);
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.uuidIntHashMap.compute(data.msbs[i], data.lsbs[i], func));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void get_ConcurrentHashMap(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.concurrentHashMap.get(data.keys[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void get_InstrumentedConcurrentHashMap(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.instrumentedConcurrentHashMap.get(data.keys[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void get_UuidIntHashMap(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.uuidIntHashMap.get(data.msbs[i], data.lsbs[i]));
+        }
+    }
+
     @Benchmark
     @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void computeIfAbsent_ConcurrentHashMap(Data data, Blackhole bh) {
@@ -59,11 +108,40 @@ public class ConcurrentMapMicroBenchmark {
         }
     }
 
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void increment_ConcurrentHashMapCompute(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.counters.compute(data.keys[i], INCREMENT_FUNC));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void increment_ConcurrentHashMapMerge(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.counters.merge(data.keys[i], 1L, Long::sum));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void increment_ConcurrentCounterMap(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.counterMap.incrementAndGet(data.keys[i]));
+        }
+    }
+
 
     private BiFunction<UUID, Integer, Integer> computeFunc(Data data) {
         return (k, v) -> (v == null) ? data.random.nextInt(NUMBER_OF_KEYS) : v;
     }
 
+    private UuidIntHashMap.UuidIntRemappingFunction primitiveComputeFunc(Data data) {
+        int missingValue = data.uuidIntHashMap.getMissingValue();
+        return (msb, lsb, v) -> (v == missingValue) ? data.random.nextInt(NUMBER_OF_KEYS) : v;
+    }
+
     private Function<? super UUID, ? extends Integer> computeIfAbsentFunc(Data data) {
         return k -> data.random.nextInt(NUMBER_OF_KEYS);
     }
@@ -92,7 +170,7 @@ public class ConcurrentMapMicroBenchmark {
                 //.addProfiler(WinPerfAsmProfiler.class)
                 .build();
 
-        new Runner(opt).run();
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
     }
 
 
@@ -100,11 +178,23 @@ public class ConcurrentMapMicroBenchmark {
     public static class Data {
 
         UUID[] keys = new UUID[NUMBER_OF_KEYS];
+        long[] msbs = new long[NUMBER_OF_KEYS];
+        long[] lsbs = new long[NUMBER_OF_KEYS];
         Random random = new Random();
 
         Map<UUID, Integer> synchronizedMap = Collections.synchronizedMap(new WeakHashMap<>());
         Map<UUID, Integer> concurrentHashMap = new ConcurrentHashMap<>();
+        // measures an overhead of the instrumentation
+        Map<UUID, Integer> instrumentedConcurrentHashMap =
+                new InstrumentedConcurrentMap<>(new ConcurrentHashMap<>());
         Map<UUID, Integer> concurrentReferenceHashMap = new ConcurrentReferenceHashMap<>();
+        // soft values as in the ConcurrentReferenceHashMap, nothing else holds these values
+        Map<UUID, Integer> lockFreeReferenceHashMap =
+                new LockFreeReferenceHashMap<>(16, LockFreeReferenceHashMap.ReferenceType.SOFT);
+        UuidIntHashMap uuidIntHashMap = new UuidIntHashMap();
+        // per-key counters
+        Map<UUID, Long> counters = new ConcurrentHashMap<>();
+        ConcurrentCounterMap<UUID> counterMap = new ConcurrentCounterMap<>();
 
         @Setup
         public void setUp() {
@@ -113,13 +203,22 @@ public class ConcurrentMapMicroBenchmark {
                 keys[i] = UUID.randomUUID();
                 keys[i + 1] = keys[i];
             }
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                msbs[i] = keys[i].getMostSignificantBits();
+                lsbs[i] = keys[i].getLeastSignificantBits();
+            }
 
             IntStream.range(0, NUMBER_OF_KEYS)
                      .boxed()
                      .forEach(i -> {
                          concurrentHashMap.putIfAbsent(keys[i], random.nextInt(NUMBER_OF_KEYS));
+                         instrumentedConcurrentHashMap.putIfAbsent(keys[i], random.nextInt(NUMBER_OF_KEYS));
                          concurrentReferenceHashMap.putIfAbsent(keys[i], random.nextInt(NUMBER_OF_KEYS));
+                         lockFreeReferenceHashMap.putIfAbsent(keys[i], random.nextInt(NUMBER_OF_KEYS));
+                         uuidIntHashMap.putIfAbsent(msbs[i], lsbs[i], random.nextInt(NUMBER_OF_KEYS));
                          synchronizedMap.putIfAbsent(keys[i], random.nextInt(NUMBER_OF_KEYS));
+                         counters.putIfAbsent(keys[i], 0L);
+                         counterMap.addAndGet(keys[i], 0);
                      });
         }
     }
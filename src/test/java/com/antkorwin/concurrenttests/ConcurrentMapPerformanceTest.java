@@ -4,7 +4,6 @@ import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 import org.openjdk.jmh.annotations.*;
-import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.openjdk.jmh.runner.options.TimeValue;
@@ -12,9 +11,7 @@ import org.openjdk.jmh.runner.options.TimeValue;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
-import java.util.stream.IntStream;
 
 /**
  * Created on 07.07.2018.
@@ -26,89 +23,193 @@ import java.util.stream.IntStream;
 public class ConcurrentMapPerformanceTest {
 
     private static final int NUMBER_OF_KEYS = 10_000;
+    // putIfAbsent, get and put of each key
+    private static final int PUT_GET_OPERATIONS = 3 * NUMBER_OF_KEYS;
 
 
     @Benchmark
+    @OperationsPerInvocation(PUT_GET_OPERATIONS)
     public void concurrentHashMap_put_get(Data data) throws Exception {
         avoidEliminatingAndAssert(data, data.concurrentHashMap, this::putAndGet);
     }
 
+    // it runs a compute of each key, not puts and gets
     @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void concurrentReferenceHashMap_put_get(Data data) throws Exception {
         avoidEliminatingAndAssert(data, data.concurrentReferenceHashMap, this::compute);
     }
 
     @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void synchronizedMap_compute(Data data) throws Exception {
         avoidEliminatingAndAssert(data, data.synchronizedMap, this::compute);
     }
 
     @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void concurrentHashMap_compute(Data data) throws Exception {
         avoidEliminatingAndAssert(data, data.concurrentHashMap, this::compute);
     }
 
     @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void concurrentReferenceHashMap_compute(Data data) throws Exception {
         avoidEliminatingAndAssert(data, data.concurrentReferenceHashMap, this::compute);
     }
 
     @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void synchronizedMap_put(Data data) throws Exception {
         avoidEliminatingAndAssert(data, data.synchronizedMap, this::put);
     }
 
     @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void concurrentHashMap_put(Data data) throws Exception {
         avoidEliminatingAndAssert(data, data.concurrentHashMap, this::put);
     }
 
     @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
     public void concurrentReferenceHashMap_put(Data data) throws Exception {
         avoidEliminatingAndAssert(data, data.concurrentReferenceHashMap, this::put);
     }
 
 
+    @Benchmark
+    @OperationsPerInvocation(PUT_GET_OPERATIONS)
+    public void offHeapUuidIntHashMap_put_get(Data data) throws Exception {
+        avoidEliminatingAndAssert(data, data.offHeapUuidIntHashMap, this::putAndGet);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void offHeapUuidIntHashMap_compute(Data data) throws Exception {
+        avoidEliminatingAndAssert(data, data.offHeapUuidIntHashMap, this::compute);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void offHeapUuidIntHashMap_put(Data data) throws Exception {
+        avoidEliminatingAndAssert(data, data.offHeapUuidIntHashMap, this::put);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PUT_GET_OPERATIONS)
+    public void uuidIntHashMap_put_get(Data data) throws Exception {
+        avoidEliminatingAndAssert(data, data.uuidIntHashMap, this::putAndGet);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void uuidIntHashMap_compute(Data data) throws Exception {
+        avoidEliminatingAndAssert(data, data.uuidIntHashMap, this::compute);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void uuidIntHashMap_put(Data data) throws Exception {
+        avoidEliminatingAndAssert(data, data.uuidIntHashMap, this::put);
+    }
+
+
+    /**
+     * The same loop as in the map benchmarks, but without a map,
+     * to subtract the cost and the allocation of the harness.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void harness_loop(Data data) throws Exception {
+        long before = data.sum.sum();
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            data.random.nextInt(NUMBER_OF_KEYS);
+        }
+        data.sum.add(data.keys[data.random.nextInt(NUMBER_OF_KEYS)].hashCode() % 2 + 2);
+        Assertions.assertThat(data.sum.sum()).isGreaterThan(before);
+    }
+
+
     private void avoidEliminatingAndAssert(Data data,
                                            Map<UUID, Integer> map,
                                            BiConsumer<Data, Map<UUID, Integer>> mapProcessor) {
 
-        long before = data.sum.get();
+        long before = data.sum.sum();
 
         // Act
         mapProcessor.accept(data, map);
 
         // avoid an eliminating
         int rndIndex = data.random.nextInt(NUMBER_OF_KEYS);
-        data.sum.addAndGet(map.get(data.keys[rndIndex]) % 2 + 1);
+        data.sum.add(map.get(data.keys[rndIndex]) % 2 + 1);
 
         // Assert
-        Assertions.assertThat(data.sum.get()).isGreaterThan(before);
+        Assertions.assertThat(data.sum.sum()).isGreaterThan(before);
     }
 
-    private void putAndGet(Data data, Map<UUID, Integer> map) {
+    private void avoidEliminatingAndAssert(Data data,
+                                           UuidIntHashMap map,
+                                           BiConsumer<Data, UuidIntHashMap> mapProcessor) {
 
-        IntStream.range(0, NUMBER_OF_KEYS)
-                 .boxed()
-                 .forEach(i -> map.putIfAbsent(data.keys[i], data.random.nextInt(NUMBER_OF_KEYS)));
+        long before = data.sum.sum();
 
-        IntStream.range(0, NUMBER_OF_KEYS)
-                 .boxed()
-                 .forEach(i -> map.put(data.keys[i], map.get(data.keys[NUMBER_OF_KEYS - 1 - i])));
+        // Act
+        mapProcessor.accept(data, map);
+
+        // avoid an eliminating
+        int rndIndex = data.random.nextInt(NUMBER_OF_KEYS);
+        data.sum.add(map.get(data.msbs[rndIndex], data.lsbs[rndIndex]) % 2 + 1);
+
+        // Assert
+        Assertions.assertThat(data.sum.sum()).isGreaterThan(before);
     }
 
-    private void compute(Data data, Map<UUID, Integer> map) {
+    /**
+     * Loops of all maps have the same shape, so the difference is the cost of the map
+     */
+    private void putAndGet(Data data, Map<UUID, Integer> map) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            map.putIfAbsent(data.keys[i], data.random.nextInt(NUMBER_OF_KEYS));
+        }
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            map.put(data.keys[i], map.get(data.keys[NUMBER_OF_KEYS - 1 - i]));
+        }
+    }
 
-        IntStream.range(0, NUMBER_OF_KEYS)
-                 .boxed()
-                 .forEach(i -> map.compute(data.keys[i],
-                                           (k, v) -> (v == null) ? data.random.nextInt(NUMBER_OF_KEYS) : v));
+    private void compute(Data data, Map<UUID, Integer> map) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            map.compute(data.keys[i], (k, v) -> (v == null) ? data.random.nextInt(NUMBER_OF_KEYS) : v);
+        }
     }
 
     private void put(Data data, Map<UUID, Integer> map) {
-        IntStream.range(0, NUMBER_OF_KEYS)
-                 .boxed()
-                 .forEach(i -> map.putIfAbsent(data.keys[i], data.random.nextInt(NUMBER_OF_KEYS)));
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            map.putIfAbsent(data.keys[i], data.random.nextInt(NUMBER_OF_KEYS));
+        }
+    }
+
+    private void putAndGet(Data data, UuidIntHashMap map) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            map.putIfAbsent(data.msbs[i], data.lsbs[i], data.random.nextInt(NUMBER_OF_KEYS));
+        }
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            int j = NUMBER_OF_KEYS - 1 - i;
+            map.put(data.msbs[i], data.lsbs[i], map.get(data.msbs[j], data.lsbs[j]));
+        }
+    }
+
+    private void compute(Data data, UuidIntHashMap map) {
+        int missingValue = map.getMissingValue();
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            map.compute(data.msbs[i], data.lsbs[i],
+                        (msb, lsb, v) -> (v == missingValue) ? data.random.nextInt(NUMBER_OF_KEYS) : v);
+        }
+    }
+
+    private void put(Data data, UuidIntHashMap map) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            map.putIfAbsent(data.msbs[i], data.lsbs[i], data.random.nextInt(NUMBER_OF_KEYS));
+        }
     }
 
 
@@ -135,7 +236,8 @@ public class ConcurrentMapPerformanceTest {
                 //.addProfiler(WinPerfAsmProfiler.class)
                 .build();
 
-        new Runner(opt).run();
+        // map operations are declared by the @OperationsPerInvocation of each benchmark
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
     }
 
 
@@ -143,12 +245,17 @@ public class ConcurrentMapPerformanceTest {
     public static class Data {
 
         UUID[] keys = new UUID[NUMBER_OF_KEYS];
+        long[] msbs = new long[NUMBER_OF_KEYS];
+        long[] lsbs = new long[NUMBER_OF_KEYS];
         Random random = new Random();
-        AtomicLong sum = new AtomicLong(0);
+        ShardedCounter sum = new ShardedCounter();
 
         Map<UUID, Integer> synchronizedMap = Collections.synchronizedMap(new WeakHashMap<>());
         Map<UUID, Integer> concurrentHashMap = new ConcurrentHashMap<>();
         Map<UUID, Integer> concurrentReferenceHashMap = new ConcurrentReferenceHashMap<>();
+        UuidIntHashMap uuidIntHashMap = new UuidIntHashMap();
+        // slots are in the direct memory, so the GC doesn't see them
+        Map<UUID, Integer> offHeapUuidIntHashMap = new OffHeapUuidIntHashMap(NUMBER_OF_KEYS);
 
         @Setup
         public void setUp() {
@@ -157,12 +264,16 @@ public class ConcurrentMapPerformanceTest {
                 keys[i] = UUID.randomUUID();
                 keys[i + 1] = keys[i];
             }
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                msbs[i] = keys[i].getMostSignificantBits();
+                lsbs[i] = keys[i].getLeastSignificantBits();
+            }
             System.out.println("setup done");
         }
 
         @TearDown
         public void tearDown() {
-            System.out.println("teardown: " + sum.get());
+            System.out.println("teardown: " + sum.sum());
         }
     }
 }
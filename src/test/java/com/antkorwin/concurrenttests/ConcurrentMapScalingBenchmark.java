@@ -0,0 +1,158 @@
+package com.antkorwin.concurrenttests;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Scaling of maps by the number of threads, the size of the key space
+ * and the access distribution.
+ *
+ * JMH can't take the number of threads as a @Param, so the launcher
+ * runs the suite for each number of threads (1, 2, 4 .. number of cores)
+ * and writes throughput-vs-threads curves to target/jmh/scaling.csv
+ *
+ * @author Korovin Anatoliy
+ */
+public class ConcurrentMapScalingBenchmark {
+
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+    private static final BiFunction<UUID, Integer, Integer> COMPUTE_FUNC = (k, v) -> (v == null) ? 1 : v;
+
+    @Benchmark
+    public Integer compute(Data data, ThreadKeys threadKeys) {
+        return data.map.compute(data.keys[threadKeys.next()], COMPUTE_FUNC);
+    }
+
+    @Benchmark
+    public Integer get(Data data, ThreadKeys threadKeys) {
+        return data.map.get(data.keys[threadKeys.next()]);
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Map<String, SortedMap<Integer, Double>> curves = new TreeMap<>();
+
+        for (int threads : threadCounts()) {
+            Options opt = new OptionsBuilder()
+                    .include(this.getClass().getName() + ".*")
+                    .mode(Mode.Throughput)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .warmupTime(TimeValue.seconds(1))
+                    .warmupIterations(1)
+                    .measurementTime(TimeValue.seconds(1))
+                    .measurementIterations(3)
+                    .threads(threads)
+                    .forks(1)
+                    .shouldFailOnError(true)
+                    .shouldDoGC(true)
+                    .jvmArgs("-Xms7024m", "-Xmx7024m")
+                    .build();
+
+            Collection<RunResult> results =
+                    ProfiledBenchmarkRunner.run(opt, getClass().getSimpleName() + "-" + threads, 1);
+
+            for (RunResult result : results) {
+                String curve = result.getParams().getBenchmark() + "," +
+                               result.getParams().getParam("implementation") + "," +
+                               result.getParams().getParam("numberOfKeys") + "," +
+                               result.getParams().getParam("distribution");
+                curves.computeIfAbsent(curve, k -> new TreeMap<>())
+                      .put(threads, result.getPrimaryResult().getScore());
+            }
+        }
+
+        writeCurves(curves, ProfiledBenchmarkRunner.RESULTS_DIR.resolve("scaling.csv"));
+    }
+
+    private List<Integer> threadCounts() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(cores);
+        return counts;
+    }
+
+    private void writeCurves(Map<String, SortedMap<Integer, Double>> curves, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("benchmark,implementation,numberOfKeys,distribution,threads,opsPerUs");
+            curves.forEach((curve, points) -> points.forEach((threads, score) -> {
+                out.println(curve + "," + threads + "," + String.format(Locale.ROOT, "%.3f", score));
+            }));
+        }
+        curves.forEach((curve, points) -> System.out.println(curve + " -> " + points));
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"SYNCHRONIZED_WEAK_HASH_MAP",
+                "CONCURRENT_HASH_MAP",
+                "CONCURRENT_REFERENCE_HASH_MAP",
+                "SPRING_CONCURRENT_REFERENCE_HASH_MAP",
+                "LOCK_FREE_REFERENCE_HASH_MAP",
+                "OFF_HEAP_UUID_INT_HASH_MAP"})
+        MapImplementation implementation;
+
+        @Param({"1000", "10000", "100000", "1000000", "10000000"})
+        int numberOfKeys;
+
+        @Param({"UNIFORM", "ZIPFIAN", "SEQUENTIAL"})
+        KeyDistribution distribution;
+
+        UUID[] keys;
+        Map<UUID, Integer> map;
+
+        @Setup
+        public void setUp() {
+            keys = new UUID[numberOfKeys];
+            map = implementation.create(numberOfKeys);
+            for (int i = 0; i < numberOfKeys; i++) {
+                keys[i] = UUID.randomUUID();
+                map.put(keys[i], i);
+            }
+        }
+    }
+
+    /**
+     * Each thread has its own sequence of keys.
+     */
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        int[] sequence;
+        int position;
+
+        @Setup
+        public void setUp(Data data, ThreadParams threadParams) {
+            sequence = data.distribution.sequence(data.numberOfKeys,
+                                                  SEQUENCE_LENGTH,
+                                                  threadParams.getThreadIndex());
+        }
+
+        int next() {
+            int index = sequence[position];
+            position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            return index;
+        }
+    }
+}
@@ -8,11 +8,14 @@ import org.junit.Test;
 import org.springframework.util.ConcurrentReferenceHashMap;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
@@ -85,11 +88,56 @@ public class ConcurrentTest {
                   .isEqualTo(ITERATION_NUMBER);
     }
 
+    @Test
+    public void testWithShardedCounter() {
+        // Arrange
+        ShardedCounter counter = new ShardedCounter();
+
+        // Act
+        IntStream.range(0, ITERATION_NUMBER)
+                 .boxed()
+                 .parallel()
+                 .forEach(i -> counter.increment());
+
+        // Assert
+        Assertions.assertThat(counter.sum())
+                  .isEqualTo(ITERATION_NUMBER);
+    }
+
     @Test(timeout = 10000)
-    public void testWithDeadlock() {
+    public void testWithDeadlock() throws Exception {
         // Arrange
+        MultiKeyLock<UUID> locks = new MultiKeyLock<>();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        Map<UUID, NonAtomicInt> accounts = new HashMap<>();
+        accounts.put(first, new NonAtomicInt(ITERATION_NUMBER));
+        accounts.put(second, new NonAtomicInt(ITERATION_NUMBER));
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
         // Act
+        // nested synchronized blocks on mutexes of these keys deadlock
+        // when two transfers take them in the opposite order
+        List<Future<?>> transfers = new ArrayList<>();
+        transfers.add(executorService.submit(() -> transfer(locks, accounts, first, second)));
+        transfers.add(executorService.submit(() -> transfer(locks, accounts, second, first)));
+        for (Future<?> transfer : transfers) {
+            transfer.get();
+        }
+        executorService.shutdown();
+
         // Asserts
+        Assertions.assertThat(accounts.get(first).getValue() + accounts.get(second).getValue())
+                  .isEqualTo(2 * ITERATION_NUMBER);
+    }
+
+    private void transfer(MultiKeyLock<UUID> locks, Map<UUID, NonAtomicInt> accounts, UUID from, UUID to) {
+        for (int i = 0; i < ITERATION_NUMBER; i++) {
+            try (MultiKeyLock<UUID>.Permit permit = locks.lock(from, to)) {
+                accounts.get(from).decrement();
+                accounts.get(to).increment();
+            }
+        }
     }
 
 
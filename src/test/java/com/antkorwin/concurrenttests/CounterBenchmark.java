@@ -0,0 +1,120 @@
+package com.antkorwin.concurrenttests;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared counter under contention: the synchronized block
+ * (as in ConcurrentTest.testWithSync), AtomicInteger, LongAdder
+ * and ShardedCounter, from 1 to 64 threads.
+ *
+ * Throughput-vs-threads curves are written to target/jmh/counters.csv
+ *
+ * @author Korovin Anatoliy
+ */
+public class CounterBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Benchmark
+    public int increment_synchronized(Data data) {
+        synchronized (data.monitor) {
+            return ++data.plainCounter;
+        }
+    }
+
+    @Benchmark
+    public int increment_AtomicInteger(Data data) {
+        return data.atomicInteger.incrementAndGet();
+    }
+
+    @Benchmark
+    public void increment_LongAdder(Data data) {
+        data.longAdder.increment();
+    }
+
+    @Benchmark
+    public void increment_ShardedCounter(Data data) {
+        data.shardedCounter.increment();
+    }
+
+    @Benchmark
+    public long read_LongAdder(Data data) {
+        return data.longAdder.sum();
+    }
+
+    @Benchmark
+    public long read_ShardedCounter(Data data) {
+        return data.shardedCounter.approximateSum();
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Map<String, SortedMap<Integer, Double>> curves = new TreeMap<>();
+
+        for (int threads : THREADS) {
+            Options opt = new OptionsBuilder()
+                    .include(this.getClass().getName() + ".*")
+                    .mode(Mode.Throughput)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .warmupTime(TimeValue.seconds(1))
+                    .warmupIterations(1)
+                    .measurementTime(TimeValue.seconds(2))
+                    .measurementIterations(3)
+                    .threads(threads)
+                    .forks(1)
+                    .shouldFailOnError(true)
+                    .shouldDoGC(true)
+                    .jvmArgs("-Xms1024m", "-Xmx1024m")
+                    .build();
+
+            Collection<RunResult> results =
+                    ProfiledBenchmarkRunner.run(opt, getClass().getSimpleName() + "-" + threads, 1);
+
+            for (RunResult result : results) {
+                curves.computeIfAbsent(result.getParams().getBenchmark(), k -> new TreeMap<>())
+                      .put(threads, result.getPrimaryResult().getScore());
+            }
+        }
+
+        writeCurves(curves, ProfiledBenchmarkRunner.RESULTS_DIR.resolve("counters.csv"));
+    }
+
+    private void writeCurves(Map<String, SortedMap<Integer, Double>> curves, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("benchmark,threads,opsPerUs");
+            curves.forEach((curve, points) -> points.forEach((threads, score) -> {
+                out.println(curve + "," + threads + "," + String.format(Locale.ROOT, "%.3f", score));
+            }));
+        }
+        curves.forEach((curve, points) -> System.out.println(curve + " -> " + points));
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        final Object monitor = new Object();
+        int plainCounter;
+        AtomicInteger atomicInteger = new AtomicInteger();
+        LongAdder longAdder = new LongAdder();
+        ShardedCounter shardedCounter = new ShardedCounter();
+    }
+}
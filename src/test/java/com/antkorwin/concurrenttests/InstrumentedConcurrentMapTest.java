@@ -0,0 +1,94 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class InstrumentedConcurrentMapTest {
+
+    private static final int ITERATION_NUMBER = 10000;
+
+    @Test
+    public void testCountsOperations() {
+        // Arrange
+        InstrumentedConcurrentMap<UUID, Integer> map = new InstrumentedConcurrentMap<>(new ConcurrentHashMap<>());
+        UUID key = UUID.randomUUID();
+
+        // Act
+        IntStream.range(0, ITERATION_NUMBER)
+                 .parallel()
+                 .forEach(i -> map.compute(key, (k, v) -> (v == null) ? 1 : v + 1));
+        map.get(key);
+
+        // Asserts
+        MapStatistics statistics = map.snapshotAndReset();
+        Assertions.assertThat(map.get(key)).isEqualTo(ITERATION_NUMBER);
+        Assertions.assertThat(statistics.getLatencies().get(InstrumentedConcurrentMap.Operation.COMPUTE).getCount())
+                  .isEqualTo(ITERATION_NUMBER);
+        Assertions.assertThat(statistics.getLatencies().get(InstrumentedConcurrentMap.Operation.GET).getCount())
+                  .isEqualTo(1);
+        Assertions.assertThat(statistics.getSize()).isEqualTo(1);
+
+        Assertions.assertThat(map.snapshot().getLatencies().get(InstrumentedConcurrentMap.Operation.COMPUTE).getCount())
+                  .isEqualTo(0);
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // Act
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        // Asserts
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assertions.assertThat(snapshot.getCount()).isEqualTo(1000);
+        Assertions.assertThat(snapshot.getValueAtPercentile(50)).isBetween(500L, 563L);
+        Assertions.assertThat(snapshot.getValueAtPercentile(99)).isBetween(990L, 1114L);
+        Assertions.assertThat(snapshot.getMax()).isBetween(1000L, 1023L);
+    }
+
+    @Test
+    public void testStripedHistogramCountsAllThreads() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram(8);
+
+        // Act
+        IntStream.range(0, ITERATION_NUMBER)
+                 .parallel()
+                 .forEach(i -> histogram.record(100));
+
+        // Asserts
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        Assertions.assertThat(snapshot.getCount()).isEqualTo(ITERATION_NUMBER);
+        Assertions.assertThat(snapshot.getMax()).isBetween(100L, 103L);
+        Assertions.assertThat(histogram.snapshot().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testComputeInsideOfFunction() {
+        // Arrange
+        InstrumentedConcurrentMap<UUID, Integer> map = new InstrumentedConcurrentMap<>(new ConcurrentHashMap<>());
+        InstrumentedConcurrentMap<UUID, Integer> other = new InstrumentedConcurrentMap<>(new ConcurrentHashMap<>());
+        UUID key = UUID.randomUUID();
+
+        // Act
+        Integer value = map.computeIfAbsent(key, k -> other.merge(k, 1, Integer::sum) + 1);
+        map.merge(key, 10, Integer::sum);
+
+        // Asserts
+        Assertions.assertThat(value).isEqualTo(2);
+        Assertions.assertThat(map.get(key)).isEqualTo(12);
+        Assertions.assertThat(other.get(key)).isEqualTo(1);
+        Assertions.assertThat(map.snapshot().getRetries()).isEqualTo(0);
+    }
+}
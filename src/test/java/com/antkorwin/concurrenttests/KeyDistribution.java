@@ -0,0 +1,94 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Access patterns over a key space of the benchmarks.
+ * A sequence of key indexes is generated before the measurement,
+ * so the generator doesn't add its cost to the measured operation.
+ *
+ * @author Korovin Anatoliy
+ */
+enum KeyDistribution {
+
+    /**
+     * Each key has the same probability.
+     */
+    UNIFORM {
+        @Override
+        int[] sequence(int numberOfKeys, int length, long seed) {
+            Random random = new Random(seed);
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = random.nextInt(numberOfKeys);
+            }
+            return sequence;
+        }
+    },
+
+    /**
+     * A few hot keys take the most of accesses (zipfian with theta = 0.99, as in YCSB).
+     */
+    ZIPFIAN {
+        @Override
+        int[] sequence(int numberOfKeys, int length, long seed) {
+            Random random = new Random(seed);
+            double zetaN = zeta(numberOfKeys);
+            double zeta2 = zeta(2);
+            double alpha = 1.0 / (1.0 - ZIPFIAN_THETA);
+            double eta = (1 - Math.pow(2.0 / numberOfKeys, 1 - ZIPFIAN_THETA)) / (1 - zeta2 / zetaN);
+
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                double u = random.nextDouble();
+                double uz = u * zetaN;
+                int index;
+                if (uz < 1.0) {
+                    index = 0;
+                } else if (uz < 1.0 + Math.pow(0.5, ZIPFIAN_THETA)) {
+                    index = 1;
+                } else {
+                    index = (int) (numberOfKeys * Math.pow(eta * u - eta + 1, alpha));
+                }
+                sequence[i] = Math.min(index, numberOfKeys - 1);
+            }
+            return sequence;
+        }
+    },
+
+    /**
+     * Keys one by one from a random position.
+     */
+    SEQUENTIAL {
+        @Override
+        int[] sequence(int numberOfKeys, int length, long seed) {
+            int start = new Random(seed).nextInt(numberOfKeys);
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = (start + i) % numberOfKeys;
+            }
+            return sequence;
+        }
+    };
+
+    static final double ZIPFIAN_THETA = 0.99;
+
+    private static final Map<Integer, Double> ZETA_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * @return indexes of keys in the range [0, numberOfKeys)
+     */
+    abstract int[] sequence(int numberOfKeys, int length, long seed);
+
+    private static double zeta(int n) {
+        return ZETA_CACHE.computeIfAbsent(n, key -> {
+            double sum = 0;
+            for (int i = 1; i <= key; i++) {
+                sum += 1 / Math.pow(i, ZIPFIAN_THETA);
+            }
+            return sum;
+        });
+    }
+}
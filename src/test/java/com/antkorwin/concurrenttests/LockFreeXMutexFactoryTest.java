@@ -0,0 +1,140 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutex;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * The same scenarios as in the TroubleTest, but for the LockFreeXMutexFactory
+ *
+ * @author Korovin Anatoliy
+ */
+public class LockFreeXMutexFactoryTest {
+
+    private static final int TIMEOUT_FOR_PREVENTION_OF_DEADLOCK = 30000;
+    private static final int NUMBER_OF_MUTEXES = 100000;
+    private static final int NUMBER_OF_ITERATIONS = NUMBER_OF_MUTEXES * 100;
+    private static final String ID_STRING = "c117c526-606e-41b6-8197-1a6ba779f69b";
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testConcurrency() {
+        // Arrange
+        LockFreeXMutexFactory<UUID> mutexFactory = new LockFreeXMutexFactory<>();
+
+        List<UUID> ids = IntStream.range(0, NUMBER_OF_MUTEXES)
+                                  .boxed()
+                                  .map(i -> UUID.randomUUID())
+                                  .collect(toList());
+
+        Set<XMutex<UUID>> results = createConcurrentSet();
+
+        // Act
+        IntStream.range(0, NUMBER_OF_ITERATIONS)
+                 .boxed()
+                 .parallel()
+                 .forEach(i -> results.add(mutexFactory.getMutex(ids.get(i % NUMBER_OF_MUTEXES))));
+
+        // Asserts
+        Assertions.assertThat(results).hasSize(NUMBER_OF_MUTEXES);
+        Assertions.assertThat(mutexFactory.size()).isEqualTo(NUMBER_OF_MUTEXES);
+    }
+
+    @Test
+    public void testALotOfHashCodes() {
+        // Arrange
+        LockFreeXMutexFactory<UUID> mutexFactory = new LockFreeXMutexFactory<>();
+        XMutex<UUID> firstMutex = mutexFactory.getMutex(UUID.fromString(ID_STRING));
+
+        // Act
+        for (int i = 0; i < NUMBER_OF_ITERATIONS; i++) {
+            XMutex<UUID> mutex = mutexFactory.getMutex(UUID.fromString(ID_STRING));
+            // Assert
+            Assertions.assertThat(mutex == firstMutex).isTrue();
+        }
+    }
+
+    @Test
+    public void testPurgeUnreferencedMutexes() {
+        // Arrange
+        LockFreeXMutexFactory<UUID> mutexFactory = new LockFreeXMutexFactory<>();
+        UUID keptKey = UUID.randomUUID();
+        XMutex<UUID> keptMutex = mutexFactory.getMutex(keptKey);
+
+        // Act
+        IntStream.range(0, 1000).forEach(i -> mutexFactory.getMutex(UUID.randomUUID()));
+
+        // Asserts
+        await().atMost(10, TimeUnit.SECONDS)
+               .until(() -> {
+                   System.gc();
+                   return mutexFactory.size();
+               }, equalTo(1L));
+
+        Assertions.assertThat(mutexFactory.getMutex(keptKey) == keptMutex).isTrue();
+    }
+
+    @Test
+    public void testBackgroundPurgeWithoutWrites() {
+        // Arrange
+        LockFreeXMutexFactory<UUID> mutexFactory =
+                new LockFreeXMutexFactory<>(16,
+                                            LockFreeReferenceHashMap.ReferenceType.WEAK,
+                                            LockFreeReferenceHashMap.PurgePolicy.BACKGROUND);
+        UUID keptKey = UUID.randomUUID();
+        XMutex<UUID> keptMutex = mutexFactory.getMutex(keptKey);
+
+        // Act
+        IntStream.range(0, 1000).forEach(i -> mutexFactory.getMutex(UUID.randomUUID()));
+
+        // Asserts
+        // the size of the map doesn't purge, only the background thread does
+        await().atMost(10, TimeUnit.SECONDS)
+               .until(() -> {
+                   System.gc();
+                   return mutexFactory.map.size();
+               }, equalTo(1));
+
+        Assertions.assertThat(mutexFactory.getMutex(keptKey) == keptMutex).isTrue();
+    }
+
+    @Test
+    public void testAmortizedPurgeByWrites() {
+        // Arrange
+        LockFreeXMutexFactory<UUID> mutexFactory =
+                new LockFreeXMutexFactory<>(16,
+                                            LockFreeReferenceHashMap.ReferenceType.WEAK,
+                                            LockFreeReferenceHashMap.PurgePolicy.AMORTIZED);
+        UUID keptKey = UUID.randomUUID();
+        XMutex<UUID> keptMutex = mutexFactory.getMutex(keptKey);
+        IntStream.range(0, 1000).forEach(i -> mutexFactory.getMutex(UUID.randomUUID()));
+
+        // Act
+        await().atMost(10, TimeUnit.SECONDS)
+               .until(() -> {
+                   System.gc();
+                   // each write purges a few entries
+                   IntStream.range(0, 100).forEach(i -> mutexFactory.map.remove(UUID.randomUUID()));
+                   return mutexFactory.map.getPurgedCount();
+               }, equalTo(1000L));
+
+        // Asserts
+        Assertions.assertThat(mutexFactory.map.size()).isEqualTo(1);
+        Assertions.assertThat(mutexFactory.getMutex(keptKey) == keptMutex).isTrue();
+    }
+
+    private <TypeT> Set<TypeT> createConcurrentSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<TypeT, Boolean>());
+    }
+}
@@ -0,0 +1,340 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutexFactory;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Heap retained by each map (and mutex factory) per entry, at sizes
+ * from -Dfootprint.sizes (1K..1M by default, up to 10M in the footprint maven profile).
+ *
+ * The retained heap is the difference of class histograms (GC.class_histogram,
+ * it runs a full GC) before and after populating, so it is exact for live objects.
+ * Keys and values are created before the first histogram and shared by all maps,
+ * they are not counted (a UUID key takes 32 bytes and an Integer value 16 bytes more);
+ * mutexes are counted, they are created by the factory.
+ * Small maps are populated in copies, at least a million entries in total,
+ * so the fixed cost of a map is spread over its entries.
+ * Without the diagnostic command (not a HotSpot JVM) it is the difference of the used heap.
+ *
+ * Results are printed as a table and written to target/footprint/footprint.json,
+ * with -Dfootprint.baseline=[json of another run] the table shows the change against it.
+ * It is not run by the default test phase, run it by the footprint maven profile
+ * or by -Dtest=MapFootprintBenchmark
+ *
+ * @author Korovin Anatoliy
+ */
+public class MapFootprintBenchmark {
+
+    private static final String SIZES_PROPERTY = "footprint.sizes";
+    private static final String DEFAULT_SIZES = "1000,10000,100000,1000000";
+    private static final String BASELINE_PROPERTY = "footprint.baseline";
+    private static final Path RESULTS_DIR = Paths.get("target", "footprint");
+
+    private static final int MIN_ENTRIES_PER_MEASUREMENT = 1_000_000;
+    private static final int TOP_CLASSES = 3;
+
+    private static final Pattern HISTOGRAM_LINE = Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+)");
+    private static final Pattern RESULT_LINE = Pattern.compile(
+            "\"subject\": \"(\\w+)\", \"size\": (\\d+), .*\"bytesPerEntry\": ([0-9.]+)");
+
+    @Test
+    public void launchFootprint() throws IOException {
+        int[] sizes = Arrays.stream(System.getProperty(SIZES_PROPERTY, DEFAULT_SIZES).split(","))
+                            .map(String::trim)
+                            .mapToInt(Integer::parseInt)
+                            .toArray();
+        int maxSize = Arrays.stream(sizes).max().orElse(0);
+
+        UUID[] keys = new UUID[maxSize];
+        Integer[] values = new Integer[maxSize];
+        for (int i = 0; i < maxSize; i++) {
+            keys[i] = UUID.randomUUID();
+            values[i] = i;
+        }
+
+        List<Footprint> footprints = new ArrayList<>();
+        for (Subject subject : subjects(keys, values)) {
+            for (int size : sizes) {
+                Footprint footprint = measure(subject, size);
+                footprints.add(footprint);
+                System.out.println(footprint.toRow(null));
+            }
+        }
+
+        Files.createDirectories(RESULTS_DIR);
+        writeJson(footprints, RESULTS_DIR.resolve("footprint.json"));
+        String table = table(footprints, readBaseline());
+        Files.write(RESULTS_DIR.resolve("footprint.txt"), table.getBytes(StandardCharsets.UTF_8));
+        System.out.println(table);
+
+        // keys and values must live until the last measurement
+        Reference.reachabilityFence(keys);
+        Reference.reachabilityFence(values);
+    }
+
+    private List<Subject> subjects(UUID[] keys, Integer[] values) {
+        List<Subject> subjects = new ArrayList<>();
+        for (MapImplementation implementation : MapImplementation.values()) {
+            subjects.add(new Subject(implementation.name(), population -> {
+                Map<UUID, Integer> map = implementation.create(population.size);
+                for (int i = 0; i < population.size; i++) {
+                    map.put(keys[i], values[i]);
+                }
+                return map;
+            }));
+        }
+        subjects.add(new Subject("UUID_INT_HASH_MAP", population -> {
+            UuidIntHashMap map = new UuidIntHashMap();
+            for (int i = 0; i < population.size; i++) {
+                map.put(keys[i].getMostSignificantBits(), keys[i].getLeastSignificantBits(), i);
+            }
+            return map;
+        }));
+        subjects.add(new Subject("XMUTEX_FACTORY", population -> {
+            XMutexFactory<UUID> factory = new XMutexFactory<>();
+            for (int i = 0; i < population.size; i++) {
+                population.hold(factory.getMutex(keys[i]));
+            }
+            return factory;
+        }));
+        subjects.add(new Subject("LOCK_FREE_XMUTEX_FACTORY", population -> {
+            LockFreeXMutexFactory<UUID> factory = new LockFreeXMutexFactory<>();
+            for (int i = 0; i < population.size; i++) {
+                population.hold(factory.getMutex(keys[i]));
+            }
+            return factory;
+        }));
+        return subjects;
+    }
+
+    private Footprint measure(Subject subject, int size) {
+        int copies = Math.max(1, MIN_ENTRIES_PER_MEASUREMENT / size);
+        // everything which the measurement holds is allocated before the first histogram
+        Object[] populated = new Object[copies];
+        Population population = new Population(size, copies);
+
+        Map<String, Long> before = histogram();
+        long heapBefore = (before == null) ? usedHeapAfterGc() : 0;
+
+        for (int i = 0; i < copies; i++) {
+            populated[i] = subject.populate.apply(population);
+        }
+
+        Map<String, Long> after = histogram();
+        long entries = (long) size * copies;
+        double offHeapBytesPerEntry = offHeapBytes(populated) / (double) entries;
+        Footprint footprint;
+        if (before != null && after != null) {
+            Map<String, Long> delta = new HashMap<>(after);
+            before.forEach((type, bytes) -> delta.merge(type, -bytes, Long::sum));
+            long bytes = delta.values().stream().mapToLong(Long::longValue).sum();
+            Map<String, Double> top = delta.entrySet()
+                                           .stream()
+                                           .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                                           .limit(TOP_CLASSES)
+                                           .collect(Collectors.toMap(Map.Entry::getKey,
+                                                                     e -> (double) e.getValue() / entries,
+                                                                     (a, b) -> a,
+                                                                     LinkedHashMap::new));
+            footprint = new Footprint(subject.name, size, copies, "histogram",
+                                      bytes, entries, offHeapBytesPerEntry, top);
+        } else {
+            long bytes = usedHeapAfterGc() - heapBefore;
+            footprint = new Footprint(subject.name, size, copies, "heap",
+                                      bytes, entries, offHeapBytesPerEntry, new HashMap<>());
+        }
+
+        // the maps and mutexes are reachable until the second histogram
+        Reference.reachabilityFence(populated);
+        Reference.reachabilityFence(population);
+        return footprint;
+    }
+
+    private long offHeapBytes(Object[] populated) {
+        long bytes = 0;
+        for (Object object : populated) {
+            if (object instanceof OffHeapUuidIntHashMap) {
+                bytes += ((OffHeapUuidIntHashMap) object).memoryUsage();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return bytes of live objects by class, or null if the diagnostic command is not available
+     */
+    private Map<String, Long> histogram() {
+        String text;
+        try {
+            text = (String) ManagementFactory.getPlatformMBeanServer()
+                                             .invoke(new ObjectName("com.sun.management:type=DiagnosticCommand"),
+                                                     "gcClassHistogram",
+                                                     new Object[]{new String[0]},
+                                                     new String[]{String[].class.getName()});
+        } catch (JMException e) {
+            return null;
+        }
+        Map<String, Long> histogram = new HashMap<>();
+        for (String line : text.split("\n")) {
+            Matcher matcher = HISTOGRAM_LINE.matcher(line);
+            if (matcher.find()) {
+                histogram.merge(matcher.group(3), Long.parseLong(matcher.group(2)), Long::sum);
+            }
+        }
+        return histogram;
+    }
+
+    private long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void writeJson(List<Footprint> footprints, Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.println("  \"jvm\": \"" + RegressionTracker.jvm() + "\",");
+            out.println("  \"commit\": \"" + RegressionTracker.commit() + "\",");
+            out.println("  \"results\": [");
+            for (int i = 0; i < footprints.size(); i++) {
+                out.println("    " + footprints.get(i).toJson() + (i < footprints.size() - 1 ? "," : ""));
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+    }
+
+    /**
+     * @return bytes per entry by subject@size of the baseline run, empty without the baseline
+     */
+    private Map<String, Double> readBaseline() throws IOException {
+        Map<String, Double> baseline = new HashMap<>();
+        String file = System.getProperty(BASELINE_PROPERTY);
+        if (file == null) {
+            return baseline;
+        }
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            Matcher matcher = RESULT_LINE.matcher(line);
+            if (matcher.find()) {
+                baseline.put(matcher.group(1) + "@" + matcher.group(2), Double.parseDouble(matcher.group(3)));
+            }
+        }
+        return baseline;
+    }
+
+    private String table(List<Footprint> footprints, Map<String, Double> baseline) {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(Locale.ROOT, "%-36s %10s %12s %12s %10s  %s%n",
+                                   "subject", "size", "bytes/entry", "off-heap", "baseline", "top classes (bytes/entry)"));
+        for (Footprint footprint : footprints) {
+            table.append(footprint.toRow(baseline.get(footprint.subject + "@" + footprint.size)))
+                 .append(System.lineSeparator());
+        }
+        return table.toString();
+    }
+
+
+    private static final class Subject {
+
+        private final String name;
+        private final Function<Population, Object> populate;
+
+        Subject(String name, Function<Population, Object> populate) {
+            this.name = name;
+            this.populate = populate;
+        }
+    }
+
+    /**
+     * Size of one copy and strong references to mutexes of all copies,
+     * mutex factories keep them weakly.
+     */
+    private static final class Population {
+
+        private final int size;
+        private final Object[] mutexes;
+        private int held;
+
+        Population(int size, int copies) {
+            this.size = size;
+            this.mutexes = new Object[size * copies];
+        }
+
+        void hold(Object mutex) {
+            mutexes[held++] = mutex;
+        }
+    }
+
+    private static final class Footprint {
+
+        private final String subject;
+        private final int size;
+        private final int copies;
+        private final String method;
+        private final long bytes;
+        private final double bytesPerEntry;
+        private final double offHeapBytesPerEntry;
+        private final Map<String, Double> top;
+
+        Footprint(String subject, int size, int copies, String method,
+                  long bytes, long entries, double offHeapBytesPerEntry, Map<String, Double> top) {
+            this.subject = subject;
+            this.size = size;
+            this.copies = copies;
+            this.method = method;
+            this.bytes = bytes;
+            this.bytesPerEntry = (double) bytes / entries;
+            this.offHeapBytesPerEntry = offHeapBytesPerEntry;
+            this.top = top;
+        }
+
+        String toRow(Double baseline) {
+            String change = (baseline == null)
+                            ? "-"
+                            : String.format(Locale.ROOT, "%+.1f%%", (bytesPerEntry - baseline) / baseline * 100);
+            String classes = top.entrySet()
+                                .stream()
+                                .map(e -> String.format(Locale.ROOT, "%s=%.1f", e.getKey(), e.getValue()))
+                                .collect(Collectors.joining(", "));
+            return String.format(Locale.ROOT, "%-36s %10d %12.1f %12.1f %10s  %s",
+                                 subject, size, bytesPerEntry, offHeapBytesPerEntry, change, classes);
+        }
+
+        String toJson() {
+            String classes = top.entrySet()
+                                .stream()
+                                .map(e -> String.format(Locale.ROOT, "\"%s\": %.3f", e.getKey(), e.getValue()))
+                                .collect(Collectors.joining(", "));
+            return String.format(Locale.ROOT,
+                                 "{\"subject\": \"%s\", \"size\": %d, \"copies\": %d, \"method\": \"%s\", "
+                                 + "\"bytes\": %d, \"bytesPerEntry\": %.3f, \"offHeapBytesPerEntry\": %.3f, "
+                                 + "\"topClasses\": {%s}}",
+                                 subject, size, copies, method, bytes, bytesPerEntry, offHeapBytesPerEntry, classes);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps under test, to use them as a @Param of benchmarks.
+ *
+ * @author Korovin Anatoliy
+ */
+enum MapImplementation {
+
+    SYNCHRONIZED_WEAK_HASH_MAP {
+        @Override
+        Map<UUID, Integer> create(int expectedSize) {
+            return Collections.synchronizedMap(new WeakHashMap<>(expectedSize));
+        }
+    },
+
+    CONCURRENT_HASH_MAP {
+        @Override
+        Map<UUID, Integer> create(int expectedSize) {
+            return new ConcurrentHashMap<>(expectedSize);
+        }
+    },
+
+    /**
+     * ConcurrentReferenceHashMap from the xsync
+     */
+    CONCURRENT_REFERENCE_HASH_MAP {
+        @Override
+        Map<UUID, Integer> create(int expectedSize) {
+            return new ConcurrentReferenceHashMap<>(expectedSize);
+        }
+    },
+
+    /**
+     * ConcurrentReferenceHashMap from the spring-core
+     */
+    SPRING_CONCURRENT_REFERENCE_HASH_MAP {
+        @Override
+        Map<UUID, Integer> create(int expectedSize) {
+            return new org.springframework.util.ConcurrentReferenceHashMap<>(expectedSize);
+        }
+    },
+
+    /**
+     * Soft values as in the default ConcurrentReferenceHashMap, weak values
+     * of the benchmarks are cleared by the GC between iterations
+     */
+    LOCK_FREE_REFERENCE_HASH_MAP {
+        @Override
+        Map<UUID, Integer> create(int expectedSize) {
+            return new LockFreeReferenceHashMap<>(expectedSize, LockFreeReferenceHashMap.ReferenceType.SOFT);
+        }
+    },
+
+    OFF_HEAP_UUID_INT_HASH_MAP {
+        @Override
+        Map<UUID, Integer> create(int expectedSize) {
+            return new OffHeapUuidIntHashMap(expectedSize);
+        }
+    },
+
+    /**
+     * Bounded by the expected size, entries over it are evicted
+     */
+    BOUNDED_CONCURRENT_CACHE {
+        @Override
+        Map<UUID, Integer> create(int expectedSize) {
+            return new BoundedConcurrentCache<>(expectedSize);
+        }
+    },
+
+    ADAPTIVE_CONCURRENT_MAP {
+        @Override
+        Map<UUID, Integer> create(int expectedSize) {
+            return new AdaptiveConcurrentMap<>();
+        }
+    };
+
+    abstract Map<UUID, Integer> create(int expectedSize);
+}
@@ -0,0 +1,287 @@
+package com.antkorwin.concurrenttests;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.IterationType;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Mixed read/write workload: each thread does 95% get, 4% computeIfAbsent
+ * and 1% remove on the same map, the operation is taken from a sequence
+ * which is shuffled before the measurement, as the keys are.
+ * Latency of each operation of the mix is recorded in its LatencyHistogram,
+ * the sample of JMH is the latency of the whole workload.
+ *
+ * With -Dbenchmark.threadGroups=computeIfAbsent,get,remove the benchmark
+ * runs separate groups of readers, writers and removers instead, with
+ * the given ratio of threads (JMH orders the group members by the name
+ * of the method), so percentiles of each operation are measured apart.
+ * Latency percentiles are written to target/jmh/mixed-workload.csv
+ *
+ * @author Korovin Anatoliy
+ */
+public class MixedWorkloadBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 10_000;
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+    private static final int THREADS = 8;
+    // percents of get, computeIfAbsent and remove in the mixed workload
+    private static final int GET_PERCENT = 95;
+    private static final int COMPUTE_IF_ABSENT_PERCENT = 4;
+    private static final byte GET = 0;
+    private static final byte COMPUTE_IF_ABSENT = 1;
+    private static final byte REMOVE = 2;
+    private static final String THREAD_GROUPS_PROPERTY = "benchmark.threadGroups";
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+    // names of the operations GET, COMPUTE_IF_ABSENT and REMOVE
+    private static final String[] OPERATION_NAMES = {"get", "computeIfAbsent", "remove"};
+    private static final Set<String> OPERATIONS = new HashSet<>(Arrays.asList(OPERATION_NAMES));
+    private static final Path RESULTS_FILE = ProfiledBenchmarkRunner.RESULTS_DIR.resolve("mixed-workload.csv");
+
+    private static final Function<UUID, Integer> MAPPING_FUNC = k -> 1;
+
+    @Benchmark
+    public Integer mixed(SharedData data, ThreadKeys threadKeys) {
+        UUID key = data.keys[threadKeys.next()];
+        byte operation = threadKeys.nextOperation();
+        long start = System.nanoTime();
+        Integer result;
+        switch (operation) {
+            case GET:
+                result = data.map.get(key);
+                break;
+            case COMPUTE_IF_ABSENT:
+                result = data.map.computeIfAbsent(key, MAPPING_FUNC);
+                break;
+            default:
+                result = data.map.remove(key);
+        }
+        data.latencies[operation].record(System.nanoTime() - start);
+        return result;
+    }
+
+    @Benchmark
+    @Group("separate")
+    @GroupThreads(1)
+    public Integer get(GroupData data, ThreadKeys threadKeys) {
+        return data.map.get(data.keys[threadKeys.next()]);
+    }
+
+    @Benchmark
+    @Group("separate")
+    @GroupThreads(1)
+    public Integer computeIfAbsent(GroupData data, ThreadKeys threadKeys) {
+        return data.map.computeIfAbsent(data.keys[threadKeys.next()], MAPPING_FUNC);
+    }
+
+    @Benchmark
+    @Group("separate")
+    @GroupThreads(1)
+    public Integer remove(GroupData data, ThreadKeys threadKeys) {
+        return data.map.remove(data.keys[threadKeys.next()]);
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(1)
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xms7024m", "-Xmx7024m");
+
+        String threadGroups = System.getProperty(THREAD_GROUPS_PROPERTY);
+        if (threadGroups != null) {
+            builder.include(this.getClass().getName() + ".separate$")
+                   .threadGroups(Arrays.stream(threadGroups.split(","))
+                                       .mapToInt(s -> Integer.parseInt(s.trim()))
+                                       .toArray());
+        } else {
+            builder.include(this.getClass().getName() + ".mixed$")
+                   .threads(THREADS);
+        }
+
+        // rows of operations of the mix are appended by forks of the benchmark
+        Files.createDirectories(RESULTS_FILE.getParent());
+        Files.write(RESULTS_FILE, Collections.singletonList("implementation,operation,p50,p99,p99.9,unit"),
+                    StandardCharsets.UTF_8);
+
+        Collection<RunResult> results = ProfiledBenchmarkRunner.run(builder.build(), this.getClass(), 1);
+        writePercentiles(results, RESULTS_FILE);
+    }
+
+    /**
+     * The primary result is the whole workload, in the separate groups
+     * results of each operation are the secondary results labeled
+     * by the name of the method.
+     */
+    private void writePercentiles(Collection<RunResult> results, Path file) throws Exception {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file,
+                                                                       StandardCharsets.UTF_8,
+                                                                       StandardOpenOption.APPEND))) {
+            for (RunResult result : results) {
+                String implementation = result.getParams().getParam("implementation");
+                writePercentiles(out, implementation, "workload", result.getPrimaryResult());
+                for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+                    Result operation = entry.getValue();
+                    // skip results of profilers
+                    if (!OPERATIONS.contains(entry.getKey()) || operation.getStatistics().getN() == 0) {
+                        continue;
+                    }
+                    writePercentiles(out, implementation, entry.getKey(), operation);
+                }
+            }
+        }
+    }
+
+
+    private void writePercentiles(PrintWriter out, String implementation, String operation, Result result) {
+        StringBuilder line = new StringBuilder(implementation).append(',').append(operation);
+        for (double percentile : PERCENTILES) {
+            line.append(',').append(String.format(Locale.ROOT, "%.1f",
+                                                  result.getStatistics().getPercentile(percentile)));
+        }
+        line.append(',').append(result.getScoreUnit());
+        out.println(line);
+    }
+
+
+    /**
+     * Map of the benchmark, its state classes set the scope.
+     */
+    public abstract static class Data {
+
+        @Param({"SYNCHRONIZED_WEAK_HASH_MAP",
+                "CONCURRENT_HASH_MAP",
+                "CONCURRENT_REFERENCE_HASH_MAP",
+                "LOCK_FREE_REFERENCE_HASH_MAP"})
+        MapImplementation implementation;
+
+        UUID[] keys = new UUID[NUMBER_OF_KEYS];
+        Map<UUID, Integer> map;
+
+        @Setup
+        public void setUp() {
+            map = implementation.create(NUMBER_OF_KEYS);
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                keys[i] = UUID.randomUUID();
+                map.put(keys[i], i);
+            }
+        }
+    }
+
+    /**
+     * One map shared by all threads of the mixed workload,
+     * with histograms of latencies of the measurement iterations.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedData extends Data {
+
+        final LatencyHistogram[] latencies = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+
+        @TearDown(Level.Iteration)
+        public void skipWarmup(IterationParams iterationParams) {
+            if (iterationParams.getType() == IterationType.WARMUP) {
+                for (LatencyHistogram histogram : latencies) {
+                    histogram.reset();
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void writePercentiles() throws IOException {
+            List<String> lines = new ArrayList<>();
+            for (int operation = 0; operation < latencies.length; operation++) {
+                LatencyHistogram.Snapshot snapshot = latencies[operation].snapshot();
+                StringBuilder line = new StringBuilder(implementation.name())
+                        .append(',').append(OPERATION_NAMES[operation]);
+                for (double percentile : PERCENTILES) {
+                    line.append(',').append(String.format(Locale.ROOT, "%.1f",
+                                                          (double) snapshot.getValueAtPercentile(percentile)));
+                }
+                lines.add(line.append(",ns/op").toString());
+            }
+            Files.createDirectories(RESULTS_FILE.getParent());
+            Files.write(RESULTS_FILE, lines, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * A map of each group of the separate readers, writers and removers.
+     */
+    @State(Scope.Group)
+    public static class GroupData extends Data {
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        int[] sequence;
+        byte[] operations;
+        int position;
+        int operationPosition;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            sequence = KeyDistribution.UNIFORM.sequence(NUMBER_OF_KEYS,
+                                                        SEQUENCE_LENGTH,
+                                                        threadParams.getThreadIndex());
+            operations = operations(new Random(threadParams.getThreadIndex()));
+        }
+
+        int next() {
+            int index = sequence[position];
+            position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            return index;
+        }
+
+        byte nextOperation() {
+            byte operation = operations[operationPosition];
+            operationPosition = (operationPosition + 1) & (SEQUENCE_LENGTH - 1);
+            return operation;
+        }
+
+        /**
+         * Exact shares of operations in a random order
+         */
+        private static byte[] operations(Random random) {
+            byte[] operations = new byte[SEQUENCE_LENGTH];
+            int gets = SEQUENCE_LENGTH * GET_PERCENT / 100;
+            int computes = SEQUENCE_LENGTH * COMPUTE_IF_ABSENT_PERCENT / 100;
+            for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+                operations[i] = (i < gets) ? GET : (i < gets + computes) ? COMPUTE_IF_ABSENT : REMOVE;
+            }
+            for (int i = SEQUENCE_LENGTH - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                byte swap = operations[i];
+                operations[i] = operations[j];
+                operations[j] = swap;
+            }
+            return operations;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutexFactory;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of locking 2 and 4 keys at once under contention: each operation
+ * takes keysPerOperation random keys of a small key space and increments
+ * counters of these keys. The MultiKeyLock is compared with nested
+ * synchronized blocks on mutexes of the XMutexFactory, which are taken
+ * in the sorted order as well (in a random order they deadlock).
+ *
+ * @author Korovin Anatoliy
+ */
+public class MultiKeyLockBenchmark {
+
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+
+    @Benchmark
+    public long multiKeyLock(Data data, ThreadKeys threadKeys) {
+        List<UUID> keys = threadKeys.next();
+        try (MultiKeyLock<UUID>.Permit permit = data.multiKeyLock.lock(keys)) {
+            return data.increment(keys);
+        }
+    }
+
+    @Benchmark
+    public long nestedXMutex(Data data, ThreadKeys threadKeys) {
+        List<UUID> keys = threadKeys.next();
+        keys.sort(null);
+        return nestedSynchronized(data, keys, 0);
+    }
+
+    private long nestedSynchronized(Data data, List<UUID> keys, int index) {
+        if (index == keys.size()) {
+            return data.increment(keys);
+        }
+        synchronized (data.xMutexFactory.getMutex(keys.get(index))) {
+            return nestedSynchronized(data, keys, index + 1);
+        }
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(1)
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .threads(8)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xms2048m", "-Xmx2048m")
+                .build();
+
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"2", "4"})
+        int keysPerOperation;
+
+        @Param({"16", "1024"})
+        int numberOfKeys;
+
+        long[] counters;
+
+        MultiKeyLock<UUID> multiKeyLock = new MultiKeyLock<>();
+        XMutexFactory<UUID> xMutexFactory = new XMutexFactory<>();
+
+        @Setup
+        public void setUp() {
+            counters = new long[numberOfKeys];
+        }
+
+        /**
+         * Work inside of the critical section, counters of the locked keys
+         */
+        long increment(List<UUID> lockedKeys) {
+            long sum = 0;
+            for (UUID key : lockedKeys) {
+                sum += ++counters[(int) key.getLeastSignificantBits()];
+            }
+            return sum;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        int[] sequence;
+        int position;
+        UUID[] operationKeys;
+
+        @Setup(Level.Trial)
+        public void setUp(Data data, ThreadParams threadParams) {
+            sequence = KeyDistribution.UNIFORM.sequence(data.numberOfKeys,
+                                                        SEQUENCE_LENGTH,
+                                                        threadParams.getThreadIndex());
+            operationKeys = new UUID[data.keysPerOperation];
+        }
+
+        /**
+         * New keys of the key space, a key may repeat in one operation
+         */
+        List<UUID> next() {
+            for (int i = 0; i < operationKeys.length; i++) {
+                operationKeys[i] = new UUID(0, sequence[position]);
+                position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            }
+            return Arrays.asList(operationKeys);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class MultiKeyLockTest {
+
+    private static final int TIMEOUT_FOR_PREVENTION_OF_DEADLOCK = 30000;
+    private static final int NUMBER_OF_KEYS = 8;
+    private static final int NUMBER_OF_ITERATIONS = 100_000;
+
+    @Test
+    public void testKeysInCanonicalOrder() {
+        // Arrange
+        MultiKeyLock<Integer> locks = new MultiKeyLock<>();
+
+        // Act
+        try (MultiKeyLock<Integer>.Permit permit = locks.lock(3, 1, 2, 1)) {
+            // Asserts
+            Assertions.assertThat(permit.getKeys()).isEqualTo(Arrays.asList(1, 2, 3));
+        }
+    }
+
+    @Test
+    public void testReentrancy() {
+        // Arrange
+        MultiKeyLock<Integer> locks = new MultiKeyLock<>();
+
+        // Act
+        try (MultiKeyLock<Integer>.Permit outer = locks.lock(1, 2)) {
+            try (MultiKeyLock<Integer>.Permit inner = locks.lock(2, 3)) {
+                // Asserts
+                Assertions.assertThat(inner.getKeys()).isEqualTo(Arrays.asList(2, 3));
+            }
+        }
+        Assertions.assertThat(lockedByOtherThread(locks, 1, 2, 3)).isFalse();
+    }
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testTryLockTimeout() {
+        // Arrange
+        MultiKeyLock<Integer> locks = new MultiKeyLock<>();
+        MultiKeyLock<Integer>.Permit permit = locks.lock(2);
+
+        // Act
+        boolean locked = lockedByOtherThread(locks, 1, 2);
+        permit.release();
+
+        // Asserts
+        Assertions.assertThat(locked).isTrue();
+        Assertions.assertThat(lockedByOtherThread(locks, 1, 2)).isFalse();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleRelease() {
+        // Arrange
+        MultiKeyLock<Integer> locks = new MultiKeyLock<>();
+        MultiKeyLock<Integer>.Permit permit = locks.lock(1, 2);
+        permit.release();
+
+        // Act
+        permit.release();
+    }
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testMutualExclusion() throws Exception {
+        // Arrange
+        MultiKeyLock<Integer> locks = new MultiKeyLock<>();
+        NonAtomicInt[] accounts = IntStream.range(0, NUMBER_OF_KEYS)
+                                           .mapToObj(i -> new NonAtomicInt(NUMBER_OF_ITERATIONS))
+                                           .toArray(NonAtomicInt[]::new);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        // Act
+        List<CompletableFuture<Void>> transfers =
+                IntStream.range(0, NUMBER_OF_ITERATIONS)
+                         .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                             int from = i % NUMBER_OF_KEYS;
+                             int to = (i * 7 + 3) % NUMBER_OF_KEYS;
+                             locks.execute(Arrays.asList(from, to), () -> {
+                                 accounts[from].decrement();
+                                 accounts[to].increment();
+                             });
+                         }, executorService))
+                         .collect(toList());
+        transfers.forEach(CompletableFuture::join);
+        executorService.shutdown();
+
+        // Asserts
+        int total = Arrays.stream(accounts).mapToInt(NonAtomicInt::getValue).sum();
+        Assertions.assertThat(total).isEqualTo(NUMBER_OF_KEYS * NUMBER_OF_ITERATIONS);
+    }
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testCycleDetectionInDebugMode() throws Exception {
+        // Arrange
+        MultiKeyLock<Integer> locks = new MultiKeyLock<>(Comparator.naturalOrder(), true);
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+        // Act
+        // each thread holds its key and then waits for the key of the other one
+        List<CompletableFuture<Boolean>> results =
+                Arrays.asList(1, 2).stream()
+                      .map(key -> CompletableFuture.supplyAsync(() -> {
+                          try (MultiKeyLock<Integer>.Permit outer = locks.lock(key)) {
+                              barrier.await();
+                              locks.lock(3 - key).release();
+                              return false;
+                          } catch (IllegalStateException e) {
+                              return e.getMessage().startsWith("Cycle");
+                          } catch (Exception e) {
+                              throw new RuntimeException(e);
+                          }
+                      }, executorService))
+                      .collect(toList());
+        List<Boolean> cycles = results.stream().map(CompletableFuture::join).collect(toList());
+        executorService.shutdown();
+
+        // Asserts
+        // the thread which closed the cycle gets the exception and releases its key,
+        // so the other one locks both keys (both may detect the cycle at the same time)
+        Assertions.assertThat(cycles).contains(true);
+    }
+
+    @Test
+    public void testPurgeUnusedLocks() {
+        // Arrange
+        MultiKeyLock<UUID> locks = new MultiKeyLock<>();
+        UUID keptKey = UUID.randomUUID();
+
+        // Act
+        try (MultiKeyLock<UUID>.Permit permit = locks.lock(keptKey)) {
+            IntStream.range(0, 1000).forEach(i -> locks.lock(UUID.randomUUID(), UUID.randomUUID()).release());
+
+            // Asserts
+            await().atMost(10, TimeUnit.SECONDS)
+                   .until(() -> {
+                       System.gc();
+                       return locks.size();
+                   }, equalTo(1L));
+        }
+    }
+
+    /**
+     * tryLock of the keys in other thread
+     */
+    private boolean lockedByOtherThread(MultiKeyLock<Integer> locks, Integer... keys) {
+        return CompletableFuture.supplyAsync(() -> {
+            MultiKeyLock<Integer>.Permit permit = locks.tryLock(Arrays.asList(keys), 10, TimeUnit.MILLISECONDS);
+            if (permit == null) {
+                return true;
+            }
+            permit.release();
+            return false;
+        }).join();
+    }
+}
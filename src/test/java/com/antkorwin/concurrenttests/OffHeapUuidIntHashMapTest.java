@@ -0,0 +1,144 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class OffHeapUuidIntHashMapTest {
+
+    private static final int NUMBER_OF_KEYS = 10_000;
+    private static final int NUMBER_OF_ITERATIONS = NUMBER_OF_KEYS * 100;
+
+    @Test
+    public void testConcurrentCompute() {
+        // Arrange
+        OffHeapUuidIntHashMap map = new OffHeapUuidIntHashMap(NUMBER_OF_KEYS);
+        List<UUID> ids = IntStream.range(0, NUMBER_OF_KEYS)
+                                  .mapToObj(i -> UUID.randomUUID())
+                                  .collect(toList());
+
+        // Act
+        IntStream.range(0, NUMBER_OF_ITERATIONS)
+                 .parallel()
+                 .forEach(i -> map.compute(ids.get(i % NUMBER_OF_KEYS), (k, v) -> (v == null) ? 1 : v + 1));
+
+        // Asserts
+        Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS);
+        ids.forEach(id -> Assertions.assertThat(map.get(id)).isEqualTo(NUMBER_OF_ITERATIONS / NUMBER_OF_KEYS));
+    }
+
+    @Test
+    public void testRemove() {
+        // Arrange
+        OffHeapUuidIntHashMap map = new OffHeapUuidIntHashMap(NUMBER_OF_KEYS);
+        List<UUID> ids = IntStream.range(0, NUMBER_OF_KEYS)
+                                  .mapToObj(i -> UUID.randomUUID())
+                                  .collect(toList());
+        IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> map.put(ids.get(i), i));
+
+        // Act
+        IntStream.range(0, NUMBER_OF_KEYS).filter(i -> i % 2 == 0).forEach(i -> map.remove(ids.get(i)));
+
+        // Asserts
+        Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS / 2);
+        IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> {
+            Integer expected = (i % 2 == 0) ? null : i;
+            Assertions.assertThat(map.get(ids.get(i))).isEqualTo(expected);
+        });
+    }
+
+    @Test
+    public void testMappedFileSurvivesReopen() throws Exception {
+        // Arrange
+        Path file = Files.createTempFile("offheap-map", ".bin");
+        Files.delete(file);
+        Map<UUID, Integer> expected = new HashMap<>();
+        IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> expected.put(UUID.randomUUID(), i));
+
+        try {
+            // Act
+            try (OffHeapUuidIntHashMap map = OffHeapUuidIntHashMap.mapped(file, NUMBER_OF_KEYS)) {
+                map.putAll(expected);
+            }
+
+            // Asserts
+            try (OffHeapUuidIntHashMap map = OffHeapUuidIntHashMap.mapped(file, NUMBER_OF_KEYS)) {
+                Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS);
+                Assertions.assertThat(new HashMap<>(map)).isEqualTo(expected);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testFileWhichWasNotClosedIsRejected() throws Exception {
+        // Arrange
+        Path file = Files.createTempFile("offheap-map", ".bin");
+        Files.delete(file);
+
+        // a map which is still open is the same as a map of a crashed process
+        try (OffHeapUuidIntHashMap map = OffHeapUuidIntHashMap.mapped(file, NUMBER_OF_KEYS)) {
+            map.put(UUID.randomUUID(), 1);
+
+            // Act & Asserts
+            Assertions.assertThatThrownBy(() -> OffHeapUuidIntHashMap.mapped(file, NUMBER_OF_KEYS))
+                      .isInstanceOf(IllegalStateException.class);
+        }
+        try (OffHeapUuidIntHashMap map = OffHeapUuidIntHashMap.mapped(file, NUMBER_OF_KEYS)) {
+            Assertions.assertThat(map.size()).isEqualTo(1);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testFillUpToMaxSize() {
+        // sizes where the mean load of 16 segments is at the edge of a power of two:
+        // 12276 / 16 = 767.25 against 1024 * 0.75 = 768 slots
+        for (int maxSize : new int[]{1, 15, 12276, 12289, 98_301, 196_607}) {
+            // Arrange
+            OffHeapUuidIntHashMap map = new OffHeapUuidIntHashMap(maxSize);
+
+            // Act
+            IntStream.range(0, maxSize).forEach(i -> map.put(UUID.randomUUID(), i));
+
+            // Asserts
+            Assertions.assertThat(map.size()).isEqualTo(maxSize);
+        }
+    }
+
+    @Test
+    public void testWriteOperations() {
+        // Arrange
+        OffHeapUuidIntHashMap map = new OffHeapUuidIntHashMap(NUMBER_OF_KEYS);
+        UUID key = UUID.randomUUID();
+
+        // Act & Asserts
+        Assertions.assertThat(map.put(key, 1000)).isNull();
+        Assertions.assertThat(map.putIfAbsent(key, 2000)).isEqualTo(1000);
+        Assertions.assertThat(map.put(key, 3000)).isEqualTo(1000);
+        Assertions.assertThat(map.replace(key, 1000, 4000)).isFalse();
+        Assertions.assertThat(map.replace(key, 3000, 4000)).isTrue();
+        Assertions.assertThat(map.replace(key, 5000)).isEqualTo(4000);
+        Assertions.assertThat(map.replace(UUID.randomUUID(), 5000)).isNull();
+        Assertions.assertThat(map.remove(key, 4000)).isFalse();
+        Assertions.assertThat(map.remove(key, 5000)).isTrue();
+        Assertions.assertThat(map.remove(key)).isNull();
+        Assertions.assertThat(map.putIfAbsent(key, 6000)).isNull();
+        Assertions.assertThat(map.remove(key)).isEqualTo(6000);
+        Assertions.assertThat(map.size()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,89 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class ParallelMapTraversalTest {
+
+    private static final int NUMBER_OF_KEYS = 100_000;
+    private static final long EXPECTED_SUM = (long) NUMBER_OF_KEYS * (NUMBER_OF_KEYS - 1) / 2;
+
+    // keys and values are strongly reachable, weak maps don't lose them
+    private final UUID[] keys = new UUID[NUMBER_OF_KEYS];
+    private final Integer[] values = new Integer[NUMBER_OF_KEYS];
+
+    @Test
+    public void testReduceOfAllMaps() {
+        for (MapImplementation implementation : MapImplementation.values()) {
+            // Arrange
+            Map<UUID, Integer> map = createMap(implementation);
+
+            // Act
+            Long sequential = ParallelMapTraversal.reduce(map, Long.MAX_VALUE, (k, v) -> (long) v, Long::sum);
+            Long parallel = ParallelMapTraversal.reduce(map, 1, (k, v) -> (long) v, Long::sum);
+
+            // Asserts
+            Assertions.assertThat(sequential).describedAs(implementation.name()).isEqualTo(EXPECTED_SUM);
+            Assertions.assertThat(parallel).describedAs(implementation.name()).isEqualTo(EXPECTED_SUM);
+        }
+    }
+
+    @Test
+    public void testForEachOfAllMaps() {
+        for (MapImplementation implementation : MapImplementation.values()) {
+            // Arrange
+            Map<UUID, Integer> map = createMap(implementation);
+            LongAdder count = new LongAdder();
+
+            // Act
+            ParallelMapTraversal.forEach(map, 1_000, (k, v) -> count.increment());
+
+            // Asserts
+            Assertions.assertThat(count.sum()).describedAs(implementation.name()).isEqualTo(NUMBER_OF_KEYS);
+        }
+    }
+
+    @Test
+    public void testSearchOfAllMaps() {
+        for (MapImplementation implementation : MapImplementation.values()) {
+            // Arrange
+            Map<UUID, Integer> map = createMap(implementation);
+            int wanted = NUMBER_OF_KEYS / 3;
+
+            // Act
+            UUID found = ParallelMapTraversal.search(map, 1_000, (k, v) -> (v == wanted) ? k : null);
+            UUID notFound = ParallelMapTraversal.search(map, 1_000, (k, v) -> (v < 0) ? k : null);
+
+            // Asserts
+            Assertions.assertThat(found).describedAs(implementation.name()).isEqualTo(keys[wanted]);
+            Assertions.assertThat(notFound).describedAs(implementation.name()).isNull();
+        }
+    }
+
+    @Test
+    public void testReduceOfEmptyMap() {
+        for (MapImplementation implementation : MapImplementation.values()) {
+            Map<UUID, Integer> map = implementation.create(16);
+            Assertions.assertThat(ParallelMapTraversal.reduce(map, 1, (k, v) -> (long) v, Long::sum))
+                      .describedAs(implementation.name())
+                      .isNull();
+        }
+    }
+
+    private Map<UUID, Integer> createMap(MapImplementation implementation) {
+        Map<UUID, Integer> map = implementation.create(2 * NUMBER_OF_KEYS);
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            keys[i] = UUID.randomUUID();
+            values[i] = i;
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,150 @@
+package com.antkorwin.concurrenttests;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scan of a large map (sum of all values) by one thread, while WRITERS threads
+ * put values by random keys: the sequential iteration (under the lock of
+ * the synchronized map) against the ParallelMapTraversal.reduce.
+ * The writersOnly group is the throughput of writers without a scan.
+ *
+ * @author Korovin Anatoliy
+ */
+public class ParallelTraversalBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 1_000_000;
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+    private static final long PARALLELISM_THRESHOLD = 10_000;
+    private static final int WRITERS = 3;
+
+    @Benchmark
+    @Group("sequentialScan")
+    @GroupThreads(1)
+    public long sequentialScan_scanner(Data data) {
+        return sequentialSum(data.map);
+    }
+
+    @Benchmark
+    @Group("sequentialScan")
+    @GroupThreads(WRITERS)
+    public Integer sequentialScan_writer(Data data, ThreadKeys threadKeys) {
+        return write(data, threadKeys);
+    }
+
+    @Benchmark
+    @Group("parallelScan")
+    @GroupThreads(1)
+    public Long parallelScan_scanner(Data data) {
+        return ParallelMapTraversal.reduce(data.map, PARALLELISM_THRESHOLD, (k, v) -> (long) v, Long::sum);
+    }
+
+    @Benchmark
+    @Group("parallelScan")
+    @GroupThreads(WRITERS)
+    public Integer parallelScan_writer(Data data, ThreadKeys threadKeys) {
+        return write(data, threadKeys);
+    }
+
+    @Benchmark
+    @Group("writersOnly")
+    @GroupThreads(WRITERS)
+    public Integer writersOnly_writer(Data data, ThreadKeys threadKeys) {
+        return write(data, threadKeys);
+    }
+
+    private long sequentialSum(Map<UUID, Integer> map) {
+        if (map instanceof ConcurrentMap) {
+            return sum(map);
+        }
+        synchronized (map) {
+            return sum(map);
+        }
+    }
+
+    private long sum(Map<UUID, Integer> map) {
+        long sum = 0;
+        for (Integer value : map.values()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Values are taken from the array, weak maps don't lose them.
+     */
+    private Integer write(Data data, ThreadKeys threadKeys) {
+        int index = threadKeys.next();
+        return data.map.put(data.keys[index], data.values[index]);
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(1)
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xms7024m", "-Xmx7024m")
+                .build();
+
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+    }
+
+
+    @State(Scope.Group)
+    public static class Data {
+
+        @Param
+        MapImplementation implementation;
+
+        UUID[] keys = new UUID[NUMBER_OF_KEYS];
+        Integer[] values = new Integer[NUMBER_OF_KEYS];
+        Map<UUID, Integer> map;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            map = implementation.create(2 * NUMBER_OF_KEYS);
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                keys[i] = UUID.randomUUID();
+                values[i] = i;
+                map.put(keys[i], values[i]);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        int[] sequence;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threadParams) {
+            sequence = KeyDistribution.UNIFORM.sequence(NUMBER_OF_KEYS, SEQUENCE_LENGTH, threadParams.getThreadIndex());
+        }
+
+        int next() {
+            int key = sequence[position];
+            position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            return key;
+        }
+    }
+}
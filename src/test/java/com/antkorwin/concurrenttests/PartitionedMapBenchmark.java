@@ -0,0 +1,194 @@
+package com.antkorwin.concurrenttests;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Writes of 8..64 producers into shared concurrent maps against
+ * the PartitionedUuidMap, where each partition has a single writer:
+ * <ul>
+ * <li>update_SharedMap - compute on the shared map, the update is visible when it returns;</li>
+ * <li>update_PartitionedMap - sends the update and doesn't wait for it,
+ * its throughput is bounded by writers, because producers wait when rings are full;</li>
+ * <li>compute_PartitionedMap - sends the update and waits until it is applied,
+ * the end-to-end latency of a write.</li>
+ * </ul>
+ * Each benchmark is measured in the Throughput and the SampleTime modes,
+ * throughput-vs-producers curves are written to target/jmh/partitioned.csv
+ *
+ * @author Korovin Anatoliy
+ */
+public class PartitionedMapBenchmark {
+
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+    private static final int[] PRODUCERS = {8, 16, 32, 64};
+    private static final BiFunction<UUID, Integer, Integer> INCREMENT_FUNC = (k, v) -> (v == null) ? 1 : v + 1;
+
+    @Benchmark
+    public Integer update_SharedMap(SharedMapData data, Keys keys, ThreadKeys threadKeys) {
+        return data.map.compute(keys.keys[threadKeys.next()], INCREMENT_FUNC);
+    }
+
+    @Benchmark
+    public void update_PartitionedMap(PartitionedMapData data, Keys keys, ThreadKeys threadKeys) {
+        data.map.update(keys.keys[threadKeys.next()], INCREMENT_FUNC);
+    }
+
+    @Benchmark
+    public Integer compute_PartitionedMap(PartitionedMapData data, Keys keys, ThreadKeys threadKeys) {
+        return data.map.compute(keys.keys[threadKeys.next()], INCREMENT_FUNC).toCompletableFuture().join();
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Map<String, SortedMap<Integer, Double>> curves = new TreeMap<>();
+
+        for (int producers : PRODUCERS) {
+            Options opt = new OptionsBuilder()
+                    .include(this.getClass().getName() + ".*")
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .warmupTime(TimeValue.seconds(1))
+                    .warmupIterations(1)
+                    .measurementTime(TimeValue.seconds(2))
+                    .measurementIterations(3)
+                    .threads(producers)
+                    .forks(1)
+                    .shouldFailOnError(true)
+                    .shouldDoGC(true)
+                    .jvmArgs("-Xms4096m", "-Xmx4096m")
+                    .build();
+
+            Collection<RunResult> results =
+                    ProfiledBenchmarkRunner.run(opt, getClass().getSimpleName() + "-" + producers, 1);
+
+            for (RunResult result : results) {
+                if (result.getParams().getMode() != Mode.Throughput) {
+                    continue;
+                }
+                String implementation = result.getParams().getParam("implementation");
+                String curve = result.getParams().getBenchmark() + "," +
+                               (implementation != null
+                                ? implementation
+                                : "partitions=" + result.getParams().getParam("partitions")) + "," +
+                               result.getParams().getParam("numberOfKeys");
+                curves.computeIfAbsent(curve, k -> new TreeMap<>())
+                      .put(producers, result.getPrimaryResult().getScore());
+            }
+        }
+
+        writeCurves(curves, ProfiledBenchmarkRunner.RESULTS_DIR.resolve("partitioned.csv"));
+    }
+
+    private void writeCurves(Map<String, SortedMap<Integer, Double>> curves, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("benchmark,implementation,numberOfKeys,producers,opsPerUs");
+            curves.forEach((curve, points) -> points.forEach((producers, score) -> {
+                out.println(curve + "," + producers + "," + String.format(Locale.ROOT, "%.3f", score));
+            }));
+        }
+        curves.forEach((curve, points) -> System.out.println(curve + " -> " + points));
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class Keys {
+
+        @Param({"1000", "1000000"})
+        int numberOfKeys;
+
+        UUID[] keys;
+
+        @Setup
+        public void setUp() {
+            keys = new UUID[numberOfKeys];
+            for (int i = 0; i < numberOfKeys; i++) {
+                keys[i] = UUID.randomUUID();
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedMapData {
+
+        @Param({"CONCURRENT_HASH_MAP",
+                "LOCK_FREE_REFERENCE_HASH_MAP",
+                "ADAPTIVE_CONCURRENT_MAP"})
+        MapImplementation implementation;
+
+        Map<UUID, Integer> map;
+
+        @Setup
+        public void setUp(Keys keys) {
+            map = implementation.create(keys.numberOfKeys);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PartitionedMapData {
+
+        @Param({"4", "8"})
+        int partitions;
+
+        PartitionedUuidMap<Integer> map;
+
+        @Setup
+        public void setUp() {
+            map = new PartitionedUuidMap<>(partitions, 1 << 14, 1024, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        /**
+         * Updates which are sent in this iteration are applied in it
+         */
+        @TearDown(Level.Iteration)
+        public void flush() {
+            map.flush().toCompletableFuture().join();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            map.close();
+        }
+    }
+
+    /**
+     * Each producer has its own sequence of keys.
+     */
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        int[] sequence;
+        int position;
+
+        @Setup
+        public void setUp(Keys keys, ThreadParams threadParams) {
+            sequence = KeyDistribution.UNIFORM.sequence(keys.numberOfKeys,
+                                                        SEQUENCE_LENGTH,
+                                                        threadParams.getThreadIndex());
+        }
+
+        int next() {
+            int index = sequence[position];
+            position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            return index;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class PartitionedUuidMapTest {
+
+    private static final int TIMEOUT_FOR_PREVENTION_OF_DEADLOCK = 30000;
+    private static final int NUMBER_OF_KEYS = 1000;
+    private static final int NUMBER_OF_PRODUCERS = 16;
+    private static final int NUMBER_OF_ITERATIONS = 100_000;
+    private static final int NUMBER_OF_LARGE_MAP_KEYS = 1_000_000;
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testConcurrentUpdates() throws Exception {
+        // Arrange
+        UUID[] keys = IntStream.range(0, NUMBER_OF_KEYS)
+                               .mapToObj(i -> UUID.randomUUID())
+                               .toArray(UUID[]::new);
+        ExecutorService executorService = Executors.newFixedThreadPool(NUMBER_OF_PRODUCERS);
+
+        try (PartitionedUuidMap<Integer> map = new PartitionedUuidMap<>(4, 256, 64, TimeUnit.MILLISECONDS.toNanos(1))) {
+            // Act
+            List<CompletableFuture<Void>> producers =
+                    IntStream.range(0, NUMBER_OF_PRODUCERS)
+                             .mapToObj(p -> CompletableFuture.runAsync(() -> {
+                                 for (int i = 0; i < NUMBER_OF_ITERATIONS; i++) {
+                                     map.update(keys[(i + p) % NUMBER_OF_KEYS], (k, v) -> (v == null) ? 1 : v + 1);
+                                 }
+                                 map.flush().toCompletableFuture().join();
+                             }, executorService))
+                             .collect(toList());
+            producers.forEach(CompletableFuture::join);
+            executorService.shutdown();
+
+            // Asserts
+            long total = 0;
+            for (UUID key : keys) {
+                total += map.get(key);
+            }
+            Assertions.assertThat(total).isEqualTo((long) NUMBER_OF_PRODUCERS * NUMBER_OF_ITERATIONS);
+            Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS);
+        }
+    }
+
+    /**
+     * Publications every millisecond must not copy a partition of 250K entries,
+     * with full copies this test runs out of the timeout.
+     */
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testLargeMapThroughput() throws Exception {
+        // Arrange
+        UUID[] keys = IntStream.range(0, NUMBER_OF_LARGE_MAP_KEYS)
+                               .mapToObj(i -> UUID.randomUUID())
+                               .toArray(UUID[]::new);
+
+        try (PartitionedUuidMap<Integer> map = new PartitionedUuidMap<>(4, 1 << 14, 1024, TimeUnit.MILLISECONDS.toNanos(1))) {
+            for (UUID key : keys) {
+                map.put(key, 0);
+            }
+            map.flush().toCompletableFuture().join();
+
+            // Act
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < NUMBER_OF_LARGE_MAP_KEYS; i++) {
+                    map.update(keys[i], (k, v) -> v + 1);
+                }
+            }
+            map.flush().toCompletableFuture().join();
+
+            // Asserts
+            long total = 0;
+            for (UUID key : keys) {
+                total += map.get(key);
+            }
+            Assertions.assertThat(total).isEqualTo(2L * NUMBER_OF_LARGE_MAP_KEYS);
+            Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_LARGE_MAP_KEYS);
+        }
+    }
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testComputeAndFlush() throws Exception {
+        // Arrange
+        UUID key = UUID.randomUUID();
+        UUID removedKey = UUID.randomUUID();
+
+        try (PartitionedUuidMap<String> map = new PartitionedUuidMap<>()) {
+            map.put(removedKey, "removed");
+
+            // Act
+            String value = map.compute(key, (k, v) -> (v == null) ? "first" : v).toCompletableFuture().join();
+            map.remove(removedKey);
+            map.flush().toCompletableFuture().join();
+
+            // Asserts
+            Assertions.assertThat(value).isEqualTo("first");
+            Assertions.assertThat(map.get(key)).isEqualTo("first");
+            Assertions.assertThat(map.get(removedKey)).isNull();
+            Assertions.assertThat(map.size()).isEqualTo(1);
+        }
+    }
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testFailedUpdate() throws Exception {
+        // Arrange
+        UUID key = UUID.randomUUID();
+
+        try (PartitionedUuidMap<Integer> map = new PartitionedUuidMap<>()) {
+            // Act
+            CompletableFuture<Integer> failed = map.compute(key, (k, v) -> {
+                throw new IllegalArgumentException("failed update");
+            }).toCompletableFuture();
+            map.update(key, (k, v) -> {
+                throw new IllegalStateException("failed update");
+            });
+            Integer next = map.compute(key, (k, v) -> 1).toCompletableFuture().join();
+
+            // Asserts
+            Assertions.assertThatThrownBy(failed::join)
+                      .isInstanceOf(CompletionException.class)
+                      .hasCauseInstanceOf(IllegalArgumentException.class);
+            Assertions.assertThat(next).isEqualTo(1);
+            Assertions.assertThat(map.getFailedUpdates()).isEqualTo(2);
+        }
+    }
+
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void testFailedPartition() throws Exception {
+        // Arrange
+        UUID key = UUID.randomUUID();
+
+        try (PartitionedUuidMap<Integer> map = new PartitionedUuidMap<>(1, 16, 16, TimeUnit.MILLISECONDS.toNanos(1))) {
+            // Act
+            CompletableFuture<Integer> failed = map.compute(key, (k, v) -> {
+                throw new AssertionError("failed writer");
+            }).toCompletableFuture();
+            CompletableFuture<Void> flushed = map.flush().toCompletableFuture();
+
+            // Asserts
+            Assertions.assertThatThrownBy(failed::join)
+                      .isInstanceOf(CompletionException.class)
+                      .hasCauseInstanceOf(AssertionError.class);
+            Assertions.assertThatThrownBy(flushed::join)
+                      .isInstanceOf(CompletionException.class)
+                      .hasCauseInstanceOf(AssertionError.class);
+            Assertions.assertThatThrownBy(() -> map.put(key, 1))
+                      .isInstanceOf(IllegalStateException.class)
+                      .hasCauseInstanceOf(AssertionError.class);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUpdateAfterClose() throws Exception {
+        // Arrange
+        PartitionedUuidMap<Integer> map = new PartitionedUuidMap<>();
+        map.close();
+
+        // Act
+        map.put(UUID.randomUUID(), 1);
+    }
+}
@@ -0,0 +1,179 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class PersistentUuidIntMapTest {
+
+    private static final int NUMBER_OF_KEYS = 10_000;
+    private static final int NUMBER_OF_ITERATIONS = NUMBER_OF_KEYS * 50;
+
+    private Path directory;
+    private List<UUID> ids;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("persistent-map");
+        ids = IntStream.range(0, NUMBER_OF_KEYS)
+                       .mapToObj(i -> UUID.randomUUID())
+                       .collect(toList());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testReopenReplaysChangeLog() throws Exception {
+        // Arrange
+        Map<UUID, Integer> expected;
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+            IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> map.put(ids.get(i), i));
+            IntStream.range(0, NUMBER_OF_KEYS).filter(i -> i % 3 == 0).forEach(i -> map.remove(ids.get(i)));
+            IntStream.range(0, NUMBER_OF_KEYS).filter(i -> i % 3 == 1).forEach(i -> map.merge(ids.get(i), 1, Integer::sum));
+            expected = new HashMap<>(map);
+        }
+
+        // Act
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+
+            // Asserts
+            Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS - (NUMBER_OF_KEYS + 2) / 3);
+            Assertions.assertThat(new HashMap<>(map)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testSnapshotDeletesOldChangeLogs() throws Exception {
+        // Arrange
+        Map<UUID, Integer> expected;
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+            IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> map.put(ids.get(i), i));
+
+            // Act
+            long count = map.snapshot();
+            IntStream.range(0, NUMBER_OF_KEYS / 2).forEach(i -> map.put(ids.get(i), -i));
+            expected = new HashMap<>(map);
+
+            Assertions.assertThat(count).isEqualTo(NUMBER_OF_KEYS);
+        }
+
+        // Asserts
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertThat(files.map(file -> file.getFileName().toString()).collect(toList()))
+                      .containsExactlyInAnyOrder("snapshot.bin", "changes-0000000000000000002.log");
+        }
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+            Assertions.assertThat(new HashMap<>(map)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testTornRecordIsCutOff() throws Exception {
+        // Arrange
+        Map<UUID, Integer> expected;
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+            IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> map.put(ids.get(i), i));
+            expected = new HashMap<>(map);
+        }
+        Path log = directory.resolve("changes-0000000000000000001.log");
+        long size = Files.size(log);
+        // a record which was written in part before a crash
+        Files.write(log, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, StandardOpenOption.APPEND);
+
+        // Act
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+
+            // Asserts
+            Assertions.assertThat(new HashMap<>(map)).isEqualTo(expected);
+            Assertions.assertThat(Files.size(log)).isEqualTo(size);
+        }
+    }
+
+    @Test
+    public void testDamagedRecordStopsReplay() throws Exception {
+        // Arrange
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+            IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> map.put(ids.get(i), i));
+        }
+        Path log = directory.resolve("changes-0000000000000000001.log");
+        byte[] content = Files.readAllBytes(log);
+        // the value of the 11th record
+        content[10 * 28 + 16] ^= 1;
+        Files.write(log, content);
+
+        // Act
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+
+            // Asserts
+            // records of stripes are interleaved, the first 10 records are of any keys
+            Assertions.assertThat(map.size()).isEqualTo(10);
+            map.forEach((id, value) -> Assertions.assertThat(ids.get(value)).isEqualTo(id));
+            Assertions.assertThat(Files.size(log)).isEqualTo(10 * 28);
+        }
+    }
+
+    @Test
+    public void testSnapshotUnderConcurrentWriters() throws Exception {
+        // Arrange
+        Map<UUID, Integer> expected;
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            CompletableFuture<Integer> snapshots = CompletableFuture.supplyAsync(() -> {
+                int count = 0;
+                try {
+                    while (running.get()) {
+                        map.snapshot();
+                        count++;
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return count;
+            });
+
+            // Act
+            IntStream.range(0, NUMBER_OF_ITERATIONS)
+                     .parallel()
+                     .forEach(i -> map.compute(ids.get(i % NUMBER_OF_KEYS), (k, v) -> (v == null) ? 1 : v + 1));
+            running.set(false);
+
+            Assertions.assertThat(snapshots.get()).isGreaterThan(0);
+            expected = new HashMap<>(map);
+        }
+
+        // Asserts
+        try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+            Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS);
+            ids.forEach(id -> Assertions.assertThat(map.get(id)).isEqualTo(NUMBER_OF_ITERATIONS / NUMBER_OF_KEYS));
+            Assertions.assertThat(new HashMap<>(map)).isEqualTo(expected);
+        }
+    }
+}
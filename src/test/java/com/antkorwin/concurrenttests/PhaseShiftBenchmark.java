@@ -0,0 +1,161 @@
+package com.antkorwin.concurrenttests;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * A map goes from a cold phase to a hot phase in the middle of the run:
+ * in the first COLD_ITERATIONS only one thread works with the map
+ * (others burn CPU without it), after that all threads do.
+ *
+ * The map is created once per trial and there are no warmup iterations,
+ * so the AdaptiveConcurrentMap has to change its layout during the measurement.
+ * Map operations per iteration are counted by the thread states,
+ * the curve of each map is written to target/jmh/phase-shift.csv
+ *
+ * @author Korovin Anatoliy
+ */
+public class PhaseShiftBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 1_000;
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+    private static final int COLD_ITERATIONS = 5;
+    private static final int HOT_ITERATIONS = 10;
+    private static final long IDLE_TOKENS = 100;
+    private static final BiFunction<UUID, Integer, Integer> COMPUTE_FUNC = (k, v) -> (v == null) ? 1 : v + 1;
+
+    @Benchmark
+    public Integer workload(Data data, ThreadKeys threadKeys) {
+        if (!data.hot && threadKeys.index != 0) {
+            Blackhole.consumeCPU(IDLE_TOKENS);
+            return null;
+        }
+        threadKeys.mapOperations++;
+        UUID key = data.keys[threadKeys.next()];
+        // 3 reads per write
+        return ((threadKeys.position & 3) == 0) ? data.map.compute(key, COMPUTE_FUNC) : data.map.get(key);
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupIterations(0)
+                .measurementTime(TimeValue.seconds(1))
+                .measurementIterations(COLD_ITERATIONS + HOT_ITERATIONS)
+                .threads(8)
+                .forks(1)
+                .shouldFailOnError(true)
+                .jvmArgs("-Xms2048m", "-Xmx2048m")
+                .build();
+
+        Collection<RunResult> results = ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+        writeCurves(results, ProfiledBenchmarkRunner.RESULTS_DIR.resolve("phase-shift.csv"));
+    }
+
+    private void writeCurves(Collection<RunResult> results, Path file) throws Exception {
+        Files.createDirectories(file.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("implementation,iteration,phase,mapOpsPerUs");
+            for (RunResult result : results) {
+                String implementation = result.getParams().getParam("implementation");
+                for (BenchmarkResult benchmarkResult : result.getBenchmarkResults()) {
+                    int iteration = 0;
+                    for (IterationResult iterationResult : benchmarkResult.getIterationResults()) {
+                        iteration++;
+                        String line = String.format(Locale.ROOT, "%s,%d,%s,%.3f",
+                                                    implementation,
+                                                    iteration,
+                                                    (iteration <= COLD_ITERATIONS) ? "cold" : "hot",
+                                                    iterationResult.getSecondaryResults()
+                                                                   .get("mapOperations")
+                                                                   .getScore());
+                        out.println(line);
+                        System.out.println(line);
+                    }
+                }
+            }
+        }
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"SYNCHRONIZED_WEAK_HASH_MAP",
+                "CONCURRENT_HASH_MAP",
+                "ADAPTIVE_CONCURRENT_MAP"})
+        MapImplementation implementation;
+
+        UUID[] keys = new UUID[NUMBER_OF_KEYS];
+        Map<UUID, Integer> map;
+        int iteration;
+        volatile boolean hot;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            map = implementation.create(NUMBER_OF_KEYS);
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                keys[i] = UUID.randomUUID();
+                map.put(keys[i], i);
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void nextIteration() {
+            iteration++;
+            hot = iteration > COLD_ITERATIONS;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ThreadKeys {
+
+        public long mapOperations;
+
+        int index;
+        int[] sequence;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threadParams) {
+            index = threadParams.getThreadIndex();
+            sequence = KeyDistribution.UNIFORM.sequence(NUMBER_OF_KEYS, SEQUENCE_LENGTH, index);
+        }
+
+        @Setup(Level.Iteration)
+        public void resetCounters() {
+            mapOperations = 0;
+        }
+
+        int next() {
+            int key = sequence[position];
+            position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            return key;
+        }
+    }
+}
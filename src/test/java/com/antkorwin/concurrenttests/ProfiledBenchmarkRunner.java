@@ -0,0 +1,143 @@
+package com.antkorwin.concurrenttests;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.profile.StackProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs JMH benchmarks, in the GC-profiled mode when it is enabled
+ * by -Dbenchmark.gc=true (or by the gc-profile maven profile).
+ *
+ * This mode attaches the GC profiler (gc.alloc.rate.norm) and the stack profiler,
+ * writes JMH results to target/jmh/[benchmark].json and bytes allocated
+ * per a map operation to target/jmh/[benchmark]-alloc.csv
+ *
+ * With -Dbenchmark.regression=true results are measured with the GC profiler
+ * and compared with the baseline by the RegressionTracker.
+ *
+ * @author Korovin Anatoliy
+ */
+final class ProfiledBenchmarkRunner {
+
+    static final String GC_PROFILE_PROPERTY = "benchmark.gc";
+    static final Path RESULTS_DIR = Paths.get("target", "jmh");
+
+    private static final String ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+
+    private ProfiledBenchmarkRunner() {
+    }
+
+    /**
+     * @param mapOperationsPerOp number of map operations in one benchmark operation,
+     *                           which is not declared by the @OperationsPerInvocation
+     */
+    static Collection<RunResult> run(Options options,
+                                     Class<?> benchmarkClass,
+                                     int mapOperationsPerOp) throws RunnerException, IOException {
+        return run(options, benchmarkClass.getSimpleName(), mapOperationsPerOp);
+    }
+
+    /**
+     * @param name prefix of the result files
+     */
+    static Collection<RunResult> run(Options options,
+                                     String name,
+                                     int mapOperationsPerOp) throws RunnerException, IOException {
+
+        boolean gcProfile = Boolean.getBoolean(GC_PROFILE_PROPERTY);
+        boolean regression = RegressionTracker.isEnabled();
+        if (!gcProfile && !regression) {
+            return new Runner(options).run();
+        }
+
+        Files.createDirectories(RESULTS_DIR);
+        Path json = RESULTS_DIR.resolve(name + ".json");
+
+        ChainedOptionsBuilder profiled = new OptionsBuilder()
+                .parent(options)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(json.toString());
+        // the stack profiler slows down benchmarks, scores are not comparable with it
+        if (gcProfile) {
+            profiled.addProfiler(StackProfiler.class);
+        }
+
+        Collection<RunResult> results = new Runner(profiled.build()).run();
+        writeAllocationReport(results, RESULTS_DIR.resolve(name + "-alloc.csv"), mapOperationsPerOp);
+        if (regression) {
+            RegressionTracker.track(name, json, results);
+        }
+        return results;
+    }
+
+    static void writeAllocationReport(Collection<RunResult> results,
+                                      Path file,
+                                      int mapOperationsPerOp) throws IOException {
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("benchmark,params,mode,threads,score,scoreUnit,allocBytesPerOp,allocBytesPerMapOperation");
+            for (RunResult result : results) {
+                BenchmarkParams params = result.getParams();
+                Result primary = result.getPrimaryResult();
+                double alloc = allocationPerOp(result);
+                out.println(String.join(",",
+                                        params.getBenchmark(),
+                                        formatParams(params),
+                                        params.getMode().shortLabel(),
+                                        String.valueOf(params.getThreads()),
+                                        format(primary.getScore()),
+                                        primary.getScoreUnit(),
+                                        format(alloc),
+                                        format(alloc / mapOperationsPerOp)));
+            }
+        }
+    }
+
+    private static double allocationPerOp(RunResult result) {
+        Result allocation = allocationResult(result);
+        return (allocation != null) ? allocation.getScore() : Double.NaN;
+    }
+
+    /**
+     * The key of the secondary result has a prefix in some versions of JMH.
+     */
+    static Result allocationResult(RunResult result) {
+        for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+            if (entry.getKey().endsWith(ALLOC_RATE_NORM)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    static String formatParams(BenchmarkParams params) {
+        return params.getParamsKeys()
+                     .stream()
+                     .map(key -> key + "=" + params.getParam(key))
+                     .collect(Collectors.joining(";"));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
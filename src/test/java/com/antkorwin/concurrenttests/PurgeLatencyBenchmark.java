@@ -0,0 +1,215 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutex;
+import com.antkorwin.xsync.XMutexFactory;
+import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
+import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap.ReferenceType;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Tail latency of writes into weak maps and of the getMutex, while the GC
+ * clears their entries: a daemon thread calls System.gc() each gcIntervalMillis
+ * (0 - only GCs of the workload). Keys are new objects equal to keys
+ * of the key space and values are not held by the benchmark, so almost every
+ * entry is cleared by the next GC and someone has to purge it:
+ * the synchronized WeakHashMap and the ConcurrentReferenceHashMap do it inside
+ * the next write, the LockFreeReferenceHashMap by its PurgePolicy.
+ *
+ * The explicit GC is concurrent (-XX:+ExplicitGCInvokesConcurrent),
+ * so its own pause doesn't hide the cost of the purge.
+ * See p0.99, p0.999 and p1.0 of the SampleTime results.
+ *
+ * @author Korovin Anatoliy
+ */
+public class PurgeLatencyBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 1_000_000;
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+    private static final int THREADS = 4;
+
+    @Benchmark
+    public Integer compute(WeakMapData data, GcLoad gcLoad, ThreadKeys threadKeys) {
+        int index = threadKeys.next();
+        return data.map.compute(new UUID(0, index), (k, v) -> (v != null) ? v : Integer.valueOf(index + 1024));
+    }
+
+    @Benchmark
+    public UUID getMutex(MutexFactoryData data, GcLoad gcLoad, ThreadKeys threadKeys) {
+        UUID key = new UUID(0, threadKeys.next());
+        XMutex<UUID> mutex = data.factory.apply(key);
+        synchronized (mutex) {
+            return key;
+        }
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(1)
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .threads(THREADS)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xms2048m", "-Xmx2048m", "-XX:+ExplicitGCInvokesConcurrent")
+                .build();
+
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+    }
+
+
+    public enum WeakMap {
+
+        SYNCHRONIZED_WEAK_HASH_MAP,
+        CONCURRENT_REFERENCE_HASH_MAP,
+        LOCK_FREE_INLINE,
+        LOCK_FREE_AMORTIZED,
+        LOCK_FREE_BACKGROUND;
+
+        Map<UUID, Integer> create() {
+            switch (this) {
+                case SYNCHRONIZED_WEAK_HASH_MAP:
+                    return MapImplementation.SYNCHRONIZED_WEAK_HASH_MAP.create(NUMBER_OF_KEYS);
+                case CONCURRENT_REFERENCE_HASH_MAP:
+                    // weak references as in the XMutexFactory, the default type is SOFT
+                    return new ConcurrentReferenceHashMap<>(NUMBER_OF_KEYS, 0.75f, 16, ReferenceType.WEAK);
+                case LOCK_FREE_INLINE:
+                    return lockFree(LockFreeReferenceHashMap.PurgePolicy.INLINE);
+                case LOCK_FREE_AMORTIZED:
+                    return lockFree(LockFreeReferenceHashMap.PurgePolicy.AMORTIZED);
+                default:
+                    return lockFree(LockFreeReferenceHashMap.PurgePolicy.BACKGROUND);
+            }
+        }
+
+        private static Map<UUID, Integer> lockFree(LockFreeReferenceHashMap.PurgePolicy purgePolicy) {
+            return new LockFreeReferenceHashMap<>(NUMBER_OF_KEYS, LockFreeReferenceHashMap.ReferenceType.WEAK, purgePolicy);
+        }
+    }
+
+    public enum MutexFactory {
+
+        XMUTEX_FACTORY,
+        LOCK_FREE_INLINE,
+        LOCK_FREE_AMORTIZED,
+        LOCK_FREE_BACKGROUND;
+
+        Function<UUID, XMutex<UUID>> create() {
+            switch (this) {
+                case XMUTEX_FACTORY:
+                    return new XMutexFactory<UUID>()::getMutex;
+                case LOCK_FREE_INLINE:
+                    return lockFree(LockFreeReferenceHashMap.PurgePolicy.INLINE);
+                case LOCK_FREE_AMORTIZED:
+                    return lockFree(LockFreeReferenceHashMap.PurgePolicy.AMORTIZED);
+                default:
+                    return lockFree(LockFreeReferenceHashMap.PurgePolicy.BACKGROUND);
+            }
+        }
+
+        private static Function<UUID, XMutex<UUID>> lockFree(LockFreeReferenceHashMap.PurgePolicy purgePolicy) {
+            return new LockFreeXMutexFactory<UUID>(NUMBER_OF_KEYS,
+                                                   LockFreeReferenceHashMap.ReferenceType.WEAK,
+                                                   purgePolicy)::getMutex;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WeakMapData {
+
+        @Param
+        WeakMap weakMap;
+
+        Map<UUID, Integer> map;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            map = weakMap.create();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MutexFactoryData {
+
+        @Param
+        MutexFactory mutexFactory;
+
+        Function<UUID, XMutex<UUID>> factory;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            factory = mutexFactory.create();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class GcLoad {
+
+        @Param({"0", "100", "10"})
+        long gcIntervalMillis;
+
+        private Thread thread;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            if (gcIntervalMillis == 0) {
+                return;
+            }
+            thread = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        TimeUnit.MILLISECONDS.sleep(gcIntervalMillis);
+                        System.gc();
+                    }
+                } catch (InterruptedException e) {
+                    // the trial is over
+                }
+            }, "forced-gc");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            if (thread != null) {
+                thread.interrupt();
+                thread.join();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        int[] sequence;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threadParams) {
+            sequence = KeyDistribution.UNIFORM.sequence(NUMBER_OF_KEYS, SEQUENCE_LENGTH, threadParams.getThreadIndex());
+        }
+
+        int next() {
+            int key = sequence[position];
+            position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            return key;
+        }
+    }
+}
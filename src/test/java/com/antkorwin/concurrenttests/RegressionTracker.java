@@ -0,0 +1,293 @@
+package com.antkorwin.concurrenttests;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps results of benchmarks between runs and compares a run with the baseline,
+ * enabled by -Dbenchmark.regression=true (or by the regression maven profile).
+ *
+ * Results are stored in benchmark-results/[jvm]/[commit]/, the JMH json
+ * and a summary: the score and the allocation per operation with their
+ * 99.9% confidence intervals. The baseline is the run of the commit
+ * from -Dbenchmark.baseline, or the latest run of another commit on the same JVM.
+ *
+ * A benchmark regressed when the confidence intervals don't overlap
+ * and the difference is more than the threshold:
+ * a throughput drops (or a time rises) by more than -Dbenchmark.regression.score (5% by default),
+ * an allocation rises by more than -Dbenchmark.regression.alloc (5% by default).
+ *
+ * @author Korovin Anatoliy
+ */
+final class RegressionTracker {
+
+    static final String REGRESSION_PROPERTY = "benchmark.regression";
+
+    private static final Path STORAGE_DIR = Paths.get(System.getProperty("benchmark.results", "benchmark-results"));
+    private static final String BASELINE_PROPERTY = "benchmark.baseline";
+    private static final double SCORE_THRESHOLD = Double.parseDouble(System.getProperty("benchmark.regression.score", "0.05"));
+    private static final double ALLOC_THRESHOLD = Double.parseDouble(System.getProperty("benchmark.regression.alloc", "0.05"));
+    private static final String SUMMARY_HEADER = "key,mode,unit,score,scoreLow,scoreHigh,alloc,allocLow,allocHigh";
+
+    private RegressionTracker() {
+    }
+
+    static boolean isEnabled() {
+        return Boolean.getBoolean(REGRESSION_PROPERTY);
+    }
+
+    /**
+     * Stores the results of this run and fails if some of them regressed against the baseline.
+     *
+     * @param json JMH results of this run
+     */
+    static void track(String name, Path json, Collection<RunResult> results) throws IOException {
+        Path jvmDir = STORAGE_DIR.resolve(jvm());
+        String commit = commit();
+        Path runDir = jvmDir.resolve(commit);
+        Files.createDirectories(runDir);
+        Files.copy(json, runDir.resolve(name + ".json"), StandardCopyOption.REPLACE_EXISTING);
+
+        Map<String, Measurement> current = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            Measurement measurement = Measurement.of(result);
+            current.put(measurement.key, measurement);
+        }
+        writeSummary(current.values(), runDir.resolve(name + ".csv"));
+
+        Optional<Path> baselineFile = findBaseline(jvmDir, commit, name + ".csv");
+        if (!baselineFile.isPresent()) {
+            System.out.println("No baseline of " + name + " on " + jvm() + ", the run of " + commit + " is stored");
+            return;
+        }
+        Map<String, Measurement> baseline = readSummary(baselineFile.get());
+
+        List<String> regressions = new ArrayList<>();
+        System.out.println("Comparison of " + name + " with " + baselineFile.get().getParent().getFileName());
+        for (Measurement measurement : current.values()) {
+            Measurement base = baseline.get(measurement.key);
+            if (base == null) {
+                continue;
+            }
+            String line = String.format(Locale.ROOT, "%s %s: %.3f -> %.3f %s (%+.1f%%), alloc %.1f -> %.1f B/op (%+.1f%%)",
+                                        measurement.key, measurement.mode,
+                                        base.score, measurement.score, measurement.unit,
+                                        change(base.score, measurement.score),
+                                        base.alloc, measurement.alloc,
+                                        change(base.alloc, measurement.alloc));
+            System.out.println(line);
+            if (measurement.isSlowerThan(base) || measurement.allocatesMoreThan(base)) {
+                regressions.add(line);
+            }
+        }
+
+        if (!regressions.isEmpty()) {
+            throw new AssertionError("Regressions of " + name + " against the baseline:\n"
+                                     + String.join("\n", regressions));
+        }
+    }
+
+    private static Optional<Path> findBaseline(Path jvmDir, String commit, String file) throws IOException {
+        String baselineCommit = System.getProperty(BASELINE_PROPERTY);
+        if (baselineCommit != null) {
+            Path baseline = jvmDir.resolve(baselineCommit).resolve(file);
+            if (!Files.exists(baseline)) {
+                throw new IllegalStateException("There is no baseline " + baseline);
+            }
+            return Optional.of(baseline);
+        }
+        try (Stream<Path> runs = Files.list(jvmDir)) {
+            return runs.filter(run -> !run.getFileName().toString().equals(commit))
+                       .map(run -> run.resolve(file))
+                       .filter(Files::exists)
+                       .max(Comparator.comparing(RegressionTracker::lastModified));
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void writeSummary(Collection<Measurement> measurements, Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println(SUMMARY_HEADER);
+            measurements.forEach(out::println);
+        }
+    }
+
+    static Map<String, Measurement> readSummary(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return lines.skip(1)
+                        .map(Measurement::parse)
+                        .collect(Collectors.toMap(m -> m.key, m -> m, (a, b) -> b, LinkedHashMap::new));
+        }
+    }
+
+    /**
+     * -Dbenchmark.commit or the current HEAD, with the -dirty suffix for uncommitted changes.
+     */
+    static String commit() {
+        String commit = System.getProperty("benchmark.commit");
+        if (commit != null) {
+            return commit;
+        }
+        String head = git("rev-parse", "--short", "HEAD");
+        if (head.isEmpty()) {
+            return "unknown";
+        }
+        return git("status", "--porcelain", "--untracked-files=no").isEmpty() ? head : head + "-dirty";
+    }
+
+    private static String git(String... args) {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        for (String arg : args) {
+            command.add(arg);
+        }
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                                                                                  StandardCharsets.UTF_8))) {
+                output = reader.lines().collect(Collectors.joining("\n")).trim();
+            }
+            return (process.waitFor() == 0) ? output : "";
+        } catch (IOException e) {
+            return "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    static String jvm() {
+        return (System.getProperty("java.vm.name") + "-" + System.getProperty("java.version"))
+                .replaceAll("[^A-Za-z0-9.\\-]+", "_");
+    }
+
+    private static double change(double base, double value) {
+        return (base == 0) ? 0 : (value - base) / base * 100;
+    }
+
+
+    static final class Measurement {
+
+        private final String key;
+        private final String mode;
+        private final String unit;
+        private final double score;
+        private final double scoreLow;
+        private final double scoreHigh;
+        private final double alloc;
+        private final double allocLow;
+        private final double allocHigh;
+
+        Measurement(String key, String mode, String unit,
+                    double score, double scoreLow, double scoreHigh,
+                    double alloc, double allocLow, double allocHigh) {
+            this.key = key;
+            this.mode = mode;
+            this.unit = unit;
+            this.score = score;
+            this.scoreLow = scoreLow;
+            this.scoreHigh = scoreHigh;
+            this.alloc = alloc;
+            this.allocLow = allocLow;
+            this.allocHigh = allocHigh;
+        }
+
+        static Measurement of(RunResult result) {
+            BenchmarkParams params = result.getParams();
+            String key = key(params.getBenchmark(),
+                             ProfiledBenchmarkRunner.formatParams(params),
+                             params.getMode().shortLabel(),
+                             params.getThreads());
+            Result primary = result.getPrimaryResult();
+            double[] scoreInterval = interval(primary);
+            Result allocation = ProfiledBenchmarkRunner.allocationResult(result);
+            double[] allocInterval = (allocation != null) ? interval(allocation) : new double[]{Double.NaN, Double.NaN};
+            return new Measurement(key, params.getMode().shortLabel(), primary.getScoreUnit(),
+                                   primary.getScore(), scoreInterval[0], scoreInterval[1],
+                                   (allocation != null) ? allocation.getScore() : Double.NaN,
+                                   allocInterval[0], allocInterval[1]);
+        }
+
+        /**
+         * Launchers run a benchmark in several modes, each of them is a separate measurement
+         */
+        static String key(String benchmark, String params, String mode, int threads) {
+            return benchmark + "[" + params + "]:" + mode + "@" + threads;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * The interval is the score itself, when JMH can't estimate it (a single iteration).
+         */
+        private static double[] interval(Result result) {
+            double[] interval = result.getScoreConfidence();
+            if (Double.isNaN(interval[0]) || Double.isNaN(interval[1])) {
+                return new double[]{result.getScore(), result.getScore()};
+            }
+            return interval;
+        }
+
+        static Measurement parse(String line) {
+            String[] values = line.split(",");
+            return new Measurement(values[0], values[1], values[2],
+                                   Double.parseDouble(values[3]), Double.parseDouble(values[4]), Double.parseDouble(values[5]),
+                                   Double.parseDouble(values[6]), Double.parseDouble(values[7]), Double.parseDouble(values[8]));
+        }
+
+        /**
+         * Only the throughput is better when it is higher, other modes measure time.
+         */
+        boolean isSlowerThan(Measurement base) {
+            if ("thrpt".equals(mode)) {
+                return scoreHigh < base.scoreLow && score < base.score * (1 - SCORE_THRESHOLD);
+            }
+            return scoreLow > base.scoreHigh && score > base.score * (1 + SCORE_THRESHOLD);
+        }
+
+        boolean allocatesMoreThan(Measurement base) {
+            if (Double.isNaN(alloc) || Double.isNaN(base.alloc)) {
+                return false;
+            }
+            return allocLow > base.allocHigh && alloc > base.alloc * (1 + ALLOC_THRESHOLD);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s,%s,%s,%s,%s,%s,%s,%s,%s",
+                                 key, mode, unit, score, scoreLow, scoreHigh, alloc, allocLow, allocHigh);
+        }
+    }
+}
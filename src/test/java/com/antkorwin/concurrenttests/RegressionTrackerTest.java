@@ -0,0 +1,54 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class RegressionTrackerTest {
+
+    private static final String BENCHMARK = "com.antkorwin.concurrenttests.ConcurrentMapMicroBenchmark.get_ConcurrentHashMap";
+
+    @Test
+    public void testModesOfOneBenchmarkAreKeptApart() throws Exception {
+        // Arrange
+        RegressionTracker.Measurement throughput = measurement("thrpt", "ops/us", 100);
+        RegressionTracker.Measurement averageTime = measurement("avgt", "us/op", 0.01);
+        Path file = Files.createTempFile("regression", ".csv");
+
+        // Act
+        RegressionTracker.writeSummary(Arrays.asList(throughput, averageTime), file);
+        Map<String, RegressionTracker.Measurement> summary = RegressionTracker.readSummary(file);
+        Files.delete(file);
+
+        // Asserts
+        Assertions.assertThat(throughput.getKey()).isNotEqualTo(averageTime.getKey());
+        Assertions.assertThat(summary).hasSize(2);
+        Assertions.assertThat(summary.get(throughput.getKey()).toString()).isEqualTo(throughput.toString());
+        Assertions.assertThat(summary.get(averageTime.getKey()).toString()).isEqualTo(averageTime.toString());
+    }
+
+    @Test
+    public void testThroughputRegression() {
+        // Arrange
+        RegressionTracker.Measurement base = measurement("thrpt", "ops/us", 100);
+        RegressionTracker.Measurement slower = measurement("thrpt", "ops/us", 50);
+
+        // Act & Asserts
+        Assertions.assertThat(slower.isSlowerThan(base)).isTrue();
+        Assertions.assertThat(base.isSlowerThan(slower)).isFalse();
+    }
+
+    private RegressionTracker.Measurement measurement(String mode, String unit, double score) {
+        String key = RegressionTracker.Measurement.key(BENCHMARK, "", mode, 8);
+        return new RegressionTracker.Measurement(key, mode, unit,
+                                                 score, score * 0.99, score * 1.01,
+                                                 0, 0, 0);
+    }
+}
@@ -0,0 +1,74 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class ShardedCounterTest {
+
+    private static final int ITERATION_NUMBER = 1_000_000;
+
+    @Test
+    public void testParallelIncrements() {
+        // Arrange
+        ShardedCounter counter = new ShardedCounter();
+
+        // Act
+        IntStream.range(0, ITERATION_NUMBER)
+                 .parallel()
+                 .forEach(i -> counter.increment());
+
+        // Asserts
+        Assertions.assertThat(counter.sum()).isEqualTo(ITERATION_NUMBER);
+    }
+
+    @Test
+    public void testSumThenResetDoesNotLoseIncrements() throws Exception {
+        // Arrange
+        ShardedCounter counter = new ShardedCounter(4, 0);
+        long[] drained = new long[1];
+
+        // Act
+        CompletableFuture<Void> writers =
+                CompletableFuture.runAsync(() -> IntStream.range(0, ITERATION_NUMBER)
+                                                          .parallel()
+                                                          .forEach(i -> counter.increment()));
+        while (!writers.isDone()) {
+            drained[0] += counter.sumThenReset();
+        }
+        writers.get(10, TimeUnit.SECONDS);
+
+        // Asserts
+        Assertions.assertThat(drained[0] + counter.sumThenReset()).isEqualTo(ITERATION_NUMBER);
+        Assertions.assertThat(counter.sum()).isEqualTo(0);
+    }
+
+    @Test
+    public void testApproximateSumIsCached() throws Exception {
+        // Arrange
+        ShardedCounter counter = new ShardedCounter(4, TimeUnit.HOURS.toNanos(1));
+        ShardedCounter fresh = new ShardedCounter(4, 0);
+
+        // Act
+        counter.add(10);
+        fresh.add(10);
+        Thread.sleep(1);
+
+        // Asserts
+        Assertions.assertThat(counter.approximateSum()).isEqualTo(0);
+        Assertions.assertThat(counter.sum()).isEqualTo(10);
+        Assertions.assertThat(fresh.approximateSum()).isEqualTo(10);
+    }
+
+    @Test
+    public void testShardsAreRoundedUpToPowerOfTwo() {
+        Assertions.assertThat(new ShardedCounter(5, 0).shards()).isEqualTo(8);
+        Assertions.assertThat(new ShardedCounter(1, 0).shards()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,237 @@
+package com.antkorwin.concurrenttests;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The PersistentUuidIntMap over the ConcurrentHashMap:
+ * <ul>
+ * <li>snapshotDuringWrites - time of a snapshot of the whole map (entries per second
+ * is numberOfKeys / score) and latency of WRITERS threads which put values meanwhile;</li>
+ * <li>writesOnly - latency of the same writers without snapshots;</li>
+ * <li>coldStart_load - the open of the map from a snapshot and a change log
+ * with a tenth of keys updated after the snapshot;</li>
+ * <li>coldStart_putIfAbsent - filling an empty map by putIfAbsent,
+ * keys are taken from memory, so it is the lower bound of a rebuild from a database.</li>
+ * </ul>
+ *
+ * @author Korovin Anatoliy
+ */
+public class SnapshotBenchmark {
+
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+    private static final int WRITERS = 3;
+
+    @Benchmark
+    @Group("snapshotDuringWrites")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long snapshotDuringWrites_snapshot(Data data) throws IOException {
+        return data.map.snapshot();
+    }
+
+    @Benchmark
+    @Group("snapshotDuringWrites")
+    @GroupThreads(WRITERS)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Integer snapshotDuringWrites_writer(Data data, ThreadKeys threadKeys) {
+        return write(data, threadKeys);
+    }
+
+    @Benchmark
+    @Group("writesOnly")
+    @GroupThreads(WRITERS)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Integer writesOnly_writer(Data data, ThreadKeys threadKeys) {
+        return write(data, threadKeys);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int coldStart_load(ColdStart coldStart) throws IOException {
+        coldStart.loaded = PersistentUuidIntMap.open(coldStart.directory,
+                                                     new ConcurrentHashMap<>(2 * coldStart.numberOfKeys));
+        return coldStart.loaded.size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int coldStart_putIfAbsent(ColdStart coldStart) {
+        ConcurrentMap<UUID, Integer> map = new ConcurrentHashMap<>(2 * coldStart.numberOfKeys);
+        for (int i = 0; i < coldStart.numberOfKeys; i++) {
+            map.putIfAbsent(coldStart.keys[i], coldStart.values[i]);
+        }
+        return map.size();
+    }
+
+    private Integer write(Data data, ThreadKeys threadKeys) {
+        int index = threadKeys.next();
+        return data.map.put(data.keys[index], data.values[index]);
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(1)
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xms4096m", "-Xmx4096m")
+                .build();
+
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+    }
+
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Data {
+
+        @Param({"100000", "1000000"})
+        int numberOfKeys;
+
+        UUID[] keys;
+        Integer[] values;
+        Path directory;
+        PersistentUuidIntMap map;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            keys = new UUID[numberOfKeys];
+            values = new Integer[numberOfKeys];
+            directory = Files.createTempDirectory("snapshot-benchmark");
+            map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>(2 * numberOfKeys));
+            for (int i = 0; i < numberOfKeys; i++) {
+                keys[i] = UUID.randomUUID();
+                values[i] = i;
+                map.put(keys[i], values[i]);
+            }
+            map.snapshot();
+        }
+
+        /**
+         * The change log of writers isn't kept between iterations.
+         */
+        @TearDown(Level.Iteration)
+        public void compactLog() throws IOException {
+            map.snapshot();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            map.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        int[] sequence;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(Data data, ThreadParams threadParams) {
+            sequence = KeyDistribution.UNIFORM.sequence(data.numberOfKeys, SEQUENCE_LENGTH, threadParams.getThreadIndex());
+        }
+
+        int next() {
+            int key = sequence[position];
+            position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            return key;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdStart {
+
+        @Param({"100000", "1000000"})
+        int numberOfKeys;
+
+        UUID[] keys;
+        Integer[] values;
+        Path directory;
+        List<Path> files;
+        PersistentUuidIntMap loaded;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            keys = new UUID[numberOfKeys];
+            values = new Integer[numberOfKeys];
+            directory = Files.createTempDirectory("cold-start-benchmark");
+            try (PersistentUuidIntMap map = PersistentUuidIntMap.open(directory, new ConcurrentHashMap<>())) {
+                for (int i = 0; i < numberOfKeys; i++) {
+                    keys[i] = UUID.randomUUID();
+                    values[i] = i;
+                    map.put(keys[i], values[i]);
+                }
+                map.snapshot();
+                for (int i = 0; i < numberOfKeys; i += 10) {
+                    map.put(keys[i], -values[i]);
+                }
+            }
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.collect(toList());
+            }
+        }
+
+        /**
+         * Each open starts a new change log, it is removed,
+         * so all invocations load the same files.
+         */
+        @TearDown(Level.Invocation)
+        public void closeLoaded() throws IOException {
+            if (loaded != null) {
+                loaded.close();
+                loaded = null;
+            }
+            try (Stream<Path> list = Files.list(directory)) {
+                for (Path file : list.collect(toList())) {
+                    if (!files.contains(file)) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            deleteDirectory(directory);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.antkorwin.concurrenttests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Stress harness in the style of the jcstress.
+ *
+ * A test is a set of actors which run concurrently against the same subject
+ * with a fresh key in each round, an arbiter which runs after all actors
+ * and a checker which compares the results of the round with a sequential model.
+ *
+ * Interleavings are perturbed by spins and yields between operations,
+ * the choice is made by a Random seeded with the seed of the round,
+ * so a run can be repeated with the same perturbations by its seed.
+ * Results are kept strongly reachable until the round is checked,
+ * so the GC can clear only entries which nobody uses.
+ *
+ * @author Korovin Anatoliy
+ */
+final class StressHarness<S> {
+
+    private static final int MAX_SPINS = 256;
+    private static final int MAX_REPORTED_FAILURES = 5;
+    static final String OK = "OK";
+
+    private final String name;
+    private final Supplier<S> subjectFactory;
+    private final List<Actor<S>> actors;
+    private final Actor<S> arbiter;
+    private final Function<List<Trace>, String> checker;
+
+    /**
+     * @param checker returns a description of the violation or null
+     *                if results of the round are consistent with the model
+     */
+    StressHarness(String name,
+                  Supplier<S> subjectFactory,
+                  List<Actor<S>> actors,
+                  Actor<S> arbiter,
+                  Function<List<Trace>, String> checker) {
+        this.name = name;
+        this.subjectFactory = subjectFactory;
+        this.actors = actors;
+        this.arbiter = arbiter;
+        this.checker = checker;
+    }
+
+    Report run(int rounds, long seed) throws Exception {
+        S subject = subjectFactory.get();
+        Report report = new Report(name, seed);
+        ExecutorService executor = Executors.newFixedThreadPool(actors.size());
+        try {
+            for (int round = 0; round < rounds; round++) {
+                report.add(runRound(executor, subject, round, seed));
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        return report;
+    }
+
+    private Round runRound(ExecutorService executor, S subject, int round, long seed) throws Exception {
+        long roundSeed = seed ^ (round * 0x9E3779B97F4A7C15L);
+        UUID key = new UUID(roundSeed, round);
+        CyclicBarrier start = new CyclicBarrier(actors.size());
+        long startNanos = System.nanoTime();
+
+        List<Trace> traces = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < actors.size(); i++) {
+            Actor<S> actor = actors.get(i);
+            Trace trace = new Trace("actor" + i, new Random(roundSeed + i), startNanos);
+            traces.add(trace);
+            futures.add(executor.submit(() -> {
+                start.await();
+                actor.act(subject, key, trace);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+
+        Trace arbiterTrace = new Trace("arbiter", new Random(roundSeed), startNanos);
+        arbiter.act(subject, key, arbiterTrace);
+        traces.add(arbiterTrace);
+
+        String violation = checker.apply(traces);
+        return new Round(round, roundSeed, violation, traces);
+    }
+
+
+    @FunctionalInterface
+    interface Actor<S> {
+        void act(S subject, UUID key, Trace trace) throws Exception;
+    }
+
+    /**
+     * Operations of one actor in one round.
+     */
+    static final class Trace {
+
+        private final String actor;
+        private final Random random;
+        private final long start;
+        private final List<Event> events = new ArrayList<>();
+
+        /**
+         * @param start time of the start of the round, all traces of a round share it
+         */
+        Trace(String actor, Random random, long start) {
+            this.actor = actor;
+            this.random = random;
+            this.start = start;
+        }
+
+        void record(String operation, Object result) {
+            events.add(new Event(operation, result, System.nanoTime() - start));
+        }
+
+        /**
+         * Spins or yields to shift this actor against the others.
+         */
+        void perturb() {
+            int choice = random.nextInt(4);
+            if (choice == 0) {
+                Thread.yield();
+            } else if (choice == 1) {
+                int spins = random.nextInt(MAX_SPINS);
+                for (int i = 0; i < spins; i++) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        /**
+         * Forces the GC in a part of rounds, references cleared by it
+         * are purged by maps in the middle of the following operations.
+         */
+        void maybeGc(double probability) {
+            if (random.nextDouble() < probability) {
+                System.gc();
+                record("gc", null);
+            }
+        }
+
+        List<Object> results(String operation) {
+            List<Object> results = new ArrayList<>();
+            for (Event event : events) {
+                if (event.operation.equals(operation)) {
+                    results.add(event.result);
+                }
+            }
+            return results;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(actor).append(':');
+            for (Event event : events) {
+                result.append("\n    ").append(event);
+            }
+            return result.toString();
+        }
+    }
+
+    private static final class Event {
+
+        private final String operation;
+        private final Object result;
+        private final long nanos;
+
+        Event(String operation, Object result, long nanos) {
+            this.operation = operation;
+            this.result = result;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("+%dns %s -> %s@%x", nanos, operation, result, System.identityHashCode(result));
+        }
+    }
+
+    static final class Round {
+
+        private final int number;
+        private final long seed;
+        private final String violation;
+        private final List<Trace> traces;
+
+        Round(int number, long seed, String violation, List<Trace> traces) {
+            this.number = number;
+            this.seed = seed;
+            this.violation = violation;
+            this.traces = traces;
+        }
+
+        boolean isFailed() {
+            return violation != null;
+        }
+
+        String getOutcome() {
+            return isFailed() ? violation : OK;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder()
+                    .append("round ").append(number)
+                    .append(" (seed ").append(seed).append("): ")
+                    .append(getOutcome());
+            for (Trace trace : traces) {
+                result.append("\n  ").append(trace);
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * Histogram of outcomes and interleavings of the first failed rounds.
+     */
+    static final class Report {
+
+        private final String name;
+        private final long seed;
+        private final Map<String, Integer> outcomes = new TreeMap<>();
+        private final List<Round> failures = new ArrayList<>();
+        private int rounds;
+        private int failed;
+
+        Report(String name, long seed) {
+            this.name = name;
+            this.seed = seed;
+        }
+
+        void add(Round round) {
+            rounds++;
+            outcomes.merge(round.getOutcome(), 1, Integer::sum);
+            if (round.isFailed()) {
+                failed++;
+                if (failures.size() < MAX_REPORTED_FAILURES) {
+                    failures.add(round);
+                }
+            }
+        }
+
+        int getFailed() {
+            return failed;
+        }
+
+        Map<String, Integer> getOutcomes() {
+            return Collections.unmodifiableMap(outcomes);
+        }
+
+        List<Round> getFailures() {
+            return Collections.unmodifiableList(failures);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder()
+                    .append(name).append(" (seed ").append(seed).append("): ")
+                    .append(rounds).append(" rounds, ").append(failed).append(" failed");
+            outcomes.forEach((outcome, count) -> result.append("\n  ").append(count).append("\t").append(outcome));
+            for (Round round : failures) {
+                result.append("\n").append(round);
+            }
+            return result.toString();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutex;
+import com.antkorwin.xsync.XMutexFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Linearizability of getMutex and compute under the StressHarness.
+ *
+ * getMutex: actors get mutexes by equal (but not identical) keys,
+ * while another actor forces the GC and makes garbage entries to purge.
+ * Everybody keeps its mutex, so the model is a single instance per key.
+ *
+ * compute: actors increment a counter by the same key, the model is
+ * a sequential counter: returned values are exactly 1..N and the final value is N.
+ *
+ * Set -Dstress.seed to replay the seed of a reported failure
+ * and -Dstress.rounds for a longer run.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StressTest {
+
+    private static final int ROUNDS = Integer.getInteger("stress.rounds", 200);
+    private static final int ACTORS = 4;
+    private static final int CALLS_PER_ACTOR = 8;
+    private static final int GARBAGE_PER_ROUND = 16;
+    private static final double GC_PROBABILITY = 0.05;
+    private static final long SEED = Long.getLong("stress.seed", System.nanoTime());
+
+    private static final String DIFFERENT_MUTEXES = "different mutexes for the same key";
+
+    private static final BiFunction<UUID, Integer, Integer> INCREMENT = (k, v) -> (v == null) ? 1 : v + 1;
+
+    @Test
+    public void xMutexFactory() throws Exception {
+        assertNoFailures(getMutex("XMutexFactory",
+                                  XMutexFactory<UUID>::new,
+                                  XMutexFactory::getMutex));
+    }
+
+    @Test
+    public void lockFreeXMutexFactory() throws Exception {
+        assertNoFailures(getMutex("LockFreeXMutexFactory",
+                                  LockFreeXMutexFactory<UUID>::new,
+                                  LockFreeXMutexFactory::getMutex));
+    }
+
+    @Test
+    public void concurrentReferenceHashMap() throws Exception {
+        assertNoFailures(getMutex("ConcurrentReferenceHashMap(WEAK)",
+                                  () -> new com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap<UUID, XMutex<UUID>>(
+                                          16, com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap.ReferenceType.WEAK),
+                                  StressTest::computeMutex));
+    }
+
+    @Test
+    public void batchingConcurrentReferenceHashMap() throws Exception {
+        assertNoFailures(getMutex("BatchingConcurrentReferenceHashMap(WEAK)",
+                                  () -> new BatchingConcurrentReferenceHashMap<UUID, XMutex<UUID>>(
+                                          16, BatchingConcurrentReferenceHashMap.ReferenceType.WEAK),
+                                  StressTest::computeMutex));
+    }
+
+    @Test
+    public void lockFreeReferenceHashMap() throws Exception {
+        assertNoFailures(getMutex("LockFreeReferenceHashMap(WEAK)",
+                                  () -> new LockFreeReferenceHashMap<UUID, XMutex<UUID>>(
+                                          16, LockFreeReferenceHashMap.ReferenceType.WEAK),
+                                  StressTest::computeMutex));
+    }
+
+    /**
+     * The WEAK spring map can return a mutex which is not in the map
+     * when a reference is cleared in the middle of compute (see ConcurrentTest.testXXX),
+     * so this violation is expected, any other one fails the test.
+     */
+    @Test
+    public void springConcurrentReferenceHashMap() throws Exception {
+        StressHarness.Report report =
+                getMutex("spring ConcurrentReferenceHashMap(WEAK)",
+                         () -> new org.springframework.util.ConcurrentReferenceHashMap<UUID, XMutex<UUID>>(
+                                 16, org.springframework.util.ConcurrentReferenceHashMap.ReferenceType.WEAK),
+                         StressTest::computeMutex).run(ROUNDS, SEED);
+
+        Assertions.assertThat(report.getOutcomes().keySet())
+                  .describedAs(report.toString())
+                  .isSubsetOf(StressHarness.OK, DIFFERENT_MUTEXES);
+    }
+
+    @Test
+    public void computeOfAllMaps() throws Exception {
+        List<StressHarness.Report> reports = new ArrayList<>();
+        for (MapImplementation implementation : MapImplementation.values()) {
+            StressHarness.Report report = compute(implementation).run(ROUNDS, SEED);
+            System.out.println(report);
+            reports.add(report);
+        }
+
+        for (StressHarness.Report report : reports) {
+            Assertions.assertThat(report.getFailed())
+                      .describedAs(report.toString())
+                      .isEqualTo(0);
+        }
+    }
+
+
+    private static XMutex<UUID> computeMutex(ConcurrentMap<UUID, XMutex<UUID>> map, UUID key) {
+        return map.compute(key, (k, v) -> (v != null) ? v : new XMutex<>(k));
+    }
+
+    private <S> StressHarness<S> getMutex(String name,
+                                          Supplier<S> subjectFactory,
+                                          BiFunction<S, UUID, Object> getMutex) {
+
+        List<StressHarness.Actor<S>> actors = new ArrayList<>();
+        for (int i = 0; i < ACTORS; i++) {
+            actors.add((subject, key, trace) -> {
+                for (int call = 0; call < CALLS_PER_ACTOR; call++) {
+                    trace.perturb();
+                    trace.record("getMutex", getMutex.apply(subject, copyOf(key)));
+                }
+            });
+        }
+        // entries which are cleared and purged during the round
+        actors.add((subject, key, trace) -> {
+            for (int i = 0; i < GARBAGE_PER_ROUND; i++) {
+                trace.perturb();
+                getMutex.apply(subject, UUID.randomUUID());
+            }
+            trace.maybeGc(GC_PROBABILITY);
+        });
+
+        StressHarness.Actor<S> arbiter =
+                (subject, key, trace) -> trace.record("getMutex", getMutex.apply(subject, copyOf(key)));
+
+        return new StressHarness<>(name, subjectFactory, actors, arbiter, traces -> {
+            Object first = traces.get(0).results("getMutex").get(0);
+            long different = traces.stream()
+                                   .flatMap(trace -> trace.results("getMutex").stream())
+                                   .filter(mutex -> mutex != first)
+                                   .count();
+            return (different == 0) ? null : DIFFERENT_MUTEXES;
+        });
+    }
+
+    private StressHarness<Map<UUID, Integer>> compute(MapImplementation implementation) {
+
+        List<StressHarness.Actor<Map<UUID, Integer>>> actors = new ArrayList<>();
+        for (int i = 0; i < ACTORS; i++) {
+            actors.add((map, key, trace) -> {
+                for (int call = 0; call < CALLS_PER_ACTOR; call++) {
+                    trace.perturb();
+                    trace.record("compute", map.compute(key, INCREMENT));
+                }
+            });
+        }
+        actors.add((map, key, trace) -> trace.maybeGc(GC_PROBABILITY));
+
+        StressHarness.Actor<Map<UUID, Integer>> arbiter = (map, key, trace) -> trace.record("get", map.get(key));
+
+        // a fresh key in each round, a bounded map must keep all of them
+        return new StressHarness<>(implementation.name(), () -> implementation.create(2 * ROUNDS), actors, arbiter,
+                                   traces -> {
+                                       int total = ACTORS * CALLS_PER_ACTOR;
+                                       boolean[] seen = new boolean[total + 1];
+                                       for (StressHarness.Trace trace : traces) {
+                                           for (Object value : trace.results("compute")) {
+                                               int counter = (Integer) value;
+                                               if (counter < 1 || counter > total || seen[counter]) {
+                                                   return "lost or duplicated increment";
+                                               }
+                                               seen[counter] = true;
+                                           }
+                                       }
+                                       Object last = traces.get(traces.size() - 1).results("get").get(0);
+                                       return Integer.valueOf(total).equals(last) ? null : "wrong final value";
+                                   });
+    }
+
+    private static UUID copyOf(UUID key) {
+        return new UUID(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    private void assertNoFailures(StressHarness<?> harness) throws Exception {
+        StressHarness.Report report = harness.run(ROUNDS, SEED);
+        System.out.println(report);
+        Assertions.assertThat(report.getFailed())
+                  .describedAs(report.toString())
+                  .isEqualTo(0);
+    }
+}
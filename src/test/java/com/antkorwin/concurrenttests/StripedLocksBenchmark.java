@@ -0,0 +1,185 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutex;
+import com.antkorwin.xsync.XMutexFactory;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Lock acquisition throughput of the StripedLocks against the XMutexFactory.
+ * Run it in the GC-profiled mode (-Dbenchmark.gc=true) to see the allocation,
+ * compact vs padded monitors show the cost of false sharing between stripes.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StripedLocksBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 1_000;
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public long synchronized_XMutexFactory(XMutexData data, ThreadCounter counter) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            XMutex<UUID> mutex = data.xMutexFactory.getMutex(data.keys[i]);
+            synchronized (mutex) {
+                counter.value++;
+            }
+        }
+        return counter.value;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public long synchronized_PaddedMonitors(Data data, ThreadCounter counter) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            synchronized (data.monitors.getMutex(data.keys[i])) {
+                counter.value++;
+            }
+        }
+        return counter.value;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public long synchronized_CompactMonitors(Data data, ThreadCounter counter) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            synchronized (data.compactMonitors.getMutex(data.keys[i])) {
+                counter.value++;
+            }
+        }
+        return counter.value;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public long lock_ReentrantLocks(Data data, ThreadCounter counter) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            ReentrantLock lock = data.reentrantLocks.getMutex(data.keys[i]);
+            lock.lock();
+            try {
+                counter.value++;
+            } finally {
+                lock.unlock();
+            }
+        }
+        return counter.value;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public long writeLock_ReadWriteLocks(Data data, ThreadCounter counter) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            ReentrantReadWriteLock.WriteLock lock = data.readWriteLocks.getMutex(data.keys[i]).writeLock();
+            lock.lock();
+            try {
+                counter.value++;
+            } finally {
+                lock.unlock();
+            }
+        }
+        return counter.value;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public long writeLock_StampedLocks(Data data, ThreadCounter counter) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            StampedLock lock = data.stampedLocks.getMutex(data.keys[i]);
+            long stamp = lock.writeLock();
+            try {
+                counter.value++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        return counter.value;
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(1)
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .threads(8)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xms7024m", "-Xmx7024m", "-verbose:gc")
+                .build();
+
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+    }
+
+
+    /**
+     * Pairs of equal keys, so threads meet on the same locks.
+     */
+    public abstract static class Keys {
+
+        UUID[] keys = new UUID[NUMBER_OF_KEYS];
+
+        @Setup
+        public void setUpKeys() {
+            for (int i = 0; i < NUMBER_OF_KEYS; i += 2) {
+                keys[i] = UUID.randomUUID();
+                keys[i + 1] = keys[i];
+            }
+        }
+    }
+
+    /**
+     * The baseline doesn't depend on the number of stripes, so it runs once.
+     */
+    @State(Scope.Benchmark)
+    public static class XMutexData extends Keys {
+
+        XMutexFactory<UUID> xMutexFactory = new XMutexFactory<>();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Data extends Keys {
+
+        @Param({"16", "256", "4096"})
+        int stripes;
+
+        StripedLocks<Object> monitors;
+        StripedLocks<Object> compactMonitors;
+        StripedLocks<ReentrantLock> reentrantLocks;
+        StripedLocks<ReentrantReadWriteLock> readWriteLocks;
+        StripedLocks<StampedLock> stampedLocks;
+
+        @Setup
+        public void setUp() {
+            monitors = StripedLocks.monitors(stripes);
+            compactMonitors = StripedLocks.compactMonitors(stripes);
+            reentrantLocks = StripedLocks.reentrantLocks(stripes);
+            readWriteLocks = StripedLocks.readWriteLocks(stripes);
+            stampedLocks = StripedLocks.stampedLocks(stripes);
+        }
+    }
+
+    /**
+     * Work inside of the critical section, it is local to the thread
+     * so the only shared memory is the lock itself.
+     */
+    @State(Scope.Thread)
+    public static class ThreadCounter {
+        long value;
+    }
+}
@@ -0,0 +1,50 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class StripedLocksTest {
+
+    private static final int ITERATION_NUMBER = 100_000;
+
+    @Test
+    public void testEqualKeysGetTheSameMutex() {
+        // Arrange
+        StripedLocks<Object> locks = StripedLocks.monitors(1000);
+        String id = UUID.randomUUID().toString();
+
+        // Act
+        Object first = locks.getMutex(UUID.fromString(id));
+        Object second = locks.getMutex(UUID.fromString(id));
+
+        // Asserts
+        Assertions.assertThat(first == second).isTrue();
+        Assertions.assertThat(locks.size()).isEqualTo(1024);
+    }
+
+    @Test
+    public void testMutualExclusion() {
+        // Arrange
+        StripedLocks<Object> locks = StripedLocks.monitors(16);
+        NonAtomicInt nonAtomicInt = new NonAtomicInt(0);
+        String id = UUID.randomUUID().toString();
+
+        // Act
+        IntStream.range(0, ITERATION_NUMBER)
+                 .parallel()
+                 .forEach(i -> {
+                     synchronized (locks.getMutex(UUID.fromString(id))) {
+                         nonAtomicInt.increment();
+                     }
+                 });
+
+        // Asserts
+        Assertions.assertThat(nonAtomicInt.getValue()).isEqualTo(ITERATION_NUMBER);
+    }
+}
@@ -6,6 +6,7 @@ import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -14,6 +15,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.toList;
@@ -116,6 +118,44 @@ public class TroubleTest {
     }
 
 
+    @Test(timeout = TIMEOUT_FOR_PREVENTION_OF_DEADLOCK)
+    public void executorOnVirtualThreads() throws InterruptedException {
+        // Arrange
+        ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+
+        XMutexFactory<UUID> mutexFactory = new XMutexFactory<>();
+        int numberOfMutexes = 10;
+        int numberOfIterations = 100_000;
+
+        List<UUID> ids = IntStream.range(0, numberOfMutexes)
+                                  .boxed()
+                                  .map(i -> UUID.randomUUID())
+                                  .collect(toList());
+
+        Set<XMutex<UUID>> results = createConcurrentSet();
+
+        // Act
+        IntStream.range(0, numberOfIterations)
+                 .boxed()
+                 .forEach(i -> executorService.submit(() -> {
+                     UUID uuid = ids.get(i % numberOfMutexes);
+                     XMutex<UUID> mutex = mutexFactory.getMutex(uuid);
+                     synchronized (mutex) {
+                         results.add(mutex);
+                     }
+                 }));
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Asserts
+        Assertions.assertThat(results).hasSize(numberOfMutexes);
+
+        await().atMost(10, TimeUnit.SECONDS)
+               .until(mutexFactory::size, equalTo((long) numberOfMutexes));
+
+        Assertions.assertThat(mutexFactory.size()).isEqualTo(numberOfMutexes);
+    }
+
     @Test
     public void testALotOfHashCodes() {
         // Arrange
@@ -141,4 +181,59 @@ public class TroubleTest {
         // Assertions
         Assertions.assertThat(resultReferences).hasSize(1);
     }
+
+    @Test
+    public void testALotOfHashCodesWithInterner() {
+        // Arrange
+        XMutexFactory<UUID> mutexFactory =
+                new XMutexFactory<UUID>(16,
+                                        ConcurrentReferenceHashMap.ReferenceType.WEAK);
+        UuidInterner interner = UuidInterner.weak(1024);
+
+        XMutex<UUID> firstMutex = mutexFactory.getMutex(interner.intern(ID_STRING));
+
+        // Act
+        long fromStringBytes = allocatedBytesOfLookups("UUID.fromString", mutexFactory, firstMutex,
+                                                       () -> UUID.fromString(ID_STRING));
+        long internerBytes = allocatedBytesOfLookups("UuidInterner.intern", mutexFactory, firstMutex,
+                                                     () -> interner.intern(ID_STRING));
+
+        // Asserts
+        Assertions.assertThat(interner.intern(ID_STRING) == interner.intern(ID_STRING)).isTrue();
+        Assertions.assertThat(internerBytes).isLessThan(fromStringBytes);
+    }
+
+    /**
+     * The loop of the testALotOfHashCodes, without assertions inside of it,
+     * they allocate more than a lookup.
+     *
+     * @return bytes allocated by the loop
+     */
+    private long allocatedBytesOfLookups(String name,
+                                         XMutexFactory<UUID> mutexFactory,
+                                         XMutex<UUID> firstMutex,
+                                         Supplier<UUID> keySupplier) {
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int differentMutexes = 0;
+
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < NUMBER_OF_ITERATIONS; i++) {
+            XMutex<UUID> mutex = mutexFactory.getMutex(keySupplier.get());
+            if (mutex != firstMutex) {
+                differentMutexes++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+
+        System.out.println(String.format("%s: %.1f lookups/us, %.1f bytes/lookup",
+                                         name,
+                                         NUMBER_OF_ITERATIONS / (elapsed / 1000.0),
+                                         (double) bytes / NUMBER_OF_ITERATIONS));
+        Assertions.assertThat(differentMutexes).isEqualTo(0);
+        return bytes;
+    }
 }
@@ -0,0 +1,79 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class UuidIntHashMapTest {
+
+    private static final int NUMBER_OF_KEYS = 10_000;
+    private static final int NUMBER_OF_ITERATIONS = NUMBER_OF_KEYS * 100;
+
+    @Test
+    public void testPutGetRemove() {
+        // Arrange
+        UuidIntHashMap map = new UuidIntHashMap();
+        List<UUID> ids = IntStream.range(0, NUMBER_OF_KEYS)
+                                  .mapToObj(i -> UUID.randomUUID())
+                                  .collect(toList());
+
+        // Act
+        IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> map.putIfAbsent(ids.get(i), i));
+        IntStream.range(0, NUMBER_OF_KEYS).filter(i -> i % 2 == 0).forEach(i -> {
+            UUID id = ids.get(i);
+            map.remove(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        });
+
+        // Asserts
+        Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS / 2);
+        IntStream.range(0, NUMBER_OF_KEYS).forEach(i -> {
+            int expected = (i % 2 == 0) ? map.getMissingValue() : i;
+            Assertions.assertThat(map.get(ids.get(i))).isEqualTo(expected);
+        });
+    }
+
+    @Test
+    public void testEqualButNotIdenticalKeys() {
+        // Arrange
+        UuidIntHashMap map = new UuidIntHashMap();
+        String id = UUID.randomUUID().toString();
+
+        // Act
+        map.putIfAbsent(UUID.fromString(id), 1);
+        int existing = map.putIfAbsent(UUID.fromString(id), 2);
+
+        // Asserts
+        Assertions.assertThat(existing).isEqualTo(1);
+        Assertions.assertThat(map.get(UUID.fromString(id))).isEqualTo(1);
+        Assertions.assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testConcurrentCompute() {
+        // Arrange
+        UuidIntHashMap map = new UuidIntHashMap();
+        List<UUID> ids = IntStream.range(0, NUMBER_OF_KEYS)
+                                  .mapToObj(i -> UUID.randomUUID())
+                                  .collect(toList());
+        int missingValue = map.getMissingValue();
+
+        // Act
+        IntStream.range(0, NUMBER_OF_ITERATIONS)
+                 .parallel()
+                 .forEach(i -> map.compute(ids.get(i % NUMBER_OF_KEYS),
+                                           (msb, lsb, v) -> (v == missingValue) ? 1 : v + 1));
+
+        // Asserts
+        Assertions.assertThat(map.size()).isEqualTo(NUMBER_OF_KEYS);
+        ids.forEach(id -> Assertions.assertThat(map.get(id))
+                                    .isEqualTo(NUMBER_OF_ITERATIONS / NUMBER_OF_KEYS));
+    }
+}
@@ -0,0 +1,100 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutex;
+import com.antkorwin.xsync.XMutexFactory;
+import com.antkorwin.xsync.springframework.util.ConcurrentReferenceHashMap;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getMutex by a string id (as in TroubleTest.testALotOfHashCodes):
+ * UUID.fromString against the UuidInterner, and parsing alone.
+ *
+ * Run with -Dbenchmark.gc=true to see the allocation per operation
+ * (gc.alloc.rate.norm) in target/jmh/UuidInternerBenchmark-alloc.csv
+ *
+ * @author Korovin Anatoliy
+ */
+public class UuidInternerBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 1_000;
+
+    @Benchmark
+    public XMutex<UUID> getMutex_fromString(Data data, ThreadKeys threadKeys) {
+        return data.mutexFactory.getMutex(UUID.fromString(data.ids[threadKeys.next()]));
+    }
+
+    @Benchmark
+    public XMutex<UUID> getMutex_interner(Data data, ThreadKeys threadKeys) {
+        return data.mutexFactory.getMutex(data.interner.intern(data.ids[threadKeys.next()]));
+    }
+
+    @Benchmark
+    public UUID parse_fromString(Data data, ThreadKeys threadKeys) {
+        return UUID.fromString(data.ids[threadKeys.next()]);
+    }
+
+    @Benchmark
+    public UUID parse_interner(Data data, ThreadKeys threadKeys) {
+        return data.interner.intern(data.ids[threadKeys.next()]);
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupTime(TimeValue.seconds(1))
+                .warmupIterations(2)
+                .measurementTime(TimeValue.seconds(2))
+                .measurementIterations(5)
+                .threads(8)
+                .forks(1)
+                .shouldFailOnError(true)
+                .jvmArgs("-Xms2048m", "-Xmx2048m")
+                .build();
+
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        String[] ids = new String[NUMBER_OF_KEYS];
+        UuidInterner interner = UuidInterner.weak(4 * NUMBER_OF_KEYS);
+        XMutexFactory<UUID> mutexFactory =
+                new XMutexFactory<>(16, ConcurrentReferenceHashMap.ReferenceType.WEAK);
+
+        // keeps mutexes (and interned keys) reachable between invocations
+        XMutex<?>[] mutexes = new XMutex<?>[NUMBER_OF_KEYS];
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                ids[i] = UUID.randomUUID().toString();
+                mutexes[i] = mutexFactory.getMutex(interner.intern(ids[i]));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+
+        int position;
+
+        int next() {
+            position = (position + 1 == NUMBER_OF_KEYS) ? 0 : position + 1;
+            return position;
+        }
+    }
+}
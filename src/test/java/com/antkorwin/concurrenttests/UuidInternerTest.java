@@ -0,0 +1,93 @@
+package com.antkorwin.concurrenttests;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * @author Korovin Anatoliy
+ */
+public class UuidInternerTest {
+
+    private static final int ITERATION_NUMBER = 100_000;
+
+    @Test
+    public void testParseTheSameAsUuidFromString() {
+        for (int i = 0; i < ITERATION_NUMBER; i++) {
+            // Arrange
+            UUID expected = UUID.randomUUID();
+            String value = (i % 2 == 0) ? expected.toString() : expected.toString().toUpperCase();
+
+            // Act
+            long msb = UuidInterner.parseMostSignificantBits(value);
+            long lsb = UuidInterner.parseLeastSignificantBits(value);
+
+            // Asserts
+            Assertions.assertThat(new UUID(msb, lsb)).isEqualTo(expected);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidString() {
+        UuidInterner.parseMostSignificantBits("c117c526-606e-41b6-8197-1a6ba779f69");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDigit() {
+        UuidInterner.parseLeastSignificantBits("c117c526-606e-41b6-8197-1a6ba779f69x");
+    }
+
+    @Test
+    public void testEqualStringsGetTheSameInstance() {
+        // Arrange
+        UuidInterner interner = UuidInterner.weak(1024);
+        String id = UUID.randomUUID().toString();
+
+        // Act
+        UUID first = interner.intern(id);
+        UUID second = interner.intern(new StringBuilder(id));
+        UUID third = interner.intern(UUID.fromString(id));
+
+        // Asserts
+        Assertions.assertThat(first).isEqualTo(UUID.fromString(id));
+        Assertions.assertThat(first == second).isTrue();
+        Assertions.assertThat(first == third).isTrue();
+    }
+
+    @Test
+    public void testConcurrentInterningGivesOneInstance() {
+        // Arrange
+        UuidInterner interner = UuidInterner.bounded(1024);
+        String id = UUID.randomUUID().toString();
+        Set<UUID> instances = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+        // Act
+        IntStream.range(0, ITERATION_NUMBER)
+                 .parallel()
+                 .forEach(i -> instances.add(interner.intern(id)));
+
+        // Asserts
+        Assertions.assertThat(instances).hasSize(1);
+    }
+
+    @Test
+    public void testBoundedOverwrite() {
+        // Arrange
+        UuidInterner interner = UuidInterner.bounded(16);
+        UUID last = null;
+
+        // Act
+        for (int i = 0; i < ITERATION_NUMBER; i++) {
+            last = interner.intern(UUID.randomUUID());
+        }
+
+        // Asserts
+        Assertions.assertThat(interner.capacity()).isEqualTo(16);
+        Assertions.assertThat(interner.intern(last.toString()) == last).isTrue();
+    }
+}
@@ -0,0 +1,204 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutex;
+import com.antkorwin.xsync.XMutexFactory;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Runs the mutex-factory and the map workloads of the TroubleTest
+ * on virtual threads and on the fixed thread pool.
+ *
+ * Each task blocks for a short time: inside of the synchronized block
+ * of a XMutex (this pins a carrier thread) or after a map.compute
+ * (this doesn't). The report contains throughput, pinning events
+ * recorded by the JFR, the peak heap and the peak number of platform threads,
+ * it is printed and appended to target/jmh/virtual-threads.csv
+ *
+ * It is a benchmark, so it is not run by the default test phase,
+ * run it by -Dtest=VirtualThreadHarnessBenchmark
+ *
+ * @author Korovin Anatoliy
+ */
+public class VirtualThreadHarnessBenchmark {
+
+    private static final int[] NUMBER_OF_TASKS = {10_000, 100_000, 1_000_000};
+    private static final int NUMBER_OF_KEYS = 1_000;
+    private static final int FIXED_POOL_SIZE = 10;
+    private static final long BLOCKING_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    @Test
+    public void mutexFactoryWorkload() throws Exception {
+        for (int tasks : NUMBER_OF_TASKS) {
+            for (ExecutorMode mode : ExecutorMode.values()) {
+                XMutexFactory<UUID> mutexFactory = new XMutexFactory<>();
+                UUID[] keys = createKeys();
+                AtomicLong done = new AtomicLong();
+
+                Report report = run("mutexFactory", mode, tasks, i -> () -> {
+                    XMutex<UUID> mutex = mutexFactory.getMutex(keys[i % NUMBER_OF_KEYS]);
+                    synchronized (mutex) {
+                        LockSupport.parkNanos(BLOCKING_NANOS);
+                        done.incrementAndGet();
+                    }
+                });
+
+                Assertions.assertThat(done.get()).isEqualTo(tasks);
+                Assertions.assertThat(report.throughput).isGreaterThan(0);
+            }
+        }
+    }
+
+    @Test
+    public void mapWorkload() throws Exception {
+        for (int tasks : NUMBER_OF_TASKS) {
+            for (ExecutorMode mode : ExecutorMode.values()) {
+                ConcurrentMap<UUID, Integer> map = new ConcurrentHashMap<>();
+                UUID[] keys = createKeys();
+
+                run("map", mode, tasks, i -> () -> {
+                    map.compute(keys[i % NUMBER_OF_KEYS], (k, v) -> (v == null) ? 1 : v + 1);
+                    LockSupport.parkNanos(BLOCKING_NANOS);
+                });
+
+                Assertions.assertThat(map.values().stream().mapToInt(Integer::intValue).sum())
+                          .isEqualTo(tasks);
+            }
+        }
+    }
+
+    private Report run(String workload,
+                       ExecutorMode mode,
+                       int tasks,
+                       IntFunction<Runnable> task) throws Exception {
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        threads.resetPeakThreadCount();
+
+        AtomicLong peakHeap = new AtomicLong(heapBefore);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                                    0, 10, TimeUnit.MILLISECONDS);
+
+        Path jfrFile = Files.createTempFile("virtual-threads", ".jfr");
+        long elapsed;
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withoutThreshold().withStackTrace();
+            recording.start();
+
+            long start = System.nanoTime();
+            ExecutorService executor = mode.create();
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(task.apply(i));
+            }
+            executor.shutdown();
+            Assertions.assertThat(executor.awaitTermination(10, TimeUnit.MINUTES)).isTrue();
+            elapsed = System.nanoTime() - start;
+
+            recording.stop();
+            recording.dump(jfrFile);
+        } finally {
+            sampler.shutdownNow();
+        }
+
+        long pinnedEvents = RecordingFile.readAllEvents(jfrFile)
+                                         .stream()
+                                         .filter(e -> PINNED_EVENT.equals(e.getEventType().getName()))
+                                         .count();
+        Files.deleteIfExists(jfrFile);
+
+        Report report = new Report(workload, mode, tasks,
+                                   tasks / (elapsed / 1e9),
+                                   pinnedEvents,
+                                   peakHeap.get() - heapBefore,
+                                   threads.getPeakThreadCount());
+        report.print();
+        return report;
+    }
+
+    private UUID[] createKeys() {
+        UUID[] keys = new UUID[NUMBER_OF_KEYS];
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            keys[i] = UUID.randomUUID();
+        }
+        return keys;
+    }
+
+
+    private enum ExecutorMode {
+
+        FIXED_POOL(() -> Executors.newFixedThreadPool(FIXED_POOL_SIZE)),
+        VIRTUAL_THREADS(Executors::newVirtualThreadPerTaskExecutor);
+
+        private final Supplier<ExecutorService> factory;
+
+        ExecutorMode(Supplier<ExecutorService> factory) {
+            this.factory = factory;
+        }
+
+        ExecutorService create() {
+            return factory.get();
+        }
+    }
+
+    private static final class Report {
+
+        private final String workload;
+        private final ExecutorMode mode;
+        private final int tasks;
+        private final double throughput;
+        private final long pinnedEvents;
+        private final long peakHeapBytes;
+        private final int peakPlatformThreads;
+
+        Report(String workload, ExecutorMode mode, int tasks, double throughput,
+               long pinnedEvents, long peakHeapBytes, int peakPlatformThreads) {
+            this.workload = workload;
+            this.mode = mode;
+            this.tasks = tasks;
+            this.throughput = throughput;
+            this.pinnedEvents = pinnedEvents;
+            this.peakHeapBytes = peakHeapBytes;
+            this.peakPlatformThreads = peakPlatformThreads;
+        }
+
+        void print() throws Exception {
+            String line = String.format(Locale.ROOT, "%s,%s,%d,%.0f,%d,%d,%d",
+                                        workload, mode, tasks, throughput,
+                                        pinnedEvents, peakHeapBytes, peakPlatformThreads);
+            System.out.println("workload,executor,tasks,tasksPerSecond,pinnedEvents,peakHeapBytes,peakPlatformThreads");
+            System.out.println(line);
+
+            Path file = ProfiledBenchmarkRunner.RESULTS_DIR.resolve("virtual-threads.csv");
+            Files.createDirectories(file.getParent());
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file,
+                                                                           StandardCharsets.UTF_8,
+                                                                           StandardOpenOption.CREATE,
+                                                                           StandardOpenOption.APPEND))) {
+                out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.antkorwin.concurrenttests;
+
+import com.antkorwin.xsync.XMutexFactory;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark for the getMutex of mutex factories
+ *
+ * @author Korovin Anatoliy
+ */
+public class XMutexFactoryBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 1_000;
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void getMutex_XMutexFactory(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.xMutexFactory.getMutex(data.keys[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_KEYS)
+    public void getMutex_LockFreeXMutexFactory(Data data, Blackhole bh) {
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            bh.consume(data.lockFreeXMutexFactory.getMutex(data.keys[i]));
+        }
+    }
+
+
+    @Test
+    public void launchBenchmark() throws Exception {
+
+        Options opt = new OptionsBuilder()
+                .include(this.getClass().getName() + ".*")
+                .mode(Mode.All)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .warmupTime(TimeValue.seconds(2))
+                .warmupIterations(1)
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .threads(8)
+                .forks(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .jvmArgs("-Xms7024m", "-Xmx7024m", "-verbose:gc")
+                .build();
+
+        ProfiledBenchmarkRunner.run(opt, this.getClass(), 1);
+    }
+
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        UUID[] keys = new UUID[NUMBER_OF_KEYS];
+
+        XMutexFactory<UUID> xMutexFactory = new XMutexFactory<>();
+        LockFreeXMutexFactory<UUID> lockFreeXMutexFactory = new LockFreeXMutexFactory<>();
+
+        @Setup
+        public void setUp() {
+            System.out.println("\nsetUp");
+            for (int i = 0; i < NUMBER_OF_KEYS; i += 2) {
+                keys[i] = UUID.randomUUID();
+                keys[i + 1] = keys[i];
+            }
+        }
+    }
+}